@@ -0,0 +1,137 @@
+package jmh;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Micro-benchmark JMH dei percorsi critici del calcolatore, parametrizzati per cardinalità del set (1-12):
+ * parsing dell'input, Ordine Normale, Prime Form e tabella delle 24 trasformazioni T/I.
+ * Si eseguono con "gradle jmh", che attiva il profiler gc: oltre al throughput, il report riporta la
+ * memoria allocata per operazione (gc.alloc.rate.norm) e il tasso di allocazione.
+ *
+ * Ogni invocazione elabora il set successivo di un gruppo di SETS_PER_CARDINALITY set casuali, generati
+ * con un seme fisso per cardinalità, così che i risultati siano confrontabili tra esecuzioni.
+ *
+ * JMH non accetta benchmark nel package predefinito, da cui però non si possono importare le classi del
+ * calcolatore: i metodi misurati vengono raggiunti tramite MethodHandle costanti, che il JIT compila come
+ * chiamate dirette.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PitchSetBenchmark {
+
+    private static final int SETS_PER_CARDINALITY = 256;
+
+    private static final MethodHandle PARSE = handle("PitchSetUtils", "parseAndCleanPitchClasses", String.class);
+    private static final MethodHandle NORMAL_ORDER = handle("PitchSetAnalyzer", "getNormalOrderObject", List.class);
+    private static final MethodHandle PRIME_FORM = handle("PitchSetAnalyzer", "getPrimeForm", List.class);
+    private static final MethodHandle TRANSPOSITIONS_AND_INVERSIONS =
+            handle("PitchSetCalculator", "displayAllTranspositionsAndInversions", List.class);
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12"})
+    public int cardinality;
+
+    private String[] inputs;
+    private List<List<Integer>> sets;
+    private int next;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void generateSets() {
+        Random random = new Random(cardinality);
+        inputs = new String[SETS_PER_CARDINALITY];
+        sets = new ArrayList<>(SETS_PER_CARDINALITY);
+        for (int s = 0; s < SETS_PER_CARDINALITY; s++) {
+            List<Integer> pcs = new ArrayList<>(12);
+            for (int pc = 0; pc < 12; pc++) {
+                pcs.add(pc);
+            }
+            Collections.shuffle(pcs, random);
+            List<Integer> chosen = new ArrayList<>(pcs.subList(0, cardinality));
+
+            StringBuilder sb = new StringBuilder();
+            for (int pc : chosen) {
+                if (sb.length() > 0) {
+                    sb.append(random.nextBoolean() ? ", " : " ");
+                }
+                sb.append(pc == 10 ? "t" : pc == 11 ? "e" : String.valueOf(pc));
+            }
+            inputs[s] = sb.toString();
+            sets.add(chosen);
+        }
+        // La tabella T/I stampa su System.out: durante la misura l'output viene scartato
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreConsole() {
+        System.setOut(console);
+    }
+
+    // Metodo statico di una classe del calcolatore, con i tipi del package predefinito ridotti a Object
+    private static MethodHandle handle(String className, String name, Class<?> parameter) {
+        try {
+            Class<?> owner = Class.forName(className);
+            Method method = owner.getDeclaredMethod(name, parameter);
+            MethodHandle handle = MethodHandles.privateLookupIn(owner, MethodHandles.lookup()).unreflect(method);
+            Class<?> returnType = method.getReturnType() == void.class ? void.class : Object.class;
+            return handle.asType(MethodType.methodType(returnType, parameter));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = (index + 1) % SETS_PER_CARDINALITY;
+        return index;
+    }
+
+    @Benchmark
+    public Object parseAndCleanPitchClasses() throws Throwable {
+        return (Object) PARSE.invokeExact(inputs[nextIndex()]);
+    }
+
+    @Benchmark
+    public Object getNormalOrderObject() throws Throwable {
+        return (Object) NORMAL_ORDER.invokeExact(sets.get(nextIndex()));
+    }
+
+    @Benchmark
+    public Object getPrimeForm() throws Throwable {
+        return (Object) PRIME_FORM.invokeExact(sets.get(nextIndex()));
+    }
+
+    @Benchmark
+    public void transpositionsAndInversions() throws Throwable {
+        TRANSPOSITIONS_AND_INVERSIONS.invokeExact(sets.get(nextIndex()));
+    }
+}
@@ -0,0 +1,52 @@
+#!/bin/sh
+# Benchmark del tempo di avvio: durata di un'invocazione completa di Main (avvio della JVM, analisi di un set
+# in modalità batch, uscita) nelle configurazioni di pcset.sh, dalla più lenta alla più rapida.
+#
+# Uso: bench/startup.sh [ripetizioni]   (predefinito 20; riporta mediana e minimo in millisecondi)
+# Lo script prepara bin/ tramite pcset.sh (compilazione, istantanea delle tabelle, archivio AppCDS).
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+BIN="$ROOT/bin"
+RUNS=${1:-20}
+JAVA=${JAVA:-java}
+INPUT="0 4 7"
+
+"$ROOT/pcset.sh" --batch </dev/null >/dev/null
+
+now() {
+    date +%s%N
+}
+
+# measure descrizione comando...: esegue il comando RUNS volte e stampa mediana e minimo
+measure() {
+    label=$1
+    shift
+    echo "$INPUT" | "$@" >/dev/null 2>&1 # Riscaldamento della cache dei file
+    times=""
+    i=0
+    while [ "$i" -lt "$RUNS" ]; do
+        start=$(now)
+        echo "$INPUT" | "$@" >/dev/null 2>&1
+        end=$(now)
+        times="$times $(( (end - start) / 1000 ))"
+        i=$((i + 1))
+    done
+    echo "$times" | tr ' ' '\n' | sed '/^$/d' | sort -n | awk -v label="$label" '
+        { t[NR] = $1 }
+        END { printf "%-40s mediana %7.1f ms   minimo %7.1f ms\n", label, t[int((NR + 1) / 2)] / 1000, t[1] / 1000 }'
+}
+
+echo "Ripetizioni: $RUNS, input: \"$INPUT\""
+measure "java -version (solo JVM)" "$JAVA" -version
+measure "classi, tabelle ricalcolate" "$JAVA" -Dpcset.snapshot=none -cp "$BIN/classes" Main --batch
+measure "jar + istantanea" "$JAVA" -Dpcset.snapshot="$BIN/pcset-tables.bin" -cp "$BIN/pcset.jar" Main --batch
+if [ -f "$BIN/pcset.jsa" ]; then
+    measure "jar + istantanea + AppCDS" "$JAVA" -XX:SharedArchiveFile="$BIN/pcset.jsa" \
+        -Dpcset.snapshot="$BIN/pcset-tables.bin" -cp "$BIN/pcset.jar" Main --batch
+    measure "jar + istantanea + AppCDS + C1" "$JAVA" -XX:SharedArchiveFile="$BIN/pcset.jsa" -XX:TieredStopAtLevel=1 \
+        -Dpcset.snapshot="$BIN/pcset-tables.bin" -cp "$BIN/pcset.jar" Main --batch
+else
+    echo "Archivio AppCDS non disponibile: configurazioni AppCDS saltate."
+fi
+measure "pcset.sh (launcher completo)" "$ROOT/pcset.sh" --batch
@@ -0,0 +1,54 @@
+#!/bin/sh
+# Avvio rapido del calcolatore su Linux, con istantanea delle tabelle e archivio AppCDS.
+#
+# Al primo avvio (e dopo ogni modifica dei sorgenti) lo script:
+#  1. compila i sorgenti e li raccoglie in bin/pcset.jar (AppCDS accetta solo archivi JAR nel classpath);
+#  2. scrive l'istantanea delle tabelle di analisi in bin/pcset-tables.bin (vedi AnalysisSnapshot);
+#  3. registra le classi caricate da alcune esecuzioni di addestramento e ne crea l'archivio AppCDS bin/pcset.jsa.
+# Le esecuzioni successive caricano le classi dall'archivio e mappano in memoria l'istantanea.
+#
+# Variabili: JAVA, JAVAC e JAR (comandi da usare), PCSET_JAVA_OPTS (opzioni aggiuntive della JVM, ad esempio
+# -XX:TieredStopAtLevel=1 per invocazioni brevi). Dopo un aggiornamento della JDK eliminare bin/pcset.jsa.
+set -e
+
+ROOT=$(cd "$(dirname "$0")" && pwd)
+BIN="$ROOT/bin"
+APP_JAR="$BIN/pcset.jar"
+SNAPSHOT="$BIN/pcset-tables.bin"
+ARCHIVE="$BIN/pcset.jsa"
+CLASSLIST="$BIN/pcset.classlist"
+JAVA=${JAVA:-java}
+JAVAC=${JAVAC:-javac}
+JAR=${JAR:-jar}
+
+if [ ! -f "$APP_JAR" ] || [ -n "$(find "$ROOT/src" -name '*.java' -newer "$APP_JAR")" ]; then
+    echo "Compilazione in corso..." >&2
+    rm -rf "$BIN/classes"
+    mkdir -p "$BIN/classes"
+    "$JAVAC" -encoding UTF-8 -d "$BIN/classes" "$ROOT"/src/*.java
+    "$JAR" --create --file "$APP_JAR" --main-class Main -C "$BIN/classes" .
+    rm -f "$SNAPSHOT" "$ARCHIVE" "$CLASSLIST"
+fi
+
+RUN="-Dpcset.snapshot=$SNAPSHOT -cp $APP_JAR"
+
+if [ ! -f "$SNAPSHOT" ]; then
+    "$JAVA" -Dpcset.snapshot=none -cp "$APP_JAR" Main --snapshot "$SNAPSHOT" 2>/dev/null
+fi
+
+if [ ! -f "$ARCHIVE" ] && [ ! -f "$CLASSLIST" ]; then
+    echo "Creazione dell'archivio AppCDS..." >&2
+    # Addestramento: modalità batch e analisi interattiva di un set, con le classi registrate in un unico elenco.
+    # L'elenco resta anche se la creazione dell'archivio fallisce, così il tentativo non si ripete a ogni avvio.
+    printf '0 4 7\n0,1,4,6\n' | "$JAVA" -XX:DumpLoadedClassList="$CLASSLIST.batch" $RUN Main --batch >/dev/null 2>&1 || true
+    printf '5\n' | "$JAVA" -XX:DumpLoadedClassList="$CLASSLIST.menu" $RUN Main 0 4 7 >/dev/null 2>&1 || true
+    cat "$CLASSLIST.batch" "$CLASSLIST.menu" > "$CLASSLIST"
+    rm -f "$CLASSLIST.batch" "$CLASSLIST.menu"
+    "$JAVA" -Xshare:dump -XX:SharedClassListFile="$CLASSLIST" -XX:SharedArchiveFile="$ARCHIVE" -cp "$APP_JAR" >/dev/null 2>&1 \
+        || { echo "Avviso: archivio AppCDS non creato, avvio senza archivio." >&2; rm -f "$ARCHIVE"; }
+fi
+
+if [ -f "$ARCHIVE" ]; then
+    exec "$JAVA" -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto $PCSET_JAVA_OPTS $RUN Main "$@"
+fi
+exec "$JAVA" $PCSET_JAVA_OPTS $RUN Main "$@"
@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Istantanea binaria delle tabelle di analisi (PitchSetTables e SetClassCatalog), caricata all'avvio al
+ * posto del ricalcolo: le tabelle vengono copiate con letture in blocco dal file mappato in memoria.
+ *
+ * L'istantanea viene cercata, nell'ordine, nel file indicato dalla proprietà di sistema pcset.snapshot
+ * ("none" la disattiva) e nella risorsa pcset-tables.bin alla radice del classpath; se manca o non è valida
+ * le tabelle vengono ricalcolate come di consueto. Si crea con --snapshot file.
+ *
+ * Formato (little-endian): MAGIC, VERSION, numero di sezioni, per ogni sezione offset e lunghezza, CRC32 del
+ * contenuto che segue l'intestazione, quindi le sezioni nell'ordine di Section. VERSION va incrementata a
+ * ogni modifica del contenuto o della disposizione delle tabelle.
+ */
+public final class AnalysisSnapshot {
+
+    public static final String RESOURCE = "pcset-tables.bin";
+    public static final String PROPERTY = "pcset.snapshot";
+
+    private static final int MAGIC = 0x4E534350; // "PCSN" in little-endian
+    private static final int VERSION = 2;
+    private static final int MAX_SECTION_BYTES = 1 << 16;
+
+    /**
+     * Le sezioni dell'istantanea, una per classe di tabelle.
+     */
+    enum Section {
+        TABLES, CATALOG
+    }
+
+    private static final int HEADER_BYTES = 3 * Integer.BYTES + Section.values().length * 2 * Integer.BYTES + Integer.BYTES;
+
+    // Caricamento pigro: l'istantanea viene letta al primo accesso di una delle classi di tabelle
+    private static final class Holder {
+        static final ByteBuffer[] SECTIONS = load();
+    }
+
+    private AnalysisSnapshot() {
+    }
+
+    /**
+     * @return Il contenuto della sezione (posizionato all'inizio, little-endian), oppure null se l'istantanea
+     * non è disponibile.
+     */
+    static ByteBuffer section(Section section) {
+        ByteBuffer[] sections = Holder.SECTIONS;
+        return sections == null ? null : sections[section.ordinal()].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer[] load() {
+        String property = System.getProperty(PROPERTY);
+        if ("none".equals(property)) {
+            return null;
+        }
+        String source = property;
+        try {
+            ByteBuffer buffer;
+            if (property != null) {
+                buffer = map(Paths.get(property));
+            } else {
+                URL resource = AnalysisSnapshot.class.getResource("/" + RESOURCE);
+                if (resource == null) {
+                    return null;
+                }
+                source = resource.toString();
+                if (resource.getProtocol().equals("file")) {
+                    buffer = map(Paths.get(resource.toURI()));
+                } else { // Risorsa in un archivio: non mappabile, viene letta in memoria
+                    try (InputStream in = resource.openStream()) {
+                        buffer = ByteBuffer.wrap(in.readAllBytes());
+                    }
+                }
+            }
+            return parse(buffer.order(ByteOrder.LITTLE_ENDIAN));
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            System.err.println("Avviso: Istantanea delle tabelle '" + source + "' ignorata (" + e.getMessage() + "); le tabelle vengono ricalcolate.");
+            return null;
+        }
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static ByteBuffer[] parse(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("formato non riconosciuto");
+        }
+        if (buffer.getInt(4) != VERSION || buffer.getInt(8) != Section.values().length) {
+            throw new IOException("versione " + buffer.getInt(4) + " non supportata");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_BYTES));
+        if ((int) crc.getValue() != buffer.getInt(HEADER_BYTES - Integer.BYTES)) {
+            throw new IOException("checksum non valido");
+        }
+        ByteBuffer[] sections = new ByteBuffer[Section.values().length];
+        for (int s = 0; s < sections.length; s++) {
+            int offset = buffer.getInt(12 + s * 8);
+            int length = buffer.getInt(16 + s * 8);
+            if (offset < HEADER_BYTES || length < 0 || offset + length > buffer.limit()) {
+                throw new IOException("sezione " + Section.values()[s] + " fuori dal file");
+            }
+            sections[s] = buffer.slice(offset, length);
+        }
+        return sections;
+    }
+
+    /**
+     * Scrive l'istantanea delle tabelle attualmente in uso. Per rigenerarla dopo una modifica degli algoritmi
+     * va eseguita con -Dpcset.snapshot=none, così che le tabelle vengano ricalcolate e non lette dalla precedente.
+     * @param path Il file da creare (sovrascritto se esiste).
+     * @return La dimensione del file in byte.
+     */
+    public static int write(Path path) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + Section.values().length * MAX_SECTION_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(Section.values().length);
+        out.position(HEADER_BYTES);
+        for (Section section : Section.values()) {
+            int offset = out.position();
+            if (section == Section.TABLES) {
+                PitchSetTables.writeSnapshot(out);
+            } else {
+                SetClassCatalog.writeSnapshot(out);
+            }
+            out.putInt(12 + section.ordinal() * 8, offset).putInt(16 + section.ordinal() * 8, out.position() - offset);
+        }
+        out.flip();
+        CRC32 crc = new CRC32();
+        crc.update(out.duplicate().position(HEADER_BYTES));
+        out.putInt(HEADER_BYTES - Integer.BYTES, (int) crc.getValue());
+        Files.write(path, Arrays.copyOf(out.array(), out.limit()));
+        return out.limit();
+    }
+
+    // Copie in blocco tra array primitivi e buffer
+
+    static void putShorts(ByteBuffer out, short[] values) {
+        out.asShortBuffer().put(values);
+        out.position(out.position() + values.length * Short.BYTES);
+    }
+
+    static void getShorts(ByteBuffer in, short[] values) {
+        in.asShortBuffer().get(values);
+        in.position(in.position() + values.length * Short.BYTES);
+    }
+
+    static void putBooleans(ByteBuffer out, boolean[] values) {
+        for (boolean value : values) {
+            out.put((byte) (value ? 1 : 0));
+        }
+    }
+
+    static void getBooleans(ByteBuffer in, boolean[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.get() != 0;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Metriche delle operazioni dell'analizzatore: numero di chiamate, istogramma delle latenze, stima dei byte
+ * allocati e contatori di hit/miss delle cache.
+ *
+ * Le metriche si attivano con -Dpcset.metrics=true. ENABLED è una costante letta all'avvio: i punti di misura
+ * sono scritti come "if (AnalyzerMetrics.ENABLED) ...", quindi con le metriche disattivate il compilatore JIT
+ * elimina il ramo e il costo è nullo; anche lo stato (contatori, MBean) viene creato solo al primo uso, oppure
+ * all'avvio con initialize(), così che il costo della registrazione non venga attribuito alla prima misura.
+ *
+ * Le latenze vanno in un istogramma a bucket logaritmici (il bucket b contiene le durate tra 2^(b-1) e 2^b - 1 ns),
+ * da cui si leggono percentili approssimati per eccesso. I byte allocati dal thread corrente si leggono da
+ * com.sun.management.ThreadMXBean, se disponibile, e comprendono anche le allocazioni della misura stessa.
+ * Le metriche vengono pubblicate come MXBean "pcset:type=AnalyzerMetrics" e riassunte da report().
+ */
+public final class AnalyzerMetrics {
+
+    /** true se le metriche sono attive (proprietà di sistema pcset.metrics). */
+    public static final boolean ENABLED = Boolean.getBoolean("pcset.metrics");
+
+    public static final String OBJECT_NAME = "pcset:type=AnalyzerMetrics";
+
+    /**
+     * Operazioni misurate.
+     */
+    public enum Operation {
+        PARSE("parseAndCleanPitchClasses"),
+        NORMAL_ORDER("getNormalOrderObject"),
+        PRIME_FORM("getPrimeForm"),
+        TRANSPOSE("transpose"),
+        INVERT("invert"),
+        BATCH_PARSE("batch: parsing"),
+        BATCH_ANALYZE("batch: analisi"),
+        BATCH_WRITE("batch: scrittura");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Contatori di hit e miss di una cache. Possono essere usati anche con le metriche disattivate
+     * (es. dalle statistiche del server); vengono pubblicati solo se registrati con registerCache.
+     */
+    public static final class CacheCounter {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        public void hit() {
+            hits.increment();
+        }
+
+        public void miss() {
+            misses.increment();
+        }
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        void reset() {
+            hits.reset();
+            misses.reset();
+        }
+    }
+
+    /**
+     * Interfaccia JMX delle metriche: le mappe sono indicizzate per nome dell'operazione o della cache.
+     */
+    public interface MetricsMXBean {
+        Map<String, Long> getCallCounts();
+
+        Map<String, Double> getMeanLatencyMicros();
+
+        Map<String, Long> getP99LatencyNanos();
+
+        Map<String, Long> getAllocatedBytesPerCall();
+
+        Map<String, Long> getCacheHits();
+
+        Map<String, Long> getCacheMisses();
+
+        String getReport();
+
+        void reset();
+    }
+
+    private static final int BUCKETS = Long.SIZE + 1;
+
+    private AnalyzerMetrics() {
+    }
+
+    /**
+     * Crea subito lo stato delle metriche (contatori, ThreadMXBean, registrazione dell'MBean), che altrimenti
+     * verrebbe creato alla prima misura. Da chiamare all'avvio se ENABLED è true.
+     */
+    public static void initialize() {
+        State.allocatedBytes();
+    }
+
+    /**
+     * Esegue un'operazione misurandone latenza e allocazioni (anche se termina con un'eccezione).
+     * Da chiamare solo se ENABLED è true.
+     */
+    public static <T> T time(Operation operation, Supplier<T> body) {
+        long allocated = State.allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            return body.get();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            State.record(operation, elapsed, State.allocatedBytes() - allocated);
+        }
+    }
+
+    /**
+     * Registra la durata di una fase iniziata all'istante start, senza misurare le allocazioni.
+     * Pensato per i cicli: t = lap(FASE_1, t); ...; t = lap(FASE_2, t). Da chiamare solo se ENABLED è true.
+     * @return L'istante successivo alla registrazione, da usare come inizio della fase successiva (il costo
+     *         della registrazione non viene attribuito a nessuna delle due fasi).
+     */
+    public static long lap(Operation operation, long start) {
+        State.record(operation, System.nanoTime() - start, -1);
+        return System.nanoTime();
+    }
+
+    /**
+     * Pubblica i contatori di una cache con il nome indicato (sostituisce una registrazione omonima).
+     */
+    public static void registerCache(String name, CacheCounter counter) {
+        State.CACHES.put(name, counter);
+    }
+
+    /**
+     * @return I contatori registrati con il nome indicato, creati e registrati se assenti.
+     */
+    public static CacheCounter cache(String name) {
+        return State.CACHES.computeIfAbsent(name, key -> new CacheCounter());
+    }
+
+    /** @return Il numero di chiamate registrate per l'operazione. */
+    public static long getCallCount(Operation operation) {
+        return State.CALLS[operation.ordinal()].sum();
+    }
+
+    /** Azzera tutti i contatori, comprese le cache registrate. */
+    public static void reset() {
+        State.reset();
+    }
+
+    /**
+     * @return Un riepilogo testuale: per ogni operazione chiamate, tempo totale, latenza media, p50/p99
+     * (limite superiore del bucket) e byte allocati per chiamata; poi hit e miss delle cache.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("--- Metriche dell'analizzatore ---\n");
+        boolean header = false;
+        for (Operation operation : Operation.values()) {
+            long calls = getCallCount(operation);
+            if (calls == 0) {
+                continue;
+            }
+            if (!header) {
+                report.append(String.format("%-28s %12s %12s %12s %12s %12s %12s%n",
+                                            "Operazione", "Chiamate", "Totale ms", "Media ns", "p50 ns <=", "p99 ns <=", "Byte/chiam."));
+                header = true;
+            }
+            long total = State.NANOS[operation.ordinal()].sum();
+            long allocated = State.allocatedPerCall(operation);
+            report.append(String.format("%-28s %12d %12.3f %12d %12d %12d %12s%n",
+                                        operation.getLabel(), calls, total / 1e6, total / calls,
+                                        State.percentile(operation, 0.50), State.percentile(operation, 0.99),
+                                        allocated < 0 ? "-" : String.valueOf(allocated)));
+        }
+        if (!State.CACHES.isEmpty()) {
+            report.append(String.format("%-28s %12s %12s %12s%n", "Cache", "Hit", "Miss", "Hit %"));
+            for (Map.Entry<String, CacheCounter> entry : State.CACHES.entrySet()) {
+                long hits = entry.getValue().getHits();
+                long misses = entry.getValue().getMisses();
+                report.append(String.format("%-28s %12d %12d %12.1f%n", entry.getKey(), hits, misses,
+                                            hits + misses == 0 ? 0.0 : 100.0 * hits / (hits + misses)));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Stato delle metriche, inizializzato (con la registrazione dell'MBean) solo al primo uso.
+     */
+    private static final class State {
+        private static final int OPERATIONS = Operation.values().length;
+
+        static final LongAdder[] CALLS = new LongAdder[OPERATIONS];
+        static final LongAdder[] NANOS = new LongAdder[OPERATIONS];
+        static final LongAdder[] BYTES = new LongAdder[OPERATIONS];
+        static final LongAdder[] MEASURED = new LongAdder[OPERATIONS]; // Chiamate con allocazioni misurate
+        static final LongAdder[] HISTOGRAM = new LongAdder[OPERATIONS * BUCKETS];
+        static final ConcurrentMap<String, CacheCounter> CACHES = new ConcurrentHashMap<>();
+        private static final com.sun.management.ThreadMXBean THREADS;
+
+        static {
+            for (int i = 0; i < OPERATIONS; i++) {
+                CALLS[i] = new LongAdder();
+                NANOS[i] = new LongAdder();
+                BYTES[i] = new LongAdder();
+                MEASURED[i] = new LongAdder();
+            }
+            for (int i = 0; i < HISTOGRAM.length; i++) {
+                HISTOGRAM[i] = new LongAdder();
+            }
+
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            com.sun.management.ThreadMXBean allocations = null;
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                allocations = (com.sun.management.ThreadMXBean) threads;
+                if (!allocations.isThreadAllocatedMemorySupported()) {
+                    allocations = null;
+                } else if (!allocations.isThreadAllocatedMemoryEnabled()) {
+                    allocations.setThreadAllocatedMemoryEnabled(true);
+                }
+            }
+            THREADS = allocations;
+
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+            } catch (JMException | SecurityException e) {
+                System.err.println("Avviso: Impossibile registrare l'MBean delle metriche: " + e.getMessage());
+            }
+        }
+
+        static long allocatedBytes() {
+            return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+        }
+
+        static void record(Operation operation, long nanos, long bytes) {
+            int index = operation.ordinal();
+            CALLS[index].increment();
+            NANOS[index].add(nanos);
+            HISTOGRAM[index * BUCKETS + (Long.SIZE - Long.numberOfLeadingZeros(Math.max(nanos, 0)))].increment();
+            if (bytes >= 0) {
+                BYTES[index].add(bytes);
+                MEASURED[index].increment();
+            }
+        }
+
+        static long allocatedPerCall(Operation operation) {
+            long measured = MEASURED[operation.ordinal()].sum();
+            return measured == 0 ? -1 : BYTES[operation.ordinal()].sum() / measured;
+        }
+
+        // Limite superiore (in ns) del bucket che contiene il percentile richiesto
+        static long percentile(Operation operation, double fraction) {
+            int base = operation.ordinal() * BUCKETS;
+            long total = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                total += HISTOGRAM[base + b].sum();
+            }
+            long threshold = (long) Math.ceil(total * fraction);
+            long cumulative = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                cumulative += HISTOGRAM[base + b].sum();
+                if (cumulative >= threshold && cumulative > 0) {
+                    return b >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << b) - 1;
+                }
+            }
+            return 0;
+        }
+
+        static void reset() {
+            for (int i = 0; i < OPERATIONS; i++) {
+                CALLS[i].reset();
+                NANOS[i].reset();
+                BYTES[i].reset();
+                MEASURED[i].reset();
+            }
+            for (LongAdder bucket : HISTOGRAM) {
+                bucket.reset();
+            }
+            for (CacheCounter counter : CACHES.values()) {
+                counter.reset();
+            }
+        }
+    }
+
+    private static final class Bean implements MetricsMXBean {
+        @Override
+        public Map<String, Long> getCallCounts() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (Operation operation : Operation.values()) {
+                values.put(operation.getLabel(), getCallCount(operation));
+            }
+            return values;
+        }
+
+        @Override
+        public Map<String, Double> getMeanLatencyMicros() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            for (Operation operation : Operation.values()) {
+                long calls = getCallCount(operation);
+                values.put(operation.getLabel(), calls == 0 ? 0.0 : State.NANOS[operation.ordinal()].sum() / 1e3 / calls);
+            }
+            return values;
+        }
+
+        @Override
+        public Map<String, Long> getP99LatencyNanos() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (Operation operation : Operation.values()) {
+                values.put(operation.getLabel(), State.percentile(operation, 0.99));
+            }
+            return values;
+        }
+
+        @Override
+        public Map<String, Long> getAllocatedBytesPerCall() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (Operation operation : Operation.values()) {
+                values.put(operation.getLabel(), State.allocatedPerCall(operation));
+            }
+            return values;
+        }
+
+        @Override
+        public Map<String, Long> getCacheHits() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            State.CACHES.forEach((name, counter) -> values.put(name, counter.getHits()));
+            return values;
+        }
+
+        @Override
+        public Map<String, Long> getCacheMisses() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            State.CACHES.forEach((name, counter) -> values.put(name, counter.getMisses()));
+            return values;
+        }
+
+        @Override
+        public String getReport() {
+            return report();
+        }
+
+        @Override
+        public void reset() {
+            AnalyzerMetrics.reset();
+        }
+    }
+}
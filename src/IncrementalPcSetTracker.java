@@ -0,0 +1,155 @@
+/**
+ * Analisi incrementale di un flusso di eventi note-on/note-off.
+ * Per ogni pitch class mantiene il numero di note attive (più note della stessa pitch class possono suonare
+ * insieme, es. in ottave diverse): il bit della pitch class nella maschera corrente si accende quando il
+ * contatore passa da 0 a 1 e si spegne quando torna a 0. Ogni evento costa O(1) e la classe del set
+ * corrente è una lettura in SetClassCatalog, quindi un intero flusso si analizza in una sola passata lineare
+ * senza ricostruire liste né ricalcolare la Prime Form.
+ *
+ * Gli eventi dello stesso istante (es. le note di un accordo, o un cambio d'accordo con note-off e note-on
+ * nello stesso tick) vengono accorpati: la notifica di un istante viene trattenuta finché il flusso non passa
+ * a un istante successivo (o fino a flush) e il listener la riceve solo se la classe al termine dell'istante
+ * differisce dall'ultima notificata. Le classi intermedie, che non suonano mai, non vengono riportate.
+ *
+ * Gli istanti devono essere non decrescenti. Le istanze non sono thread-safe.
+ */
+public class IncrementalPcSetTracker {
+
+    /**
+     * Riceve i cambi di classe di insiemi del set attivo.
+     */
+    public interface SetClassListener {
+        /**
+         * @param time L'istante in cui è avvenuto il cambio (nell'unità del flusso, es. tick MIDI).
+         * @param mask La maschera del set attivo al termine dell'istante.
+         * @param previousClassId La classe notificata in precedenza (identificativo di SetClassCatalog).
+         * @param classId La nuova classe.
+         */
+        void setClassChanged(long time, int mask, int previousClassId, int classId);
+    }
+
+    private static final int EMPTY_CLASS = SetClassCatalog.classOf(0);
+
+    private final int[] counts = new int[PcSet.MODULUS];
+    private final SetClassListener listener;
+    private int mask;
+    private int classId = EMPTY_CLASS; // Ultima classe notificata
+    private long pendingTime = Long.MIN_VALUE;
+    private boolean pending;           // true se ci sono eventi di pendingTime non ancora valutati
+    private long events;
+    private long changes;
+
+    /**
+     * @param listener Il destinatario dei cambi di classe (può essere null).
+     */
+    public IncrementalPcSetTracker(SetClassListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Registra l'inizio di una nota.
+     * @param time L'istante dell'evento.
+     * @param pitch L'altezza (es. numero di nota MIDI) o la pitch class: viene ridotta modulo 12.
+     */
+    public void noteOn(long time, int pitch) {
+        int pc = PitchSetUtils.normalizePc(pitch);
+        advance(time);
+        events++;
+        if (counts[pc]++ == 0) {
+            mask |= 1 << pc;
+        }
+    }
+
+    /**
+     * Registra la fine di una nota. Un note-off senza il note-on corrispondente viene ignorato.
+     * @param time L'istante dell'evento.
+     * @param pitch L'altezza o la pitch class della nota.
+     */
+    public void noteOff(long time, int pitch) {
+        int pc = PitchSetUtils.normalizePc(pitch);
+        advance(time);
+        events++;
+        if (counts[pc] == 0) {
+            return;
+        }
+        if (--counts[pc] == 0) {
+            mask &= ~(1 << pc);
+        }
+    }
+
+    /**
+     * Spegne tutte le note attive (es. fine brano o messaggio "all notes off").
+     * @param time L'istante dell'evento.
+     */
+    public void reset(long time) {
+        advance(time);
+        for (int pc = 0; pc < PcSet.MODULUS; pc++) {
+            counts[pc] = 0;
+        }
+        mask = 0;
+    }
+
+    /**
+     * Chiude l'istante corrente: se la classe del set attivo differisce dall'ultima notificata, il listener
+     * riceve il cambio. Va chiamato alla fine del flusso, dopo l'ultimo evento; non serve tra un istante e
+     * l'altro, perché il primo evento di un istante successivo chiude automaticamente quello precedente.
+     */
+    public void flush() {
+        if (pending) {
+            pending = false;
+            int newClass = SetClassCatalog.classOf(mask);
+            if (newClass != classId) {
+                int previous = classId;
+                classId = newClass;
+                changes++;
+                if (listener != null) {
+                    listener.setClassChanged(pendingTime, mask, previous, newClass);
+                }
+            }
+        }
+    }
+
+    // Passa all'istante time, notificando l'eventuale cambio dell'istante precedente
+    private void advance(long time) {
+        if (time < pendingTime) {
+            throw new IllegalArgumentException("Errore: Gli eventi devono avere istanti non decrescenti (" + time + " < " + pendingTime + ").");
+        }
+        if (pending && time != pendingTime) {
+            flush();
+        }
+        pending = true;
+        pendingTime = time;
+    }
+
+    /** @return La maschera delle pitch classes attive. */
+    public int getMask() {
+        return mask;
+    }
+
+    public PcSet getPcSet() {
+        return PcSet.fromMask(mask);
+    }
+
+    /**
+     * @return La classe di insiemi del set attivo (identificativo di SetClassCatalog), compresi gli eventi
+     *         dell'istante corrente non ancora notificati.
+     */
+    public int getClassId() {
+        return SetClassCatalog.classOf(mask);
+    }
+
+    /** @return Il numero di note attive della pitch class indicata. */
+    public int getActiveCount(int pc) {
+        return counts[PitchSetUtils.normalizePc(pc)];
+    }
+
+    /** @return Il numero di eventi elaborati. */
+    public long getEventCount() {
+        return events;
+    }
+
+    /** @return Il numero di cambi di classe notificati. */
+    public long getChangeCount() {
+        return changes;
+    }
+}
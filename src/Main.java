@@ -1,9 +1,12 @@
-
 public class Main {
 
 	public static void main(String[] args) {
 		PitchSetCalculator calculator = new PitchSetCalculator();
-        calculator.run(args);
+        int status = calculator.run(args);
+        // Con stato 0 il processo termina da solo, lasciando attivo un eventuale server (--serve)
+        if (status != PitchSetCalculator.EXIT_OK) {
+            System.exit(status);
+        }
 	}
 
 }
@@ -0,0 +1,364 @@
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Stream;
+
+/**
+ * Pipeline di analisi di un corpus di Standard MIDI File presenti in una directory locale.
+ *
+ * Ogni file viene segmentato in simultaneità (il set delle note che suonano, via IncrementalPcSetTracker)
+ * oppure in finestre temporali scorrevoli sugli attacchi (via SlidingWindowAnalyzer); le altezze diventano
+ * pitch classes con PitchSetUtils.normalizePc e ogni segmento viene classificato nella propria classe di
+ * insiemi. Per ogni classe si accumulano il numero di segmenti e la loro durata in tick, per file e per
+ * l'intero corpus. Il canale 10 (percussioni) viene ignorato, perché le sue note non sono altezze.
+ *
+ * Le fasi sono collegate da code limitate (backpressure): un thread elenca i file, N thread li leggono e
+ * li analizzano, il thread chiamante scrive i risultati in CSV man mano che arrivano e aggrega il corpus.
+ */
+public class MidiCorpusPipeline {
+
+    /**
+     * Istogramma delle classi di insiemi di un file (o dell'intero corpus).
+     */
+    public static final class FileResult {
+        private final Path file;
+        private final int[] segments = new int[SetClassCatalog.CLASS_COUNT];
+        private final long[] ticks = new long[SetClassCatalog.CLASS_COUNT];
+        private long noteEvents;
+        private String error;
+
+        FileResult(Path file) {
+            this.file = file;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /** @return Il numero di segmenti della classe indicata (identificativo di SetClassCatalog). */
+        public int getSegments(int classId) {
+            return segments[classId];
+        }
+
+        /** @return La durata complessiva in tick dei segmenti della classe indicata. */
+        public long getTicks(int classId) {
+            return ticks[classId];
+        }
+
+        public long getNoteEvents() {
+            return noteEvents;
+        }
+
+        /** @return Il messaggio di errore se il file non è stato letto, altrimenti null. */
+        public String getError() {
+            return error;
+        }
+
+        void add(FileResult other) {
+            for (int c = 0; c < SetClassCatalog.CLASS_COUNT; c++) {
+                segments[c] += other.segments[c];
+                ticks[c] += other.ticks[c];
+            }
+            noteEvents += other.noteEvents;
+        }
+    }
+
+    private static final Path END_OF_PATHS = Paths.get("");
+    private static final FileResult END_OF_RESULTS = new FileResult(END_OF_PATHS);
+    private static final int DRUM_CHANNEL = 9;
+    private static final String[] COLUMNS = {"scope", "file", "forte", "prime_form", "segments", "ticks"};
+
+    private final int threads;
+    private final double windowBeats;
+
+    private int filesAnalyzed;
+    private int filesFailed;
+
+    /**
+     * @param threads Il numero di thread di analisi (almeno 1).
+     * @param windowBeats La durata della finestra in battiti (semiminime); 0 per segmentare in simultaneità.
+     */
+    public MidiCorpusPipeline(int threads, double windowBeats) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Errore: Il numero di thread deve essere almeno 1.");
+        }
+        if (windowBeats < 0) {
+            throw new IllegalArgumentException("Errore: La durata della finestra non può essere negativa.");
+        }
+        this.threads = threads;
+        this.windowBeats = windowBeats;
+    }
+
+    /**
+     * Analizza tutti i file .mid/.midi sotto la directory indicata e scrive i risultati in CSV.
+     * Colonne: scope (file o corpus), file, forte, prime_form, segments, ticks. Le righe dei file seguono
+     * l'ordine di completamento; quelle del corpus, in ordine di Forte, chiudono l'output.
+     *
+     * @param root La directory del corpus.
+     * @param out La destinazione del CSV, scritto tramite PcSetRenderer (viene svuotata ma non chiusa).
+     * @return L'istogramma dell'intero corpus.
+     * @throws IOException In caso di errori di scrittura o se la directory non è leggibile.
+     */
+    public FileResult run(Path root, OutputStream out) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException("La directory '" + root + "' non esiste.");
+        }
+        BlockingQueue<Path> paths = new ArrayBlockingQueue<>(2 * threads);
+        BlockingQueue<FileResult> results = new ArrayBlockingQueue<>(2 * threads);
+        String[] walkError = new String[1];
+
+        Thread producer = new Thread(() -> {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.filter(MidiCorpusPipeline::isMidiFile).sorted().forEach(path -> put(paths, path));
+            } catch (IOException | RuntimeException e) {
+                walkError[0] = e.getMessage();
+            } finally {
+                for (int i = 0; i < threads; i++) {
+                    put(paths, END_OF_PATHS);
+                }
+            }
+        }, "midi-corpus-scan");
+        producer.setDaemon(true);
+        producer.start();
+
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                // END_OF_RESULTS viene inviato comunque: il thread chiamante attende un marcatore per worker
+                try {
+                    while (true) {
+                        Path path = take(paths);
+                        if (path == END_OF_PATHS) {
+                            return;
+                        }
+                        FileResult result;
+                        try {
+                            result = analyze(path, windowBeats);
+                        } catch (RuntimeException | Error e) { // Es. OutOfMemoryError su un file molto grande
+                            result = new FileResult(path);
+                            result.error = describe(e);
+                        }
+                        put(results, result);
+                    }
+                } finally {
+                    put(results, END_OF_RESULTS);
+                }
+            }, "midi-corpus-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        FileResult corpus = new FileResult(root);
+        PcSetRenderer csv = PcSetRenderer.create(PcSetRenderer.Format.CSV, out, COLUMNS);
+        int finishedWorkers = 0;
+        while (finishedWorkers < threads) {
+            FileResult result = take(results);
+            if (result == END_OF_RESULTS) {
+                finishedWorkers++;
+                continue;
+            }
+            if (result.error != null) {
+                filesFailed++;
+                System.err.println("Errore: Impossibile analizzare '" + result.file + "': " + result.error);
+                continue;
+            }
+            filesAnalyzed++;
+            writeRows(csv, "file", root.relativize(result.file).toString(), result);
+            corpus.add(result);
+        }
+        if (walkError[0] != null) {
+            System.err.println("Errore durante la scansione di '" + root + "': " + walkError[0]);
+        }
+        writeRows(csv, "corpus", "", corpus);
+        csv.flush();
+        return corpus;
+    }
+
+    public int getFilesAnalyzed() {
+        return filesAnalyzed;
+    }
+
+    public int getFilesFailed() {
+        return filesFailed;
+    }
+
+    private static String describe(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    private static boolean isMidiFile(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return (name.endsWith(".mid") || name.endsWith(".midi")) && Files.isRegularFile(path);
+    }
+
+    private static void writeRows(PcSetRenderer csv, String scope, String file, FileResult result) throws IOException {
+        int[] pcs = new int[PcSet.MODULUS];
+        for (int c = 0; c < SetClassCatalog.CLASS_COUNT; c++) {
+            if (result.segments[c] == 0) {
+                continue;
+            }
+            int size = PcSet.fromMask(SetClassCatalog.primeFormMask(c)).toArray(pcs);
+            csv.text(scope).text(file).text(SetClassCatalog.forteName(c)).set(pcs, size)
+               .number(result.segments[c]).number(result.ticks[c]).endRecord();
+        }
+    }
+
+    // Analisi di un singolo file
+
+    /**
+     * Legge e segmenta un file MIDI.
+     * @param file Il file da analizzare.
+     * @param windowBeats La durata della finestra in battiti; 0 per le simultaneità.
+     * @return L'istogramma del file (con getError() valorizzato se il file non è leggibile).
+     */
+    public static FileResult analyze(Path file, double windowBeats) {
+        FileResult result = new FileResult(file);
+        Sequence sequence;
+        try {
+            sequence = MidiSystem.getSequence(file.toFile());
+        } catch (InvalidMidiDataException | IOException e) {
+            result.error = describe(e);
+            return result;
+        }
+
+        long[] events = collectNoteEvents(sequence);
+        result.noteEvents = events.length;
+        SegmentAccumulator accumulator = new SegmentAccumulator(result);
+        long endTick = sequence.getTickLength();
+
+        if (windowBeats > 0) {
+            // In PPQ la risoluzione è in tick per semiminima; in SMPTE in tick per frame
+            long window = Math.max(1, Math.round(windowBeats * sequence.getResolution()));
+            SlidingWindowAnalyzer analyzer = new SlidingWindowAnalyzer(window, accumulator);
+            for (long event : events) {
+                if (isNoteOn(event)) {
+                    analyzer.onset(tickOf(event), pitchOf(event));
+                }
+            }
+            long lastTick = events.length > 0 ? tickOf(events[events.length - 1]) : 0;
+            endTick = Math.max(endTick, lastTick + window);
+            analyzer.advanceTo(endTick);
+            analyzer.flush();
+        } else {
+            IncrementalPcSetTracker tracker = new IncrementalPcSetTracker(accumulator);
+            for (long event : events) {
+                if (isNoteOn(event)) {
+                    tracker.noteOn(tickOf(event), pitchOf(event));
+                } else {
+                    tracker.noteOff(tickOf(event), pitchOf(event));
+                }
+            }
+            tracker.flush();
+        }
+        accumulator.finish(endTick);
+        return result;
+    }
+
+    /**
+     * Raccoglie gli eventi di nota di tutte le tracce (escluso il canale delle percussioni) in un array
+     * ordinato di long: (tick << 8) | (note-on << 7) | altezza. A parità di tick i note-off precedono i note-on.
+     */
+    static long[] collectNoteEvents(Sequence sequence) {
+        int total = 0;
+        for (Track track : sequence.getTracks()) {
+            total += track.size();
+        }
+        long[] events = new long[total];
+        int count = 0;
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+                MidiEvent event = track.get(i);
+                if (!(event.getMessage() instanceof ShortMessage)) {
+                    continue;
+                }
+                ShortMessage message = (ShortMessage) event.getMessage();
+                int command = message.getCommand();
+                if ((command != ShortMessage.NOTE_ON && command != ShortMessage.NOTE_OFF) || message.getChannel() == DRUM_CHANNEL) {
+                    continue;
+                }
+                boolean on = command == ShortMessage.NOTE_ON && message.getData2() > 0; // Velocity 0 equivale a note-off
+                events[count++] = (event.getTick() << 8) | (on ? 1L << 7 : 0) | message.getData1();
+            }
+        }
+        long[] notes = Arrays.copyOf(events, count);
+        Arrays.sort(notes);
+        return notes;
+    }
+
+    private static long tickOf(long event) {
+        return event >>> 8;
+    }
+
+    private static boolean isNoteOn(long event) {
+        return (event & (1L << 7)) != 0;
+    }
+
+    private static int pitchOf(long event) {
+        return (int) (event & 0x7F);
+    }
+
+    /**
+     * Trasforma i cambi di classe in segmenti: ogni notifica chiude il segmento [since, time) della classe
+     * precedente. Il tracker notifica al più un cambio per istante e solo verso una classe diversa, quindi
+     * ogni segmento ha durata positiva ed è distinto dal precedente; il silenzio non viene contato.
+     */
+    private static final class SegmentAccumulator implements IncrementalPcSetTracker.SetClassListener {
+        private static final int EMPTY_CLASS = SetClassCatalog.classOf(0);
+
+        private final FileResult result;
+        private long since;
+        private int classId = EMPTY_CLASS;
+
+        SegmentAccumulator(FileResult result) {
+            this.result = result;
+        }
+
+        @Override
+        public void setClassChanged(long time, int mask, int previousClassId, int newClassId) {
+            close(time);
+            classId = newClassId;
+        }
+
+        void finish(long endTick) {
+            close(Math.max(endTick, since));
+        }
+
+        private void close(long time) {
+            if (classId != EMPTY_CLASS && time > since) {
+                result.segments[classId]++;
+                result.ticks[classId] += time - since;
+            }
+            since = time;
+        }
+    }
+
+    // Code bloccanti senza eccezioni controllate: un'interruzione termina il thread corrente
+
+    private static <T> void put(BlockingQueue<T> queue, T item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Pipeline interrotta", e);
+        }
+    }
+
+    private static <T> T take(BlockingQueue<T> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Pipeline interrotta", e);
+        }
+    }
+}
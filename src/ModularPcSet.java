@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Insieme immutabile di pitch classes in un universo a modulus suddivisioni dell'ottava (Z_n, es. 19, 24,
+ * 31 o 53 EDO), rappresentato da una maschera a 64 bit: il bit pc corrisponde alla pitch class pc.
+ * È la generalizzazione di PcSet, che resta la rappresentazione preferita (e precalcolata) per modulus = 12.
+ * Trasposizione e inversione sono rotazioni e inversioni di bit limitate ai primi modulus bit.
+ */
+public final class ModularPcSet {
+
+    public static final int MAX_MODULUS = Long.SIZE;
+
+    private final long mask;
+    private final int modulus;
+
+    private ModularPcSet(long mask, int modulus) {
+        this.mask = mask;
+        this.modulus = modulus;
+    }
+
+    /**
+     * Verifica che il modulo sia supportato (da 1 a MAX_MODULUS).
+     * @throws IllegalArgumentException Se il modulo è fuori range.
+     */
+    public static void checkModulus(int modulus) {
+        if (modulus < 1 || modulus > MAX_MODULUS) {
+            throw new IllegalArgumentException("Errore: Il modulo " + modulus + " non è supportato (1-" + MAX_MODULUS + ").");
+        }
+    }
+
+    public static ModularPcSet fromMask(long mask, int modulus) {
+        checkModulus(modulus);
+        return new ModularPcSet(mask & fullMask(modulus), modulus);
+    }
+
+    public static ModularPcSet of(int modulus, int... pcs) {
+        checkModulus(modulus);
+        long mask = 0;
+        for (int pc : pcs) {
+            mask |= 1L << PitchSetUtils.normalizePc(pc, modulus);
+        }
+        return new ModularPcSet(mask, modulus);
+    }
+
+    /**
+     * Adattatore dalla rappresentazione a lista: le pitch classes vengono normalizzate modulo modulus.
+     */
+    public static ModularPcSet fromList(List<Integer> pcs, int modulus) {
+        checkModulus(modulus);
+        long mask = 0;
+        if (pcs != null) {
+            for (int i = 0; i < pcs.size(); i++) {
+                mask |= 1L << PitchSetUtils.normalizePc(pcs.get(i), modulus);
+            }
+        }
+        return new ModularPcSet(mask, modulus);
+    }
+
+    // Operazioni primitive sulle maschere
+
+    /**
+     * @return La maschera con i primi modulus bit a 1 (l'insieme cromatico).
+     */
+    public static long fullMask(int modulus) {
+        return modulus == Long.SIZE ? -1L : (1L << modulus) - 1;
+    }
+
+    /**
+     * Trasposizione T_n: rotazione a sinistra di n posizioni sui primi modulus bit.
+     */
+    public static long transposeMask(long mask, int n, int modulus) {
+        int shift = PitchSetUtils.normalizePc(n, modulus);
+        if (shift == 0) {
+            return mask;
+        }
+        return ((mask << shift) | (mask >>> (modulus - shift))) & fullMask(modulus);
+    }
+
+    /**
+     * Inversione I_n: pc diventa (n - pc) mod modulus (inversione dei bit seguita da una rotazione di n + 1).
+     */
+    public static long invertMask(long mask, int n, int modulus) {
+        long reversed = Long.reverse(mask) >>> (Long.SIZE - modulus);
+        return transposeMask(reversed, n + 1, modulus);
+    }
+
+    // Operazioni sulle istanze
+
+    public long mask() {
+        return mask;
+    }
+
+    public int modulus() {
+        return modulus;
+    }
+
+    public int cardinality() {
+        return Long.bitCount(mask);
+    }
+
+    public boolean isEmpty() {
+        return mask == 0;
+    }
+
+    public boolean contains(int pc) {
+        return (mask & (1L << PitchSetUtils.normalizePc(pc, modulus))) != 0;
+    }
+
+    public ModularPcSet transpose(int n) {
+        return new ModularPcSet(transposeMask(mask, n, modulus), modulus);
+    }
+
+    public ModularPcSet invert(int n) {
+        return new ModularPcSet(invertMask(mask, n, modulus), modulus);
+    }
+
+    public ModularPcSet complement() {
+        return new ModularPcSet(~mask & fullMask(modulus), modulus);
+    }
+
+    public ModularPcSet union(ModularPcSet other) {
+        checkSameModulus(other);
+        return new ModularPcSet(mask | other.mask, modulus);
+    }
+
+    public ModularPcSet intersection(ModularPcSet other) {
+        checkSameModulus(other);
+        return new ModularPcSet(mask & other.mask, modulus);
+    }
+
+    private void checkSameModulus(ModularPcSet other) {
+        if (other.modulus != modulus) {
+            throw new IllegalArgumentException("Errore: Impossibile combinare set con moduli diversi (" + modulus + " e " + other.modulus + ").");
+        }
+    }
+
+    /**
+     * Scrive le pitch classes in ordine crescente nell'array fornito.
+     * @return Il numero di pitch classes scritte.
+     */
+    public int toArray(int[] dest) {
+        int count = 0;
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            dest[count++] = Long.numberOfTrailingZeros(bits);
+        }
+        return count;
+    }
+
+    public int[] toArray() {
+        int[] pcs = new int[cardinality()];
+        toArray(pcs);
+        return pcs;
+    }
+
+    public List<Integer> toList() {
+        List<Integer> pcs = new ArrayList<>(cardinality());
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            pcs.add(Long.numberOfTrailingZeros(bits));
+        }
+        return pcs;
+    }
+
+    @Override
+    public String toString() {
+        int[] pcs = toArray();
+        return PitchSetUtils.toStringPcSet(pcs, pcs.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ModularPcSet that = (ModularPcSet) o;
+        return mask == that.mask && modulus == that.modulus;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(mask) + modulus;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Calcolo dell'Ordine Normale in tempo lineare, senza generare rotazioni né ordinare candidati.
+ *
+ * L'algoritmo lavora sulla stringa circolare degli intervalli (vedi PitchSetUtils.getCircularIntervals):
+ * la rotazione che inizia dalla pitch class di indice s ha span (modulo - c[s-1]) e intervalli successivi
+ * c[s], c[s+1], ..., c[s+n-2]. Lo span minimo richiede quindi che c[s-1] sia l'intervallo massimo M, e tra
+ * queste rotazioni vince quella lessicograficamente minima: è una ricerca della rotazione minima
+ * (algoritmo a due puntatori, come in Booth/Shiloach) ristretta agli indici che seguono un intervallo M.
+ * A parità completa (set simmetrici) si sceglie la rotazione che inizia con la pitch class più bassa,
+ * esattamente come il confronto a tre criteri usato in precedenza da PitchSetAnalyzer.
+ *
+ * Tutte le operazioni usano array primitivi e funzionano per qualsiasi modulo, anche dove una tabella
+ * precalcolata non è praticabile.
+ */
+public final class NormalOrderEngine {
+
+    private NormalOrderEngine() {
+    }
+
+    /**
+     * Calcola gli intervalli circolari di un set ordinato: c[k] = pc[k+1] - pc[k], e per l'ultimo
+     * elemento l'intervallo che torna al primo passando per il modulo.
+     *
+     * @param sortedPcs Le pitch classes in ordine crescente, senza duplicati, nel range [0, modulus).
+     * @param size Il numero di pitch classes valide in sortedPcs.
+     * @param modulus La dimensione dell'universo (12 per il sistema temperato).
+     * @param dest L'array di destinazione (almeno size elementi).
+     */
+    public static void circularIntervals(int[] sortedPcs, int size, int modulus, int[] dest) {
+        for (int k = 0; k < size - 1; k++) {
+            dest[k] = sortedPcs[k + 1] - sortedPcs[k];
+        }
+        dest[size - 1] = sortedPcs[0] + modulus - sortedPcs[size - 1];
+    }
+
+    /**
+     * Trova la rotazione dell'Ordine Normale a partire dalla stringa circolare degli intervalli.
+     *
+     * @param intervals Gli intervalli circolari (size elementi, somma pari al modulo).
+     * @param size Il numero di intervalli (cardinalità del set, almeno 1).
+     * @return L'indice della pitch class con cui inizia l'Ordine Normale.
+     */
+    public static int leastRotation(int[] intervals, int size) {
+        if (size == 1) {
+            return 0;
+        }
+        int max = 0;
+        for (int k = 0; k < size; k++) {
+            max = Math.max(max, intervals[k]);
+        }
+
+        // Due candidati validi i < j: si confrontano le rotazioni carattere per carattere.
+        // Se differiscono alla posizione k, tutti i candidati validi in [perdente, perdente + k]
+        // sono dominati dai corrispondenti candidati dell'altro puntatore e vengono scartati.
+        int i = nextStart(intervals, size, max, 0);
+        int j = nextStart(intervals, size, max, i + 1);
+        int k = 0;
+        while (j < size && k < size) {
+            int a = intervals[(i + k) % size];
+            int b = intervals[(j + k) % size];
+            if (a == b) {
+                k++;
+                continue;
+            }
+            if (a > b) {
+                i = nextStart(intervals, size, max, i + k + 1);
+            } else {
+                j = nextStart(intervals, size, max, j + k + 1);
+            }
+            if (i == j) {
+                j = nextStart(intervals, size, max, j + 1);
+            }
+            if (i > j) {
+                int tmp = i;
+                i = j;
+                j = tmp;
+            }
+            k = 0;
+        }
+
+        // Per i set simmetrici più rotazioni sono identiche: si prende quella con l'indice (e la pitch class) minore
+        return i % period(intervals, size);
+    }
+
+    /**
+     * Calcola l'indice iniziale dell'Ordine Normale di un set ordinato.
+     *
+     * @param sortedPcs Le pitch classes in ordine crescente, senza duplicati, nel range [0, modulus).
+     * @param size La cardinalità del set (almeno 1).
+     * @param modulus La dimensione dell'universo.
+     * @param scratch Array di lavoro di almeno size elementi (può essere riutilizzato tra chiamate).
+     * @return L'indice in sortedPcs della pitch class con cui inizia l'Ordine Normale.
+     */
+    public static int normalOrderStart(int[] sortedPcs, int size, int modulus, int[] scratch) {
+        circularIntervals(sortedPcs, size, modulus, scratch);
+        return leastRotation(scratch, size);
+    }
+
+    // Primo indice s >= from tale che la rotazione da s segua un intervallo massimo (cioè abbia span minimo)
+    private static int nextStart(int[] intervals, int size, int max, int from) {
+        for (int s = from; s < size; s++) {
+            if (intervals[(s + size - 1) % size] == max) {
+                return s;
+            }
+        }
+        return size;
+    }
+
+    // Periodo minimo della stringa circolare (un divisore di size)
+    private static int period(int[] intervals, int size) {
+        for (int p = 1; p < size; p++) {
+            if (size % p != 0) {
+                continue;
+            }
+            boolean periodic = true;
+            for (int k = p; k < size && periodic; k++) {
+                periodic = intervals[k] == intervals[k - p];
+            }
+            if (periodic) {
+                return p;
+            }
+        }
+        return size;
+    }
+}
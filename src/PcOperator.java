@@ -0,0 +1,333 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Operatore del gruppo T/I/M: la trasformazione affine pc -> (a * pc + b) mod modulus, con a primo con il modulo.
+ * T_n è (1, n), I_n è (-1, n), M_k è (k, 0); per 12 pitch classes i moltiplicatori sono 1, 5, 7 e 11 (M11 = I0).
+ *
+ * Un'espressione come "T3 I5 M5" viene compilata in un unico operatore, componendo da destra a sinistra come
+ * le funzioni (M5 si applica per primo, T3 per ultimo), quindi una catena di N operatori costa quanto uno solo.
+ * Per l'universo a 12 pitch classes l'operatore compilato genera alla prima applicazione una tabella di 4096
+ * maschere, e trasformare un set diventa una lettura indicizzata. Le istanze sono immutabili e thread-safe.
+ */
+public final class PcOperator {
+
+    private final int multiplier;
+    private final int offset;
+    private final int modulus;
+    private final int[] map; // map[pc] = (multiplier * pc + offset) mod modulus
+    private volatile short[] maskTable; // Solo per modulus = 12, costruita al primo uso
+
+    private PcOperator(int multiplier, int offset, int modulus) {
+        this.multiplier = multiplier;
+        this.offset = offset;
+        this.modulus = modulus;
+        this.map = new int[modulus];
+        for (int pc = 0; pc < modulus; pc++) {
+            map[pc] = (multiplier * pc + offset) % modulus;
+        }
+    }
+
+    /**
+     * @param multiplier Il moltiplicatore a (primo con modulus).
+     * @param offset La trasposizione b.
+     * @param modulus La dimensione dell'universo (da 2 a ModularPcSet.MAX_MODULUS).
+     * @return L'operatore pc -> a * pc + b.
+     * @throws IllegalArgumentException Se il modulo non è valido o a non è invertibile.
+     */
+    public static PcOperator of(int multiplier, int offset, int modulus) {
+        ModularPcSet.checkModulus(modulus);
+        int a = PitchSetUtils.normalizePc(multiplier, modulus);
+        if (gcd(a, modulus) != 1) {
+            throw new IllegalArgumentException("Errore: M" + multiplier + " non è invertibile nell'universo a " + modulus
+                                               + " pitch classes (il moltiplicatore deve essere primo con " + modulus + ").");
+        }
+        return new PcOperator(a, PitchSetUtils.normalizePc(offset, modulus), modulus);
+    }
+
+    public static PcOperator identity(int modulus) {
+        return of(1, 0, modulus);
+    }
+
+    public static PcOperator transposition(int n, int modulus) {
+        return of(1, n, modulus);
+    }
+
+    public static PcOperator inversion(int n, int modulus) {
+        return of(-1, n, modulus);
+    }
+
+    public static PcOperator multiplication(int k, int modulus) {
+        return of(k, 0, modulus);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+    /**
+     * @see #parse(String, int)
+     */
+    public static PcOperator parse(String expression) {
+        return parse(expression, PcSet.MODULUS);
+    }
+
+    /**
+     * Compila un'espressione di operatori: T&lt;n&gt;, I&lt;n&gt; (I da solo vale I0) e M&lt;k&gt;, separati da
+     * spazi o virgole oppure consecutivi ("T3I" = T3 I0). La composizione procede da destra a sinistra;
+     * l'espressione vuota è l'identità.
+     *
+     * @param expression L'espressione (maiuscole o minuscole).
+     * @param modulus La dimensione dell'universo.
+     * @return L'operatore composto.
+     * @throws IllegalArgumentException Se l'espressione contiene token non validi o moltiplicatori non invertibili.
+     */
+    public static PcOperator parse(String expression, int modulus) {
+        ModularPcSet.checkModulus(modulus);
+        // Composizione in forma affine: f = (a, b), f o g = (a * a', a * b' + b)
+        long a = 1;
+        long b = 0;
+        int i = expression.length();
+        while (i > 0) {
+            char c = expression.charAt(i - 1);
+            if (c == ' ' || c == ',' || c == '\t') {
+                i--;
+                continue;
+            }
+            int end = i;
+            while (i > 0 && Character.isDigit(expression.charAt(i - 1))) {
+                i--;
+            }
+            if (i == 0) {
+                throw new IllegalArgumentException("Errore: Nell'espressione '" + expression + "' manca l'operatore prima di '"
+                                                   + expression.substring(0, end) + "'. Usa T<n>, I<n> o M<k>.");
+            }
+            String digits = expression.substring(i, end);
+            char letter = Character.toUpperCase(expression.charAt(--i));
+            if (digits.isEmpty() && letter != 'I') {
+                throw new IllegalArgumentException("Errore: Operatore '" + expression.substring(i, end) + "' non valido nell'espressione '"
+                                                   + expression + "'. Usa T<n>, I<n> o M<k>.");
+            }
+            int value;
+            try {
+                value = digits.isEmpty() ? 0 : Integer.parseInt(digits);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Errore: Valore '" + digits + "' troppo grande nell'espressione '" + expression + "'.");
+            }
+            PcOperator operator;
+            switch (letter) {
+                case 'T':
+                    operator = transposition(value, modulus);
+                    break;
+                case 'I':
+                    operator = inversion(value, modulus);
+                    break;
+                case 'M':
+                    operator = multiplication(value, modulus);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Errore: Operatore '" + expression.substring(i, end) + "' non valido nell'espressione '"
+                                                       + expression + "'. Usa T<n>, I<n> o M<k>.");
+            }
+            // L'operatore letto sta a sinistra di quelli già composti
+            b = (operator.multiplier * b + operator.offset) % modulus;
+            a = operator.multiplier * a % modulus;
+        }
+        return new PcOperator((int) a, (int) b, modulus);
+    }
+
+    public int multiplier() {
+        return multiplier;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int modulus() {
+        return modulus;
+    }
+
+    /**
+     * @return L'operatore this o inner (prima inner, poi this).
+     */
+    public PcOperator compose(PcOperator inner) {
+        if (inner.modulus != modulus) {
+            throw new IllegalArgumentException("Errore: Operatori di universi diversi (" + modulus + " e " + inner.modulus + ").");
+        }
+        return new PcOperator(multiplier * inner.multiplier % modulus, (multiplier * inner.offset + offset) % modulus, modulus);
+    }
+
+    /**
+     * @return L'operatore inverso.
+     */
+    public PcOperator inverse() {
+        int inverseMultiplier = 1;
+        while (multiplier * inverseMultiplier % modulus != 1) {
+            inverseMultiplier++;
+        }
+        return of(inverseMultiplier, -inverseMultiplier * offset, modulus);
+    }
+
+    /**
+     * @return L'immagine di una pitch class (normalizzata nel modulo).
+     */
+    public int applyPc(int pc) {
+        return map[PitchSetUtils.normalizePc(pc, modulus)];
+    }
+
+    /**
+     * Trasforma una maschera a 12 bit (PcSet) con una lettura dalla tabella dell'operatore.
+     * @throws IllegalStateException Se l'operatore non è dell'universo a 12 pitch classes.
+     */
+    public int applyMask(int mask) {
+        short[] table = maskTable;
+        if (table == null) {
+            table = buildMaskTable();
+        }
+        return table[mask & PcSet.FULL_MASK];
+    }
+
+    private short[] buildMaskTable() {
+        if (modulus != PcSet.MODULUS) {
+            throw new IllegalStateException("Errore: La tabella delle maschere richiede l'universo a 12 pitch classes.");
+        }
+        // Ogni maschera è la precedente senza il bit più basso, più l'immagine di quel bit
+        short[] table = new short[PcSet.FULL_MASK + 1];
+        for (int mask = 1; mask <= PcSet.FULL_MASK; mask++) {
+            table[mask] = (short) (table[mask & (mask - 1)] | 1 << map[Integer.numberOfTrailingZeros(mask)]);
+        }
+        maskTable = table;
+        return table;
+    }
+
+    /**
+     * Trasforma una maschera dell'universo dell'operatore (ModularPcSet).
+     */
+    public long applyMask(long mask) {
+        if (modulus == PcSet.MODULUS) {
+            return applyMask((int) mask);
+        }
+        mask &= ModularPcSet.fullMask(modulus);
+        if (multiplier == 1) {
+            return ModularPcSet.transposeMask(mask, offset, modulus);
+        }
+        if (multiplier == modulus - 1) {
+            return ModularPcSet.invertMask(mask, offset, modulus);
+        }
+        long result = 0;
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            result |= 1L << map[Long.numberOfTrailingZeros(bits)];
+        }
+        return result;
+    }
+
+    /**
+     * Trasforma in un'unica passata, sul posto, un array di maschere a 12 bit.
+     */
+    public void applyAll(int[] masks) {
+        applyMask(0); // Costruisce la tabella fuori dal ciclo
+        short[] table = maskTable;
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = table[masks[i] & PcSet.FULL_MASK];
+        }
+    }
+
+    public PcSet apply(PcSet pcSet) {
+        return PcSet.fromMask(applyMask(pcSet.mask()));
+    }
+
+    public ModularPcSet apply(ModularPcSet pcSet) {
+        if (pcSet.modulus() != modulus) {
+            throw new IllegalArgumentException("Errore: Il set appartiene a un universo diverso da quello dell'operatore.");
+        }
+        return ModularPcSet.fromMask(applyMask(pcSet.mask()), modulus);
+    }
+
+    /**
+     * Trasforma ogni elemento di una sequenza mantenendone l'ordine e rimuovendo i duplicati, come
+     * PitchSetUtils.transpose. A differenza di PitchSetUtils.invert, le inversioni non rovesciano la sequenza.
+     */
+    public List<Integer> apply(List<Integer> pcs) {
+        List<Integer> result = new ArrayList<>(pcs.size());
+        long seen = 0;
+        for (int pc : pcs) {
+            int image = applyPc(pc);
+            if ((seen & (1L << image)) == 0) {
+                seen |= 1L << image;
+                result.add(image);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Legge un set per riga e scrive il set trasformato, con le colonne input, result ed error
+     * (vedi PitchSetBatchProcessor per formati e gestione degli errori). Lo stream viene svuotato ma non chiuso.
+     *
+     * @return Il numero di righe elaborate.
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    public long transformLines(BufferedReader reader, OutputStream out, PitchSetBatchProcessor.OutputFormat format) throws IOException {
+        PcSetRenderer renderer = PcSetRenderer.create(format.toRendererFormat(), out, "input", "result", "error");
+        int[] pcs = new int[modulus];
+        long count = 0;
+        String input;
+        while ((input = reader.readLine()) != null) {
+            if (input.trim().isEmpty()) {
+                continue;
+            }
+            renderer.text(input);
+            try {
+                long mask = PitchClassParser.parseMask(input, modulus);
+                if (mask == 0) {
+                    renderer.absent().text("Errore: Nessun numero valido inserito o set vuoto dopo il parsing.");
+                } else {
+                    int size = ModularPcSet.fromMask(applyMask(mask), modulus).toArray(pcs);
+                    renderer.set(pcs, size).absent();
+                }
+            } catch (IllegalArgumentException e) {
+                renderer.absent().text(e.getMessage());
+            }
+            renderer.endRecord();
+            count++;
+        }
+        renderer.flush();
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PcOperator)) return false;
+        PcOperator other = (PcOperator) o;
+        return multiplier == other.multiplier && offset == other.offset && modulus == other.modulus;
+    }
+
+    @Override
+    public int hashCode() {
+        return (multiplier * 31 + offset) * 31 + modulus;
+    }
+
+    /**
+     * @return La forma canonica dell'operatore, rileggibile con parse: "T4", "I3", "M5" o "T2 M7".
+     */
+    @Override
+    public String toString() {
+        if (multiplier == 1) {
+            return "T" + offset;
+        }
+        if (multiplier == modulus - 1) {
+            return "I" + offset;
+        }
+        return offset == 0 ? "M" + multiplier : "T" + offset + " M" + multiplier;
+    }
+}
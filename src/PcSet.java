@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rappresentazione compatta e immutabile di un insieme di pitch classes (modulo 12).
+ * Ogni pitch class pc corrisponde al bit (1 << pc) di una maschera a 12 bit, quindi
+ * un set occupa un solo intero e le operazioni T_n, I_n, unione, intersezione e
+ * complemento diventano semplici operazioni sui bit, senza liste né boxing.
+ * Le 4096 istanze possibili sono pre-allocate: nessuna operazione crea nuovi oggetti.
+ */
+public final class PcSet {
+
+    public static final int MODULUS = 12;
+    public static final int FULL_MASK = 0xFFF;
+
+    private static final PcSet[] INSTANCES = new PcSet[FULL_MASK + 1];
+
+    static {
+        for (int mask = 0; mask <= FULL_MASK; mask++) {
+            INSTANCES[mask] = new PcSet((short) mask);
+        }
+    }
+
+    public static final PcSet EMPTY = INSTANCES[0];
+    public static final PcSet CHROMATIC = INSTANCES[FULL_MASK];
+
+    private final short mask;
+
+    private PcSet(short mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * Restituisce il set corrispondente a una maschera a 12 bit.
+     * @param mask La maschera (i bit oltre l'undicesimo vengono ignorati).
+     * @return L'istanza condivisa del set.
+     */
+    public static PcSet fromMask(int mask) {
+        return INSTANCES[mask & FULL_MASK];
+    }
+
+    /**
+     * Costruisce un set da una sequenza di pitch classes, normalizzandole modulo 12.
+     * @param pcs Le pitch classes (anche negative o maggiori di 11).
+     * @return Il set corrispondente.
+     */
+    public static PcSet of(int... pcs) {
+        int mask = 0;
+        for (int pc : pcs) {
+            mask |= 1 << PitchSetUtils.normalizePc(pc);
+        }
+        return INSTANCES[mask];
+    }
+
+    /**
+     * Adattatore dalla rappresentazione a lista usata nel resto del programma.
+     * @param pcs La lista di pitch classes (non necessariamente ordinata o pulita).
+     * @return Il set corrispondente (vuoto se la lista è null).
+     */
+    public static PcSet fromList(List<Integer> pcs) {
+        return INSTANCES[maskOf(pcs)];
+    }
+
+    /**
+     * Calcola la maschera a 12 bit di una lista di pitch classes, normalizzandole modulo 12.
+     * @param pcs La lista di pitch classes.
+     * @return La maschera corrispondente (0 se la lista è null o vuota).
+     */
+    public static int maskOf(List<Integer> pcs) {
+        int mask = 0;
+        if (pcs != null) {
+            for (int i = 0; i < pcs.size(); i++) {
+                mask |= 1 << PitchSetUtils.normalizePc(pcs.get(i));
+            }
+        }
+        return mask;
+    }
+
+    // Operazioni primitive sulle maschere, utilizzabili senza passare da istanze di PcSet
+
+    /**
+     * Trasposizione T_n di una maschera: rotazione a sinistra di n posizioni sui 12 bit.
+     */
+    public static int transposeMask(int mask, int n) {
+        int shift = PitchSetUtils.normalizePc(n);
+        return ((mask << shift) | (mask >>> (MODULUS - shift))) & FULL_MASK;
+    }
+
+    /**
+     * Inversione I_n di una maschera: pc diventa (n - pc) mod 12.
+     * L'inversione del bit i in 11 - i, seguita da una rotazione di n + 1, porta i in n - i.
+     */
+    public static int invertMask(int mask, int n) {
+        return transposeMask(reverseMask(mask), n + 1);
+    }
+
+    /**
+     * Inverte l'ordine dei 12 bit della maschera (il bit i diventa il bit 11 - i).
+     */
+    public static int reverseMask(int mask) {
+        return Integer.reverse(mask & FULL_MASK) >>> (Integer.SIZE - MODULUS);
+    }
+
+    /**
+     * Complemento di una maschera nell'universo delle 12 pitch classes.
+     */
+    public static int complementMask(int mask) {
+        return ~mask & FULL_MASK;
+    }
+
+    // Operazioni sulle istanze
+
+    public int mask() {
+        return mask;
+    }
+
+    public int cardinality() {
+        return Integer.bitCount(mask);
+    }
+
+    public boolean isEmpty() {
+        return mask == 0;
+    }
+
+    public boolean contains(int pc) {
+        return (mask & (1 << PitchSetUtils.normalizePc(pc))) != 0;
+    }
+
+    /**
+     * @return true se ogni pitch class di questo set appartiene anche a other.
+     */
+    public boolean isSubsetOf(PcSet other) {
+        return (mask & ~other.mask) == 0;
+    }
+
+    public PcSet transpose(int n) {
+        return INSTANCES[transposeMask(mask, n)];
+    }
+
+    public PcSet invert(int n) {
+        return INSTANCES[invertMask(mask, n)];
+    }
+
+    public PcSet union(PcSet other) {
+        return INSTANCES[mask | other.mask];
+    }
+
+    public PcSet intersection(PcSet other) {
+        return INSTANCES[mask & other.mask];
+    }
+
+    public PcSet complement() {
+        return INSTANCES[complementMask(mask)];
+    }
+
+    /**
+     * Scrive le pitch classes in ordine crescente nell'array fornito.
+     * @param dest L'array di destinazione (almeno cardinality() elementi).
+     * @return Il numero di pitch classes scritte.
+     */
+    public int toArray(int[] dest) {
+        int count = 0;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            dest[count++] = Integer.numberOfTrailingZeros(bits);
+        }
+        return count;
+    }
+
+    public int[] toArray() {
+        int[] pcs = new int[cardinality()];
+        toArray(pcs);
+        return pcs;
+    }
+
+    /**
+     * Adattatore verso la rappresentazione a lista: pitch classes ordinate e senza duplicati.
+     * @return Una nuova lista modificabile.
+     */
+    public List<Integer> toList() {
+        List<Integer> pcs = new ArrayList<>(cardinality());
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            pcs.add(Integer.numberOfTrailingZeros(bits));
+        }
+        return pcs;
+    }
+
+    @Override
+    public String toString() {
+        int[] pcs = toArray();
+        return PitchSetUtils.toStringPcSet(pcs, pcs.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return mask == ((PcSet) o).mask;
+    }
+
+    @Override
+    public int hashCode() {
+        return mask;
+    }
+}
@@ -0,0 +1,623 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Archivio colonnare in memoria per l'analisi di grandi corpus di pc-set: per ogni riga la maschera del set,
+ * la sua classe (SetClassCatalog) e un numero fisso di colonne di metadati intere (es. file di origine,
+ * intervallo di tempo). Le interrogazioni contano le righe, le raggruppano per una o due colonne e ne
+ * estraggono le k più frequenti, elaborando i blocchi in parallelo.
+ *
+ * Le righe sono divise in blocchi di CHUNK_ROWS, ciascuno in un ByteBuffer fuori dallo heap con una regione
+ * contigua per colonna: nessun oggetto per riga. Quando la memoria dei blocchi completi supera il limite
+ * indicato, i blocchi vengono trascritti in un file temporaneo e sostituiti dalla sua mappatura in memoria,
+ * così l'archivio può superare la memoria disponibile. Le colonne virtuali "cardinality" (derivata dalla
+ * classe) e le colonne "mask" e "class" sono sempre disponibili.
+ *
+ * Le interrogazioni vedono solo i blocchi chiusi: dopo l'ultimo inserimento va chiamato seal(), altrimenti
+ * vengono rifiutate con IllegalStateException. L'inserimento non è thread-safe; le interrogazioni possono
+ * essere eseguite da più thread, purché nessun thread stia inserendo righe.
+ */
+public final class PcSetColumnStore implements Closeable {
+
+    public static final String MASK = "mask";
+    public static final String CLASS = "class";
+    public static final String CARDINALITY = "cardinality";
+
+    static final int CHUNK_ROWS = 1 << 20;
+    private static final int BATCH_ROWS = 1 << 12; // Righe copiate per volta durante le interrogazioni
+
+    // Colonne: 0 = maschera, 1 = classe, 2 = cardinalità (virtuale), 3.. = metadati
+    private static final int MASK_COLUMN = 0;
+    private static final int CLASS_COLUMN = 1;
+    private static final int CARDINALITY_COLUMN = 2;
+    private static final int FIRST_METADATA = 3;
+
+    // Il conteggio usa un array diretto invece della tabella hash se gli array di tutti i task insieme non
+    // superano DENSE_BUDGET contatori, o comunque fino a MIN_DENSE_GROUPS gruppi possibili
+    private static final long MIN_DENSE_GROUPS = 1 << 20;
+    private static final long DENSE_BUDGET = 1 << 24;
+    // Numero massimo di gruppi distinti per task nella tabella hash, che risiede nello heap
+    static final int MAX_GROUPS = 1 << 23;
+
+    private static final byte[] CLASS_CARDINALITY = new byte[SetClassCatalog.CLASS_COUNT];
+
+    static {
+        for (int c = 0; c < CLASS_CARDINALITY.length; c++) {
+            CLASS_CARDINALITY[c] = (byte) SetClassCatalog.cardinality(c);
+        }
+    }
+
+    private final String[] columns;
+    private final int metadataCount;
+    private final int rowBytes;
+    private final long memoryLimit;
+    private final Path spillDirectory;
+    private final List<ByteBuffer> chunks = new ArrayList<>(); // Blocchi completi, i primi spilledChunks mappati dal file
+    private final List<Integer> chunkRows = new ArrayList<>();
+    private final int[] values;
+    private final long[] min;
+    private final long[] max;
+    private ByteBuffer current;
+    private int currentRows;
+    private long size;
+    private long memoryBytes;
+    private FileChannel spill;
+    private Path spillPath;
+    private long spillBytes;
+    private int spilledChunks;
+
+    /**
+     * Crea un archivio vuoto che tiene tutti i blocchi in memoria.
+     * @param metadataColumns I nomi delle colonne di metadati.
+     */
+    public PcSetColumnStore(String... metadataColumns) {
+        this(metadataColumns, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * @param metadataColumns I nomi delle colonne di metadati (diversi da mask, class e cardinality).
+     * @param memoryLimit La memoria massima in byte dei blocchi fuori dallo heap; oltre, i blocchi completi
+     *                    vengono trascritti su disco.
+     * @param spillDirectory La directory del file temporaneo (null per la directory temporanea di sistema).
+     */
+    public PcSetColumnStore(String[] metadataColumns, long memoryLimit, Path spillDirectory) {
+        metadataCount = metadataColumns.length;
+        columns = new String[FIRST_METADATA + metadataCount];
+        columns[MASK_COLUMN] = MASK;
+        columns[CLASS_COLUMN] = CLASS;
+        columns[CARDINALITY_COLUMN] = CARDINALITY;
+        for (int c = 0; c < metadataCount; c++) {
+            if (Arrays.asList(columns).subList(0, FIRST_METADATA + c).contains(metadataColumns[c])) {
+                throw new IllegalArgumentException("Errore: Colonna duplicata o riservata: '" + metadataColumns[c] + "'.");
+            }
+            columns[FIRST_METADATA + c] = metadataColumns[c];
+        }
+        this.rowBytes = Short.BYTES + Byte.BYTES + metadataCount * Integer.BYTES;
+        this.memoryLimit = memoryLimit;
+        this.spillDirectory = spillDirectory;
+        this.values = new int[metadataCount];
+        this.min = new long[columns.length];
+        this.max = new long[columns.length];
+        Arrays.fill(min, Long.MAX_VALUE);
+        Arrays.fill(max, Long.MIN_VALUE);
+    }
+
+    /**
+     * Crea un archivio con le colonne di metadati di un corpus binario e vi carica tutti i suoi record.
+     */
+    public static PcSetColumnStore load(PcSetCorpusFile corpus, long memoryLimit, Path spillDirectory) throws IOException {
+        String[] names = new String[corpus.getColumnCount()];
+        for (int c = 0; c < names.length; c++) {
+            names[c] = corpus.getColumnName(c);
+        }
+        PcSetColumnStore store = new PcSetColumnStore(names, memoryLimit, spillDirectory);
+        try {
+            for (long i = 0; i < corpus.size(); i++) {
+                for (int c = 0; c < names.length; c++) {
+                    store.value(c, (int) corpus.value(i, c));
+                }
+                store.add(corpus.mask(i));
+            }
+            store.seal();
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * @return L'indice della colonna (0 = mask, 1 = class, 2 = cardinality, poi i metadati).
+     * @throws IllegalArgumentException Se la colonna non esiste.
+     */
+    public int column(String name) {
+        for (int c = 0; c < columns.length; c++) {
+            if (columns[c].equalsIgnoreCase(name.trim())) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("Errore: Colonna '" + name + "' inesistente. Colonne disponibili: " + String.join(", ", columns) + ".");
+    }
+
+    /** @return true se l'archivio ha trascritto blocchi su disco. */
+    public boolean isSpilled() {
+        return spill != null;
+    }
+
+    // Inserimento
+
+    /**
+     * Imposta un metadato della prossima riga (i valori non impostati valgono 0 e vengono azzerati dopo add).
+     * @param column L'indice del metadato (0 = prima colonna di metadati).
+     */
+    public PcSetColumnStore value(int column, int value) {
+        values[column] = value;
+        return this;
+    }
+
+    /**
+     * Aggiunge una riga con la maschera indicata e i metadati impostati con value.
+     * @throws IOException Se la trascrizione su disco di un blocco fallisce.
+     */
+    public void add(int mask) throws IOException {
+        if (current == null) {
+            current = ByteBuffer.allocateDirect(CHUNK_ROWS * rowBytes).order(ByteOrder.nativeOrder());
+            memoryBytes += current.capacity();
+        }
+        mask &= PcSet.FULL_MASK;
+        int classId = SetClassCatalog.classOf(mask);
+        current.putShort(currentRows * Short.BYTES, (short) mask);
+        current.put(CHUNK_ROWS * Short.BYTES + currentRows, (byte) classId);
+        track(MASK_COLUMN, mask);
+        track(CLASS_COLUMN, classId);
+        track(CARDINALITY_COLUMN, Integer.bitCount(mask));
+        for (int c = 0; c < metadataCount; c++) {
+            current.putInt(metadataOffset(c) + currentRows * Integer.BYTES, values[c]);
+            track(FIRST_METADATA + c, values[c]);
+            values[c] = 0;
+        }
+        size++;
+        if (++currentRows == CHUNK_ROWS) {
+            seal();
+        }
+    }
+
+    private void track(int column, long value) {
+        if (value < min[column]) min[column] = value;
+        if (value > max[column]) max[column] = value;
+    }
+
+    private int metadataOffset(int metadata) {
+        return CHUNK_ROWS * (Short.BYTES + Byte.BYTES) + metadata * CHUNK_ROWS * Integer.BYTES;
+    }
+
+    /**
+     * Chiude il blocco in corso, che diventa visibile alle interrogazioni. Viene chiamato automaticamente
+     * quando un blocco è pieno; va chiamato dopo l'ultimo inserimento.
+     */
+    public void seal() throws IOException {
+        if (current == null || currentRows == 0) {
+            return;
+        }
+        chunks.add(current); // Anche un blocco incompleto conserva la disposizione per CHUNK_ROWS righe
+        chunkRows.add(currentRows);
+        current = null;
+        currentRows = 0;
+        if (memoryBytes > memoryLimit) {
+            spillChunks();
+        }
+    }
+
+    // Trascrive su disco i blocchi ancora in memoria e li sostituisce con la mappatura del file
+    private void spillChunks() throws IOException {
+        if (spill == null) {
+            spillPath = spillDirectory == null ? Files.createTempFile("pcset-store", ".spill")
+                                               : Files.createTempFile(spillDirectory, "pcset-store", ".spill");
+            spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        for (; spilledChunks < chunks.size(); spilledChunks++) {
+            ByteBuffer chunk = chunks.get(spilledChunks);
+            long position = spillBytes;
+            ByteBuffer source = chunk.duplicate().clear();
+            while (source.hasRemaining()) {
+                spill.write(source, position + source.position());
+            }
+            spillBytes += chunk.capacity();
+            chunks.set(spilledChunks, spill.map(FileChannel.MapMode.READ_ONLY, position, chunk.capacity()).order(ByteOrder.nativeOrder()));
+            memoryBytes -= chunk.capacity();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunks.clear();
+        chunkRows.clear();
+        current = null;
+        if (spill != null) {
+            spill.close(); // Il file viene eliminato alla chiusura
+            spill = null;
+        }
+    }
+
+    // Interrogazioni
+
+    /**
+     * @return Il numero di righe in cui la colonna vale value.
+     * @throws IllegalStateException Se ci sono righe inserite dopo l'ultimo seal().
+     */
+    public long count(String column, long value) {
+        return groupBy(column, value, new String[0]).count(0);
+    }
+
+    /**
+     * @see #groupBy(String, long, String...)
+     */
+    public GroupCounts groupBy(String... keyColumns) {
+        return groupBy(null, 0, keyColumns);
+    }
+
+    /**
+     * Conta le righe per ogni combinazione di valori delle colonne chiave, considerando solo quelle in cui
+     * filterColumn vale filterValue. I gruppi sono in ordine crescente di chiave.
+     *
+     * @param filterColumn La colonna del filtro di uguaglianza (null per nessun filtro).
+     * @param filterValue Il valore richiesto.
+     * @param keyColumns Da zero a due colonne chiave (senza colonne il risultato è un unico gruppo, anche se
+     *                   nessuna riga soddisfa il filtro o l'archivio è vuoto).
+     * @throws IllegalArgumentException Se una colonna non esiste o le colonne chiave sono più di due.
+     * @throws IllegalStateException Se ci sono righe inserite dopo l'ultimo seal(), o se le combinazioni di
+     *                               chiavi distinte sono più di MAX_GROUPS.
+     */
+    public GroupCounts groupBy(String filterColumn, long filterValue, String... keyColumns) {
+        if (keyColumns.length > 2) {
+            throw new IllegalArgumentException("Errore: Al massimo due colonne di raggruppamento.");
+        }
+        int filter = filterColumn == null ? -1 : column(filterColumn);
+        int[] keys = new int[keyColumns.length];
+        for (int k = 0; k < keys.length; k++) {
+            keys[k] = column(keyColumns[k]);
+        }
+        String[] names = new String[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            names[k] = columns[keys[k]];
+        }
+        if (currentRows > 0) {
+            throw new IllegalStateException("Errore: L'archivio contiene " + currentRows
+                                            + " righe non ancora chiuse: chiamare seal() prima delle interrogazioni.");
+        }
+        if (size == 0) {
+            return keys.length == 0 ? new GroupCounts(names, new long[] {pack(0, 0)}, new long[] {0})
+                                    : new GroupCounts(names, new long[0], new long[0]);
+        }
+
+        // Chiave densa: (v0 - min0) * range1 + (v1 - min1) se il prodotto degli intervalli è piccolo
+        long range0 = keys.length > 0 ? max[keys[0]] - min[keys[0]] + 1 : 1;
+        long range1 = keys.length > 1 ? max[keys[1]] - min[keys[1]] + 1 : 1;
+        int tasks = Math.max(1, Math.min(chunks.size(), Runtime.getRuntime().availableProcessors() * 2));
+        long maxDense = Math.max(MIN_DENSE_GROUPS, DENSE_BUDGET / tasks);
+        boolean dense = range0 <= maxDense && range1 <= maxDense && range0 * range1 <= maxDense;
+        long base0 = keys.length > 0 ? min[keys[0]] : 0;
+        long base1 = keys.length > 1 ? min[keys[1]] : 0;
+        // Gruppi attesi per task, per dimensionare la tabella hash senza ingrandimenti successivi
+        int expected = (int) Math.min(Math.min(range0 * range1, size / tasks + 1), 1 << 20);
+
+        int key0 = keys.length > 0 ? keys[0] : -1;
+        int key1 = keys.length > 1 ? keys[1] : -1;
+        Object[] partials = IntStream.range(0, tasks).parallel().mapToObj(task -> {
+            // Le colonne vengono copiate a lotti in array primitivi, su cui i cicli di conteggio sono semplici
+            int[] filterValues = new int[BATCH_ROWS];
+            int[] values0 = new int[BATCH_ROWS];
+            int[] values1 = new int[BATCH_ROWS];
+            long[] denseCounts = dense ? new long[(int) (range0 * range1)] : null;
+            LongCounter hashCounts = dense ? null : new LongCounter(expected);
+            for (int c = task; c < chunks.size(); c += tasks) {
+                ByteBuffer chunk = chunks.get(c);
+                int rows = chunkRows.get(c);
+                for (int from = 0; from < rows; from += BATCH_ROWS) {
+                    int count = Math.min(BATCH_ROWS, rows - from);
+                    readColumn(chunk, filter, from, count, filterValues);
+                    readColumn(chunk, key0, from, count, values0);
+                    readColumn(chunk, key1, from, count, values1);
+                    int selected = filter >= 0 ? select(filterValues, filterValue, count, values0, values1) : count;
+                    if (dense) {
+                        countDense(values0, values1, selected, base0, base1, range1, denseCounts);
+                    } else {
+                        for (int i = 0; i < selected; i++) {
+                            hashCounts.add(pack(values0[i], values1[i]), 1);
+                        }
+                    }
+                }
+            }
+            return dense ? denseCounts : hashCounts;
+        }).toArray();
+
+        if (dense) {
+            long[] total = new long[(int) (range0 * range1)];
+            for (Object partial : partials) {
+                long[] counts = (long[]) partial;
+                for (int i = 0; i < total.length; i++) {
+                    total[i] += counts[i];
+                }
+            }
+            int groups = 0;
+            for (long count : total) {
+                if (count > 0 || keys.length == 0) groups++;
+            }
+            long[] packed = new long[groups];
+            long[] counts = new long[groups];
+            for (int i = 0, g = 0; i < total.length; i++) {
+                if (total[i] > 0 || keys.length == 0) {
+                    packed[g] = pack(base0 + i / range1, base1 + i % range1);
+                    counts[g++] = total[i];
+                }
+            }
+            return new GroupCounts(names, packed, counts);
+        }
+        LongCounter merged = (LongCounter) partials[0];
+        for (int p = 1; p < partials.length; p++) {
+            merged.addAll((LongCounter) partials[p]);
+        }
+        return merged.toGroups(names);
+    }
+
+    // Copia count valori di una colonna a partire dalla riga from (nessuna copia per column < 0)
+    private void readColumn(ByteBuffer chunk, int column, int from, int count, int[] dest) {
+        switch (column) {
+            case -1:
+                break;
+            case MASK_COLUMN:
+                for (int i = 0; i < count; i++) {
+                    dest[i] = chunk.getShort((from + i) * Short.BYTES);
+                }
+                break;
+            case CLASS_COLUMN:
+                for (int i = 0; i < count; i++) {
+                    dest[i] = chunk.get(CHUNK_ROWS * Short.BYTES + from + i) & 0xFF;
+                }
+                break;
+            case CARDINALITY_COLUMN: // Dalla colonna delle classi, più compatta di quella delle maschere
+                for (int i = 0; i < count; i++) {
+                    dest[i] = CLASS_CARDINALITY[chunk.get(CHUNK_ROWS * Short.BYTES + from + i) & 0xFF];
+                }
+                break;
+            default:
+                chunk.slice(metadataOffset(column - FIRST_METADATA) + from * Integer.BYTES, count * Integer.BYTES)
+                     .order(ByteOrder.nativeOrder()).asIntBuffer().get(dest, 0, count);
+        }
+    }
+
+    // Sposta in testa le chiavi delle righe che soddisfano il filtro e ne restituisce il numero
+    private static int select(int[] filterValues, long filterValue, int count, int[] values0, int[] values1) {
+        int selected = 0;
+        for (int i = 0; i < count; i++) {
+            if (filterValues[i] == filterValue) {
+                values0[selected] = values0[i];
+                values1[selected++] = values1[i];
+            }
+        }
+        return selected;
+    }
+
+    private static void countDense(int[] values0, int[] values1, int count, long base0, long base1, long range1, long[] counts) {
+        for (int i = 0; i < count; i++) {
+            counts[(int) ((values0[i] - base0) * range1 + (values1[i] - base1))]++;
+        }
+    }
+
+    // Due valori interi in una chiave che ne conserva l'ordine (il secondo con segno invertito per l'ordinamento)
+    private static long pack(long v0, long v1) {
+        return v0 << 32 | (v1 - Integer.MIN_VALUE) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Risultato di un raggruppamento: i valori delle colonne chiave e il numero di righe di ogni gruppo.
+     */
+    public static final class GroupCounts {
+        private final String[] columns;
+        private final long[] keys;
+        private final long[] counts;
+
+        GroupCounts(String[] columns, long[] keys, long[] counts) {
+            this.columns = columns;
+            this.keys = keys;
+            this.counts = counts;
+        }
+
+        public int size() {
+            return counts.length;
+        }
+
+        /** @return I nomi delle colonne chiave. */
+        public String[] getColumns() {
+            return columns.clone();
+        }
+
+        /**
+         * @param group L'indice del gruppo.
+         * @param key L'indice della colonna chiave (0 o 1).
+         * @return Il valore della colonna chiave nel gruppo.
+         */
+        public long key(int group, int key) {
+            return key == 0 ? keys[group] >> 32 : (int) (keys[group] + Integer.MIN_VALUE);
+        }
+
+        public long count(int group) {
+            return counts[group];
+        }
+
+        /** @return La somma dei conteggi di tutti i gruppi. */
+        public long total() {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * @return I k gruppi più numerosi, in ordine di conteggio decrescente (a parità, di chiave crescente).
+         */
+        public GroupCounts top(int k) {
+            k = Math.max(0, Math.min(k, counts.length));
+            // Min-heap di indici sui primi k gruppi, poi sostituzione della radice con i gruppi più numerosi
+            int[] heap = new int[k];
+            int heapSize = 0;
+            for (int g = 0; g < counts.length; g++) {
+                if (heapSize < k) {
+                    heap[heapSize] = g;
+                    siftUp(heap, heapSize++);
+                } else if (k > 0 && before(g, heap[0])) {
+                    heap[0] = g;
+                    siftDown(heap, heapSize);
+                }
+            }
+            long[] topKeys = new long[k];
+            long[] topCounts = new long[k];
+            for (int i = k - 1; i >= 0; i--) { // Estrae dal meno numeroso
+                int g = heap[0];
+                topKeys[i] = keys[g];
+                topCounts[i] = counts[g];
+                heap[0] = heap[--heapSize];
+                siftDown(heap, heapSize);
+            }
+            return new GroupCounts(columns, topKeys, topCounts);
+        }
+
+        // true se il gruppo a precede b nell'ordine di top (conteggio decrescente, chiave crescente)
+        private boolean before(int a, int b) {
+            return counts[a] != counts[b] ? counts[a] > counts[b] : keys[a] < keys[b];
+        }
+
+        private void siftUp(int[] heap, int i) {
+            while (i > 0 && before(heap[(i - 1) / 2], heap[i])) {
+                int parent = (i - 1) / 2;
+                int swap = heap[i];
+                heap[i] = heap[parent];
+                heap[parent] = swap;
+                i = parent;
+            }
+        }
+
+        private void siftDown(int[] heap, int heapSize) {
+            int i = 0;
+            while (true) {
+                int smallest = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < heapSize; child++) {
+                    if (before(heap[smallest], heap[child])) {
+                        smallest = child;
+                    }
+                }
+                if (smallest == i) {
+                    return;
+                }
+                int swap = heap[i];
+                heap[i] = heap[smallest];
+                heap[smallest] = swap;
+                i = smallest;
+            }
+        }
+    }
+
+    /**
+     * Tabella hash a indirizzamento aperto da chiavi long a conteggi, per i raggruppamenti con molte chiavi
+     * possibili. Un conteggio 0 indica una cella vuota.
+     */
+    private static final class LongCounter {
+        private long[] keys;
+        private long[] counts;
+        private int size;
+
+        LongCounter(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 512)) << 2; // Riempimento iniziale sotto il 50%
+            keys = new long[capacity];
+            counts = new long[capacity];
+        }
+
+        void add(long key, long count) {
+            int mask = keys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (counts[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (counts[slot] == 0) {
+                keys[slot] = key;
+                if (++size > MAX_GROUPS) {
+                    throw new IllegalStateException("Errore: Il raggruppamento supera " + MAX_GROUPS
+                                                    + " gruppi distinti; usa colonne con meno valori o un filtro.");
+                }
+                if (size * 2 > keys.length) {
+                    counts[slot] = count;
+                    grow();
+                    return;
+                }
+            }
+            counts[slot] += count;
+        }
+
+        void addAll(LongCounter other) {
+            for (int slot = 0; slot < other.keys.length; slot++) {
+                if (other.counts[slot] != 0) {
+                    add(other.keys[slot], other.counts[slot]);
+                }
+            }
+        }
+
+        // Finalizzatore di MurmurHash3: ogni bit della chiave influenza i bit bassi usati come indice
+        private static long mix(long key) {
+            key = (key ^ key >>> 33) * 0xFF51AFD7ED558CCDL;
+            key = (key ^ key >>> 33) * 0xC4CEB9FE1A85EC53L;
+            return key ^ key >>> 33;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new long[oldCounts.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldCounts[slot] != 0) {
+                    add(oldKeys[slot], oldCounts[slot]);
+                }
+            }
+        }
+
+        GroupCounts toGroups(String[] columns) {
+            long[] sortedKeys = new long[size];
+            for (int slot = 0, g = 0; slot < keys.length; slot++) {
+                if (counts[slot] != 0) {
+                    sortedKeys[g++] = keys[slot];
+                }
+            }
+            Arrays.sort(sortedKeys);
+            long[] sortedCounts = new long[size];
+            int mask = keys.length - 1;
+            for (int g = 0; g < size; g++) {
+                int slot = (int) mix(sortedKeys[g]) & mask;
+                while (keys[slot] != sortedKeys[g] || counts[slot] == 0) {
+                    slot = (slot + 1) & mask;
+                }
+                sortedCounts[g] = counts[slot];
+            }
+            return new GroupCounts(columns, sortedKeys, sortedCounts);
+        }
+    }
+}
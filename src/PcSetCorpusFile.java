@@ -0,0 +1,394 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * File binario di un corpus di pc-set, letto tramite memory mapping (FileChannel.map) e scritto con
+ * scritture posizionali sul canale.
+ *
+ * Formato (little-endian):
+ * <pre>
+ *  0  int    MAGIC ("PCS1")
+ *  4  short  versione (1)
+ *  6  short  numero di colonne di metadati C
+ *  8  long   numero di record N
+ * 16  int    offset dei dati (multiplo di 8)
+ * 20  int    dimensione di un record in byte
+ * 24  C descrittori: byte larghezza (1, 2, 4 o 8), byte lunghezza del nome, nome in UTF-8
+ *     record: maschera a 16 bit (i 12 bit delle pitch classes), poi le colonne di metadati (interi con segno)
+ * </pre>
+ * Senza metadati un record occupa 2 byte. La lettura accede direttamente alle pagine mappate con letture
+ * assolute: nessuna copia e nessuna allocazione per record. I file più grandi di MAX_SEGMENT_BYTES vengono
+ * mappati in più segmenti, ognuno con un numero intero di record.
+ *
+ * Le regioni mappate vengono rilasciate dal garbage collector: close() chiude il canale, ma le pagine restano
+ * mappate finché i buffer sono raggiungibili. Le istanze in lettura sono thread-safe.
+ */
+public final class PcSetCorpusFile implements Closeable {
+
+    public static final int MAGIC = 0x31534350; // "PCS1" in little-endian
+    public static final int VERSION = 1;
+
+    /**
+     * Riceve i record di una scansione.
+     */
+    public interface MaskVisitor {
+        /**
+         * @param index L'indice del record.
+         * @param mask La maschera a 12 bit del set.
+         */
+        void visit(long index, int mask);
+    }
+
+    private static final int HEADER_FIXED_BYTES = 24;
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final long recordCount;
+    private final int recordSize;
+    private final String[] columnNames;
+    private final int[] columnWidths;
+    private final int[] columnOffsets;
+    private final long recordsPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    private PcSetCorpusFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long fileSize = channel.size();
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, 1 << 16)).order(ByteOrder.LITTLE_ENDIAN);
+        if (fileSize < HEADER_FIXED_BYTES || header.getInt(0) != MAGIC) {
+            throw new IOException("Il file non è un corpus binario di pc-set.");
+        }
+        if (header.getShort(4) != VERSION) {
+            throw new IOException("Versione del formato non supportata (" + header.getShort(4) + ").");
+        }
+        int columns = header.getShort(6);
+        recordCount = header.getLong(8);
+        int dataOffset = header.getInt(16);
+        recordSize = header.getInt(20);
+
+        columnNames = new String[columns];
+        columnWidths = new int[columns];
+        columnOffsets = new int[columns];
+        int position = HEADER_FIXED_BYTES;
+        int offset = Short.BYTES;
+        for (int c = 0; c < columns; c++) {
+            columnWidths[c] = header.get(position);
+            byte[] name = new byte[header.get(position + 1) & 0xFF];
+            header.position(position + 2);
+            header.get(name);
+            columnNames[c] = new String(name, StandardCharsets.UTF_8);
+            columnOffsets[c] = offset;
+            offset += columnWidths[c];
+            position += 2 + name.length;
+        }
+        if (offset != recordSize || dataOffset < position || dataOffset + recordCount * recordSize > fileSize) {
+            throw new IOException("Intestazione del corpus non valida o file troncato.");
+        }
+
+        recordsPerSegment = Math.max(1, MAX_SEGMENT_BYTES / recordSize);
+        int segmentCount = (int) ((recordCount + recordsPerSegment - 1) / recordsPerSegment);
+        segments = new MappedByteBuffer[segmentCount];
+        for (int s = 0; s < segmentCount; s++) {
+            long first = s * recordsPerSegment;
+            long records = Math.min(recordsPerSegment, recordCount - first);
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + first * recordSize, records * recordSize);
+            segments[s].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Apre un corpus in sola lettura.
+     * @throws IOException Se il file non esiste o non è nel formato atteso.
+     */
+    public static PcSetCorpusFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new PcSetCorpusFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return recordCount;
+    }
+
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    /** @return La larghezza in byte della colonna (1, 2, 4 o 8). */
+    public int getColumnWidth(int column) {
+        return columnWidths[column];
+    }
+
+    /** @return L'indice della colonna con il nome indicato, -1 se non esiste. */
+    public int findColumn(String name) {
+        return Arrays.asList(columnNames).indexOf(name);
+    }
+
+    /** @return La maschera del record indicato. */
+    public int mask(long index) {
+        checkIndex(index);
+        return segments[(int) (index / recordsPerSegment)].getShort((int) (index % recordsPerSegment) * recordSize) & PcSet.FULL_MASK;
+    }
+
+    /** @return Il valore della colonna di metadati nel record indicato. */
+    public long value(long index, int column) {
+        checkIndex(index);
+        ByteBuffer segment = segments[(int) (index / recordsPerSegment)];
+        int position = (int) (index % recordsPerSegment) * recordSize + columnOffsets[column];
+        switch (columnWidths[column]) {
+            case 1:
+                return segment.get(position);
+            case 2:
+                return segment.getShort(position);
+            case 4:
+                return segment.getInt(position);
+            default:
+                return segment.getLong(position);
+        }
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + index + " fuori dal corpus (" + recordCount + " record).");
+        }
+    }
+
+    /**
+     * Visita tutti i record in ordine, nel thread chiamante.
+     */
+    public void scan(MaskVisitor visitor) {
+        for (int s = 0; s < segments.length; s++) {
+            ByteBuffer segment = segments[s];
+            long first = s * recordsPerSegment;
+            int records = (int) Math.min(recordsPerSegment, recordCount - first);
+            for (int r = 0, position = 0; r < records; r++, position += recordSize) {
+                visitor.visit(first + r, segment.getShort(position) & PcSet.FULL_MASK);
+            }
+        }
+    }
+
+    /**
+     * Conta i record per classe di insiemi, dividendo il file in blocchi elaborati in parallelo.
+     * @return Il numero di record di ogni classe (indice = identificativo di SetClassCatalog).
+     */
+    public long[] classHistogram() {
+        long blockRecords = 1 << 20;
+        int blocks = (int) ((recordCount + blockRecords - 1) / blockRecords);
+        return IntStream.range(0, blocks).parallel().mapToObj(block -> {
+            long[] counts = new long[SetClassCatalog.CLASS_COUNT];
+            long first = block * blockRecords;
+            long last = Math.min(recordCount, first + blockRecords);
+            for (long index = first; index < last; ) {
+                ByteBuffer segment = segments[(int) (index / recordsPerSegment)];
+                long segmentEnd = Math.min(last, (index / recordsPerSegment + 1) * recordsPerSegment);
+                int position = (int) (index % recordsPerSegment) * recordSize;
+                for (; index < segmentEnd; index++, position += recordSize) {
+                    counts[SetClassCatalog.classOf(segment.getShort(position))]++;
+                }
+            }
+            return counts;
+        }).reduce(new long[SetClassCatalog.CLASS_COUNT], (a, b) -> {
+            long[] sum = new long[SetClassCatalog.CLASS_COUNT];
+            for (int c = 0; c < sum.length; c++) {
+                sum[c] = a[c] + b[c];
+            }
+            return sum;
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Scrittura
+
+    /**
+     * Crea un corpus vuoto con le colonne di metadati indicate.
+     * @param path Il file da creare (sovrascritto se esiste).
+     * @param columnNames I nomi delle colonne (al più 255 byte in UTF-8 ciascuno).
+     * @param columnWidths Le larghezze in byte (1, 2, 4 o 8).
+     */
+    public static Writer create(Path path, String[] columnNames, int[] columnWidths) throws IOException {
+        return new Writer(path, columnNames, columnWidths);
+    }
+
+    /**
+     * Scrittura sequenziale di un corpus. I record vengono accumulati in un buffer riutilizzato e scritti con
+     * scritture posizionali (FileChannel.write); close() scrive gli ultimi record e aggiorna il numero di record
+     * nell'intestazione. Il file non viene mappato in scrittura: su alcuni sistemi (es. Windows) un file con
+     * regioni mappate non può essere ridimensionato, e le regioni restano mappate finché il garbage collector
+     * non rilascia i buffer. Il file ha già la dimensione esatta, quindi non serve troncarlo.
+     * Uso: value(colonna, valore) per ogni metadato, poi add(maschera). Le istanze non sono thread-safe.
+     */
+    public static final class Writer implements Closeable {
+        private static final int BUFFER_BYTES = 1 << 20;
+
+        private final FileChannel channel;
+        private final int dataOffset;
+        private final int recordSize;
+        private final int[] columnWidths;
+        private final long[] values;
+        private final ByteBuffer buffer;
+        private long flushed; // Record già scritti sul canale
+        private long count;
+
+        private Writer(Path path, String[] columnNames, int[] columnWidths) throws IOException {
+            if (columnNames.length != columnWidths.length || columnNames.length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Errore: Nomi e larghezze delle colonne non corrispondono.");
+            }
+            ByteBuffer header = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort((short) VERSION).putShort((short) columnNames.length).putLong(0).putInt(0).putInt(0);
+            int size = Short.BYTES;
+            for (int c = 0; c < columnNames.length; c++) {
+                int width = columnWidths[c];
+                byte[] name = columnNames[c].getBytes(StandardCharsets.UTF_8);
+                if (width != 1 && width != 2 && width != 4 && width != 8) {
+                    throw new IllegalArgumentException("Errore: Larghezza non valida per la colonna '" + columnNames[c] + "': " + width + ".");
+                }
+                if (name.length > 255) {
+                    throw new IllegalArgumentException("Errore: Nome di colonna troppo lungo: '" + columnNames[c] + "'.");
+                }
+                header.put((byte) width).put((byte) name.length).put(name);
+                size += width;
+            }
+            this.dataOffset = (header.position() + 7) & ~7;
+            this.recordSize = size;
+            this.columnWidths = columnWidths.clone();
+            this.values = new long[columnWidths.length];
+            this.buffer = ByteBuffer.allocate(Math.max(1, BUFFER_BYTES / recordSize) * recordSize).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(16, dataOffset).putInt(20, recordSize);
+            header.limit(dataOffset).position(0);
+
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Imposta un metadato del prossimo record (i valori non impostati valgono 0 e vengono azzerati dopo add).
+         */
+        public Writer value(int column, long value) {
+            values[column] = value;
+            return this;
+        }
+
+        /**
+         * Aggiunge un record con la maschera indicata e i metadati impostati con value.
+         */
+        public void add(int mask) throws IOException {
+            if (buffer.remaining() < recordSize) {
+                flush();
+            }
+            buffer.putShort((short) (mask & PcSet.FULL_MASK));
+            for (int c = 0; c < columnWidths.length; c++) {
+                long value = values[c];
+                switch (columnWidths[c]) {
+                    case 1:
+                        buffer.put((byte) value);
+                        break;
+                    case 2:
+                        buffer.putShort((short) value);
+                        break;
+                    case 4:
+                        buffer.putInt((int) value);
+                        break;
+                    default:
+                        buffer.putLong(value);
+                }
+                values[c] = 0;
+            }
+            count++;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        // Scrive i record del buffer dopo quelli già presenti nel file
+        private void flush() throws IOException {
+            buffer.flip();
+            long position = dataOffset + flushed * recordSize;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+            flushed = count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                ByteBuffer recordCount = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, count);
+                while (recordCount.hasRemaining()) {
+                    channel.write(recordCount, 8 + recordCount.position());
+                }
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Converte un corpus testuale (un set per riga, nella sintassi di parseAndCleanPitchClasses) in formato
+     * binario. Le righe vuote vengono saltate; quelle non valide vengono segnalate su stderr e saltate.
+     *
+     * @param reader Il testo di origine.
+     * @param path Il file binario da creare.
+     * @param lineNumbers true per aggiungere la colonna "line" (int32) con il numero di riga di origine.
+     * @return Il numero di record scritti.
+     */
+    public static long convert(BufferedReader reader, Path path, boolean lineNumbers) throws IOException {
+        String[] names = lineNumbers ? new String[] {"line"} : new String[0];
+        int[] widths = lineNumbers ? new int[] {Integer.BYTES} : new int[0];
+        try (Writer writer = create(path, names, widths)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                int mask;
+                try {
+                    mask = PitchClassParser.parseMask(line);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Riga " + lineNumber + ": " + e.getMessage());
+                    continue;
+                }
+                if (lineNumbers) {
+                    writer.value(0, lineNumber);
+                }
+                writer.add(mask);
+            }
+            return writer.getCount();
+        }
+    }
+}
@@ -0,0 +1,993 @@
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Livello di uscita dei risultati: record composti da campi (set di pitch classes, intervalli, testi, numeri,
+ * liste di nomi, matrici) scritti come tabella leggibile, TSV, CSV, JSON Lines o formato binario compatto.
+ *
+ * I campi vengono codificati direttamente dai dati primitivi (array di pitch classes, long) in un buffer di
+ * byte riutilizzato, senza stringhe intermedie né liste di interi, e il buffer viene scritto sullo stream a
+ * blocchi di 64 KB. Il testo è in UTF-8; le righe terminano con il separatore di sistema.
+ *
+ * Uso: un campo per colonna nell'ordine delle colonne, poi endRecord(); flush() o close() alla fine.
+ * Le istanze non sono thread-safe.
+ */
+public abstract class PcSetRenderer implements Flushable, Closeable {
+
+    /**
+     * I formati di uscita.
+     */
+    public enum Format {
+        /** Tabella allineata con intestazione, scritta a ogni flush (le larghezze dipendono da tutte le righe). */
+        TABLE,
+        /** Una riga di intestazione, poi un record per riga con i campi separati da tabulazioni. */
+        TSV,
+        /**
+         * Come TSV, con i campi separati da virgole; i campi che contengono virgole, virgolette o a capo vengono
+         * racchiusi tra virgolette, raddoppiando quelle interne (RFC 4180).
+         */
+        CSV,
+        /** Un oggetto JSON per riga; i campi assenti vengono omessi. */
+        JSONL,
+        /**
+         * Binario: "PCSR", versione (1 byte), numero di colonne (1 byte), per ogni colonna lunghezza (1 byte) e
+         * nome in UTF-8; poi per ogni campo un byte di tipo: 0 assente, 1 lista di valori (numero di valori e
+         * un byte per valore), 2 testo (lunghezza come varint e UTF-8), 3 intero (varint zigzag), 4 lista di
+         * testi (numero di testi come varint, poi ogni testo come nel tipo 2), 5 matrice (righe e colonne, un
+         * byte ciascuna, poi un byte per valore riga per riga), 6 lista di interi (numero di valori come varint,
+         * poi ogni valore come varint zigzag). I tipi 1 e 5 ammettono solo valori tra 0 e 255.
+         */
+        BINARY
+    }
+
+    public static final int BINARY_MAGIC = 0x52534350; // "PCSR" in little-endian
+    public static final int BINARY_VERSION = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    protected final String[] columns;
+    protected byte[] buffer = new byte[BUFFER_SIZE];
+    protected int position;
+    protected int field; // Indice del prossimo campo del record corrente
+
+    private PcSetRenderer(OutputStream out, String[] columns) {
+        this.out = out;
+        this.columns = columns.clone();
+    }
+
+    /**
+     * @param format Il formato di uscita.
+     * @param out Lo stream di destinazione (chiuso da close()).
+     * @param columns I nomi delle colonne, nell'ordine dei campi di ogni record.
+     */
+    public static PcSetRenderer create(Format format, OutputStream out, String... columns) {
+        switch (format) {
+            case TABLE:
+                return new TableRenderer(out, columns);
+            case TSV:
+                return new TsvRenderer(out, columns);
+            case CSV:
+                return new CsvRenderer(out, columns);
+            case JSONL:
+                return new JsonLinesRenderer(out, columns);
+            default:
+                return new BinaryRenderer(out, columns);
+        }
+    }
+
+    /**
+     * Imposta la larghezza minima di una colonna; ha effetto solo sul formato TABLE.
+     */
+    public PcSetRenderer minimumWidth(int column, int width) {
+        return this;
+    }
+
+    /**
+     * Scrive un set (o una sequenza ordinata) di pitch classes: &lt;0,4,7&gt; nei formati testuali, [0,4,7] in JSON.
+     * @param values Le pitch classes.
+     * @param size Il numero di elementi da scrivere.
+     */
+    public abstract PcSetRenderer set(int[] values, int size);
+
+    /**
+     * Scrive una sequenza di interi qualsiasi (es. altezze o intervalli con segno), nello stesso formato
+     * testuale di set(); nel formato binario ogni valore è un varint zigzag invece di un byte.
+     * @param values I valori.
+     * @param size Il numero di elementi da scrivere.
+     */
+    public abstract PcSetRenderer numbers(int[] values, int size);
+
+    /**
+     * Scrive gli intervalli successivi (mod modulus) tra gli elementi di values, nello stesso formato di set().
+     */
+    public abstract PcSetRenderer intervals(int[] values, int size, int modulus);
+
+    public abstract PcSetRenderer text(CharSequence value);
+
+    /**
+     * Scrive una lista di testi (es. nomi di forme o di operatori): separati da spazi nei formati testuali,
+     * un array di stringhe in JSON.
+     * @param values I testi.
+     * @param size Il numero di testi da scrivere.
+     */
+    public abstract PcSetRenderer texts(CharSequence[] values, int size);
+
+    /**
+     * Scrive una matrice di valori memorizzata per righe: righe separate da ';' e valori da ',' nei formati
+     * testuali, un array di array in JSON.
+     * @param values I valori, riga per riga (almeno rows * columns elementi).
+     */
+    public abstract PcSetRenderer matrix(int[] values, int rows, int columns);
+
+    public abstract PcSetRenderer number(long value);
+
+    /**
+     * Scrive un campo assente (vuoto in TABLE e TSV, omesso in JSON Lines).
+     */
+    public abstract PcSetRenderer absent();
+
+    /**
+     * Chiude il record corrente.
+     */
+    public abstract void endRecord() throws IOException;
+
+    @Override
+    public void flush() throws IOException {
+        writeBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    // Scrittura nel buffer
+
+    protected final void writeBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    // Garantisce spazio per altri n byte, ingrandendo il buffer (lo svuotamento avviene a fine record)
+    protected final void ensure(int n) {
+        if (position + n > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + n));
+        }
+    }
+
+    // Svuota il buffer se ha superato la dimensione dei blocchi di scrittura
+    protected final void flushIfFull() throws IOException {
+        if (position >= BUFFER_SIZE) {
+            writeBuffer();
+        }
+    }
+
+    protected final void put(char c) {
+        ensure(1);
+        buffer[position++] = (byte) c;
+    }
+
+    protected final void put(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    protected final void putNewLine() {
+        put(LINE_SEPARATOR);
+    }
+
+    protected final void putNumber(long value) {
+        if (value == Long.MIN_VALUE) {
+            put(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        if (value < 10) { // Caso più frequente: una pitch class o un intervallo di una cifra
+            buffer[position++] = (byte) ('0' + value);
+            return;
+        }
+        int end = position + digits(value);
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    protected final void putList(int[] values, int size, char open, char close) {
+        put(open);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                put(',');
+            }
+            putNumber(values[i]);
+        }
+        put(close);
+    }
+
+    protected final void putTexts(CharSequence[] values, int size, boolean tsv, boolean json) {
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                put(json ? ',' : ' ');
+            }
+            if (json) {
+                put('"');
+                putText(values[i], false, true);
+                put('"');
+            } else {
+                putText(values[i], tsv, false);
+            }
+        }
+    }
+
+    protected final void putMatrix(int[] values, int rows, int columns, boolean json) {
+        if (json) {
+            put('[');
+        }
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) {
+                put(json ? ',' : ';');
+            }
+            if (json) {
+                put('[');
+            }
+            for (int c = 0; c < columns; c++) {
+                if (c > 0) {
+                    put(',');
+                }
+                putNumber(values[r * columns + c]);
+            }
+            if (json) {
+                put(']');
+            }
+        }
+        if (json) {
+            put(']');
+        }
+    }
+
+    protected final void putIntervals(int[] values, int size, int modulus, char open, char close) {
+        put(open);
+        for (int i = 1; i < size; i++) {
+            if (i > 1) {
+                put(',');
+            }
+            putNumber(PitchSetUtils.normalizePc(values[i] - values[i - 1], modulus));
+        }
+        put(close);
+    }
+
+    /**
+     * Scrive il testo in UTF-8. Con tsv = true tabulazioni e a capo diventano spazi; con json = true i caratteri
+     * speciali vengono scritti in escape come in PitchSetBatchProcessor.appendJsonString. I surrogati isolati
+     * diventano '?', come nei writer della JDK.
+     */
+    protected final void putText(CharSequence value, boolean tsv, boolean json) {
+        ensure(value.length() * 6);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (tsv && (c == '\t' || c == '\n' || c == '\r')) {
+                    c = ' ';
+                } else if (json && (c < 0x20 || c == '"' || c == '\\')) {
+                    putJsonEscape(c);
+                    continue;
+                }
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                char low = i + 1 < value.length() ? value.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                    int codePoint = Character.toCodePoint(c, low);
+                    buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+                    buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+                    i++;
+                } else {
+                    buffer[position++] = '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xE0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void putJsonEscape(char c) {
+        buffer[position++] = '\\';
+        switch (c) {
+            case '"':
+            case '\\':
+                buffer[position++] = (byte) c;
+                break;
+            case '\n':
+                buffer[position++] = 'n';
+                break;
+            case '\r':
+                buffer[position++] = 'r';
+                break;
+            case '\t':
+                buffer[position++] = 't';
+                break;
+            default:
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[c >> 4];
+                buffer[position++] = HEX[c & 0xF];
+        }
+    }
+
+    // Implementazioni
+
+    /**
+     * Record separati da tabulazioni, con intestazione scritta alla creazione.
+     */
+    private static final class TsvRenderer extends PcSetRenderer {
+        TsvRenderer(OutputStream out, String[] columns) {
+            super(out, columns);
+            for (int c = 0; c < columns.length; c++) {
+                if (c > 0) {
+                    put('\t');
+                }
+                putText(columns[c], true, false);
+            }
+            putNewLine();
+        }
+
+        private void separator() {
+            if (field++ > 0) {
+                put('\t');
+            }
+        }
+
+        @Override
+        public PcSetRenderer set(int[] values, int size) {
+            separator();
+            putList(values, size, '<', '>');
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer numbers(int[] values, int size) {
+            return set(values, size);
+        }
+
+        @Override
+        public PcSetRenderer intervals(int[] values, int size, int modulus) {
+            separator();
+            putIntervals(values, size, modulus, '<', '>');
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer text(CharSequence value) {
+            separator();
+            putText(value, true, false);
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer texts(CharSequence[] values, int size) {
+            separator();
+            putTexts(values, size, true, false);
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer matrix(int[] values, int rows, int columns) {
+            separator();
+            putMatrix(values, rows, columns, false);
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer number(long value) {
+            separator();
+            putNumber(value);
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer absent() {
+            separator();
+            return this;
+        }
+
+        @Override
+        public void endRecord() throws IOException {
+            putNewLine();
+            field = 0;
+            flushIfFull();
+        }
+    }
+
+    /**
+     * Record separati da virgole, con intestazione scritta alla creazione. Le liste di più valori contengono
+     * virgole e vengono sempre racchiuse tra virgolette; i testi solo se contengono caratteri speciali.
+     */
+    private static final class CsvRenderer extends PcSetRenderer {
+        CsvRenderer(OutputStream out, String[] columns) {
+            super(out, columns);
+            for (String column : columns) {
+                text(column);
+            }
+            putNewLine();
+            field = 0;
+        }
+
+        private void separator() {
+            if (field++ > 0) {
+                put(',');
+            }
+        }
+
+        private static boolean needsQuotes(CharSequence value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Scrive il testo raddoppiando le virgolette; si spezza solo dopo '"', quindi mai tra due surrogati
+        private void putQuotedText(CharSequence value) {
+            int start = 0;
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) == '"') {
+                    putText(value.subSequence(start, i + 1), false, false);
+                    put('"');
+                    start = i + 1;
+                }
+            }
+            putText(start == 0 ? value : value.subSequence(start, value.length()), false, false);
+        }
+
+        @Override
+        public PcSetRenderer set(int[] values, int size) {
+            separator();
+            boolean quote = size > 1;
+            if (quote) {
+                put('"');
+            }
+            putList(values, size, '<', '>');
+            if (quote) {
+                put('"');
+            }
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer numbers(int[] values, int size) {
+            return set(values, size);
+        }
+
+        @Override
+        public PcSetRenderer intervals(int[] values, int size, int modulus) {
+            separator();
+            boolean quote = size > 2;
+            if (quote) {
+                put('"');
+            }
+            putIntervals(values, size, modulus, '<', '>');
+            if (quote) {
+                put('"');
+            }
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer text(CharSequence value) {
+            separator();
+            if (needsQuotes(value)) {
+                put('"');
+                putQuotedText(value);
+                put('"');
+            } else {
+                putText(value, false, false);
+            }
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer texts(CharSequence[] values, int size) {
+            separator();
+            boolean quote = false;
+            for (int i = 0; i < size && !quote; i++) {
+                quote = needsQuotes(values[i]);
+            }
+            if (quote) {
+                put('"');
+            }
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    put(' ');
+                }
+                if (quote) {
+                    putQuotedText(values[i]);
+                } else {
+                    putText(values[i], false, false);
+                }
+            }
+            if (quote) {
+                put('"');
+            }
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer matrix(int[] values, int rows, int columns) {
+            separator();
+            boolean quote = columns > 1;
+            if (quote) {
+                put('"');
+            }
+            putMatrix(values, rows, columns, false);
+            if (quote) {
+                put('"');
+            }
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer number(long value) {
+            separator();
+            putNumber(value);
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer absent() {
+            separator();
+            return this;
+        }
+
+        @Override
+        public void endRecord() throws IOException {
+            putNewLine();
+            field = 0;
+            flushIfFull();
+        }
+    }
+
+    /**
+     * Un oggetto JSON per record, con i nomi delle colonne come chiavi.
+     */
+    private static final class JsonLinesRenderer extends PcSetRenderer {
+        private final byte[][] keys; // {"nome": per la prima chiave, ,"nome": per le successive, già codificati
+        private boolean open;
+
+        JsonLinesRenderer(OutputStream out, String[] columns) {
+            super(out, columns);
+            keys = new byte[columns.length][];
+            for (int c = 0; c < columns.length; c++) {
+                StringBuilder key = new StringBuilder();
+                PitchSetBatchProcessor.appendJsonString(key, columns[c]);
+                keys[c] = key.append(':').toString().getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        private void key() {
+            put(open ? ',' : '{');
+            open = true;
+            put(keys[field++]);
+        }
+
+        @Override
+        public PcSetRenderer set(int[] values, int size) {
+            key();
+            putList(values, size, '[', ']');
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer numbers(int[] values, int size) {
+            return set(values, size);
+        }
+
+        @Override
+        public PcSetRenderer intervals(int[] values, int size, int modulus) {
+            key();
+            putIntervals(values, size, modulus, '[', ']');
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer text(CharSequence value) {
+            key();
+            put('"');
+            putText(value, false, true);
+            put('"');
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer texts(CharSequence[] values, int size) {
+            key();
+            put('[');
+            putTexts(values, size, false, true);
+            put(']');
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer matrix(int[] values, int rows, int columns) {
+            key();
+            putMatrix(values, rows, columns, true);
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer number(long value) {
+            key();
+            putNumber(value);
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer absent() {
+            field++;
+            return this;
+        }
+
+        @Override
+        public void endRecord() throws IOException {
+            if (!open) {
+                put('{');
+            }
+            put('}');
+            putNewLine();
+            open = false;
+            field = 0;
+            flushIfFull();
+        }
+    }
+
+    /**
+     * Formato binario compatto (vedi Format.BINARY); i valori delle liste devono essere compresi tra 0 e 255.
+     */
+    private static final class BinaryRenderer extends PcSetRenderer {
+        private final int[] intervals = new int[ModularPcSet.MAX_MODULUS];
+
+        BinaryRenderer(OutputStream out, String[] columns) {
+            super(out, columns);
+            if (columns.length > 255) {
+                throw new IllegalArgumentException("Errore: Troppe colonne per il formato binario (" + columns.length + ").");
+            }
+            put((char) (BINARY_MAGIC & 0xFF));
+            put((char) (BINARY_MAGIC >>> 8 & 0xFF));
+            put((char) (BINARY_MAGIC >>> 16 & 0xFF));
+            put((char) (BINARY_MAGIC >>> 24));
+            put((char) BINARY_VERSION);
+            put((char) columns.length);
+            for (String column : columns) {
+                byte[] name = column.getBytes(StandardCharsets.UTF_8);
+                put((char) Math.min(name.length, 255));
+                put(Arrays.copyOf(name, Math.min(name.length, 255)));
+            }
+        }
+
+        // Lunghezza della codifica di putText, surrogati isolati compresi
+        private static int utf8Length(CharSequence value) {
+            int length = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += Character.isSurrogate(c) ? 1 : 3;
+                }
+            }
+            return length;
+        }
+
+        private void putVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        // I valori vengono verificati prima di scrivere il campo, così un errore non lascia un record parziale
+        private static void checkBytes(int[] values, int count) {
+            for (int i = 0; i < count; i++) {
+                if (values[i] < 0 || values[i] > 255) {
+                    throw new IllegalArgumentException("Errore: Valore " + values[i] + " non rappresentabile in un byte nel formato binario.");
+                }
+            }
+        }
+
+        private void putBytes(int[] values, int size) {
+            if (size > 255) {
+                throw new IllegalArgumentException("Errore: Lista di " + size + " valori troppo lunga per il formato binario.");
+            }
+            checkBytes(values, size);
+            ensure(size + 2);
+            buffer[position++] = 1;
+            buffer[position++] = (byte) size;
+            for (int i = 0; i < size; i++) {
+                buffer[position++] = (byte) values[i];
+            }
+        }
+
+        @Override
+        public PcSetRenderer numbers(int[] values, int size) {
+            field++;
+            put((char) 6);
+            putVarint(size);
+            for (int i = 0; i < size; i++) {
+                putVarint((long) values[i] << 1 ^ values[i] >> 31);
+            }
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer set(int[] values, int size) {
+            putBytes(values, size);
+            field++;
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer intervals(int[] values, int size, int modulus) {
+            int count = 0;
+            for (int i = 1; i < size; i++) {
+                intervals[count++] = PitchSetUtils.normalizePc(values[i] - values[i - 1], modulus);
+            }
+            putBytes(intervals, count);
+            field++;
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer text(CharSequence value) {
+            field++;
+            put((char) 2);
+            putVarint(utf8Length(value));
+            putText(value, false, false);
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer texts(CharSequence[] values, int size) {
+            field++;
+            put((char) 4);
+            putVarint(size);
+            for (int i = 0; i < size; i++) {
+                putVarint(utf8Length(values[i]));
+                putText(values[i], false, false);
+            }
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer matrix(int[] values, int rows, int columns) {
+            if (rows > 255 || columns > 255) {
+                throw new IllegalArgumentException("Errore: Matrice " + rows + "x" + columns + " troppo grande per il formato binario.");
+            }
+            int count = rows * columns;
+            checkBytes(values, count);
+            field++;
+            ensure(count + 3);
+            buffer[position++] = 5;
+            buffer[position++] = (byte) rows;
+            buffer[position++] = (byte) columns;
+            for (int i = 0; i < count; i++) {
+                buffer[position++] = (byte) values[i];
+            }
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer number(long value) {
+            field++;
+            put((char) 3);
+            putVarint(value << 1 ^ value >> 63);
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer absent() {
+            field++;
+            put((char) 0);
+            return this;
+        }
+
+        @Override
+        public void endRecord() throws IOException {
+            field = 0;
+            flushIfFull();
+        }
+    }
+
+    /**
+     * Tabella allineata: le celle vengono raccolte fino al flush, poi scritte con l'intestazione, una riga di
+     * trattini e le colonne riempite a destra fino alla larghezza massima (separatore " | ").
+     */
+    private static final class TableRenderer extends PcSetRenderer {
+        private final int[] widths;
+        private int[] cellEnds = new int[64]; // Fine di ogni cella nel buffer (le celle sono contigue)
+        private int cells;
+
+        TableRenderer(OutputStream out, String[] columns) {
+            super(out, columns);
+            widths = new int[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                widths[c] = columns[c].codePointCount(0, columns[c].length());
+            }
+        }
+
+        @Override
+        public PcSetRenderer minimumWidth(int column, int width) {
+            widths[column] = Math.max(widths[column], width);
+            return this;
+        }
+
+        private void endCell() {
+            if (cells == cellEnds.length) {
+                cellEnds = Arrays.copyOf(cellEnds, cells * 2);
+            }
+            int start = cells == 0 ? 0 : cellEnds[cells - 1];
+            widths[field] = Math.max(widths[field], displayWidth(buffer, start, position));
+            cellEnds[cells++] = position;
+            field++;
+        }
+
+        @Override
+        public PcSetRenderer set(int[] values, int size) {
+            putList(values, size, '<', '>');
+            endCell();
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer numbers(int[] values, int size) {
+            return set(values, size);
+        }
+
+        @Override
+        public PcSetRenderer intervals(int[] values, int size, int modulus) {
+            putIntervals(values, size, modulus, '<', '>');
+            endCell();
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer text(CharSequence value) {
+            putText(value, true, false);
+            endCell();
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer texts(CharSequence[] values, int size) {
+            putTexts(values, size, true, false);
+            endCell();
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer matrix(int[] values, int rows, int columns) {
+            putMatrix(values, rows, columns, false);
+            endCell();
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer number(long value) {
+            putNumber(value);
+            endCell();
+            return this;
+        }
+
+        @Override
+        public PcSetRenderer absent() {
+            endCell();
+            return this;
+        }
+
+        @Override
+        public void endRecord() {
+            field = 0;
+        }
+
+        // Le righe raccolte vengono spostate in un nuovo buffer, composto con intestazione e spaziature
+        @Override
+        public void flush() throws IOException {
+            byte[] cellBytes = buffer;
+            int[] ends = cellEnds;
+            int count = cells;
+            buffer = new byte[BUFFER_SIZE];
+            position = 0;
+            cells = 0;
+
+            for (int c = 0; c < columns.length; c++) {
+                byte[] name = columns[c].getBytes(StandardCharsets.UTF_8);
+                putCell(name, 0, name.length, c);
+            }
+            putNewLine();
+            for (int c = 0; c < columns.length; c++) {
+                if (c > 0) {
+                    put('|');
+                }
+                int dashes = widths[c] + (c > 0 ? 1 : 0) + (c < columns.length - 1 ? 1 : 0);
+                for (int i = 0; i < dashes; i++) {
+                    put('-');
+                }
+            }
+            putNewLine();
+            for (int cell = 0; cell < count; cell++) {
+                int start = cell == 0 ? 0 : ends[cell - 1];
+                putCell(cellBytes, start, ends[cell] - start, cell % columns.length);
+                if (cell % columns.length == columns.length - 1) {
+                    putNewLine();
+                }
+            }
+            super.flush();
+        }
+
+        private void putCell(byte[] bytes, int start, int length, int column) {
+            if (column > 0) {
+                put(' ');
+                put('|');
+                put(' ');
+            }
+            ensure(length + widths[column]);
+            System.arraycopy(bytes, start, buffer, position, length);
+            position += length;
+            for (int i = displayWidth(bytes, start, start + length); i < widths[column]; i++) {
+                buffer[position++] = ' ';
+            }
+        }
+
+        // Numero di caratteri di un testo UTF-8: i byte di continuazione (10xxxxxx) non contano
+        private static int displayWidth(byte[] bytes, int start, int end) {
+            int width = 0;
+            for (int i = start; i < end; i++) {
+                if ((bytes[i] & 0xC0) != 0x80) {
+                    width++;
+                }
+            }
+            return width;
+        }
+    }
+}
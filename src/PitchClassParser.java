@@ -0,0 +1,284 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parser a passata singola per le pitch classes, senza espressioni regolari né stringhe temporanee.
+ * Accumula il risultato direttamente in una maschera a 12 bit (vedi PcSet) e accetta la stessa
+ * sintassi di PitchSetUtils.parseAndCleanPitchClasses: numeri 0-11, 't' (10), 'e' (11),
+ * separati da spazi o virgole. Anche i messaggi di errore sono identici.
+ *
+ * I metodi statici lavorano su qualsiasi CharSequence (String, StringBuilder, CharBuffer).
+ * Per l'input in blocco, un'istanza del parser riutilizza i propri adattatori per analizzare
+ * porzioni di buffer char[] o byte[] (ASCII/UTF-8) senza alcuna allocazione per riga.
+ * Le istanze non sono thread-safe.
+ */
+public final class PitchClassParser {
+
+    private final CharArraySequence charView = new CharArraySequence();
+    private final ByteArraySequence byteView = new ByteArraySequence();
+
+    /**
+     * Analizza una porzione di un buffer di caratteri.
+     * @return La maschera delle pitch classes trovate (0 se l'input è vuoto).
+     * @throws IllegalArgumentException Con gli stessi messaggi di parseAndCleanPitchClasses.
+     */
+    public int parseMask(char[] buffer, int offset, int length) {
+        charView.set(buffer, offset, length);
+        return parseMask(charView);
+    }
+
+    /**
+     * Analizza una porzione di un buffer di byte codificato in ASCII/UTF-8.
+     * I byte non ASCII sono sempre caratteri non validi; il messaggio di errore riporta l'input decodificato in UTF-8.
+     * @return La maschera delle pitch classes trovate (0 se l'input è vuoto).
+     * @throws IllegalArgumentException Con gli stessi messaggi di parseAndCleanPitchClasses.
+     */
+    public int parseMask(byte[] buffer, int offset, int length) {
+        byteView.set(buffer, offset, length);
+        return parseMask(byteView);
+    }
+
+    /**
+     * Analizza una sequenza di caratteri in un'unica passata.
+     *
+     * @param input La sequenza contenente le pitch classes.
+     * @return La maschera a 12 bit delle pitch classes trovate (0 se l'input è null o vuoto).
+     * @throws IllegalArgumentException Se l'input contiene caratteri diversi da numeri, 't', 'e', spazi, virgole e '-',
+     * oppure se un token non è un numero valido o è fuori dal range 0-11.
+     */
+    public static int parseMask(CharSequence input) {
+        return (int) parseMask(input, 12);
+    }
+
+    /**
+     * Analizza una sequenza di caratteri per un universo a modulus suddivisioni dell'ottava.
+     * Con modulus = 12 il comportamento e i messaggi coincidono con parseMask(CharSequence).
+     *
+     * @param input La sequenza contenente le pitch classes.
+     * @param modulus La dimensione dell'universo (da 1 a ModularPcSet.MAX_MODULUS).
+     * @return La maschera delle pitch classes trovate, bit pc per la pitch class pc (0 se l'input è null o vuoto).
+     * @throws IllegalArgumentException Se l'input contiene caratteri non validi, o se un token non è un numero
+     * valido o è fuori dal range 0 - (modulus - 1).
+     */
+    public static long parseMask(CharSequence input, int modulus) {
+        return parse(input, modulus, null);
+    }
+
+    /**
+     * Analizza una sequenza ordinata di pitch classes (es. una serie dodecafonica), mantenendo ordine e
+     * ripetizioni. Sintassi e messaggi di errore sono quelli di parseMask(CharSequence).
+     *
+     * @param input La sequenza contenente le pitch classes.
+     * @param dest L'array di destinazione; i token oltre dest.length vengono contati ma non memorizzati.
+     * @return Il numero di pitch classes trovate (può superare dest.length).
+     * @throws IllegalArgumentException Come parseMask(CharSequence).
+     */
+    public static int parseSequence(CharSequence input, int[] dest) {
+        return (int) parse(input, 12, dest);
+    }
+
+    // Le abbreviazioni 't' ed 'e' da citare nei messaggi, solo se sono pitch classes dell'universo
+    private static String letterNames(int modulus) {
+        return modulus > 11 ? "'t' (per 10), 'e' (per 11), " : modulus > 10 ? "'t' (per 10), " : "";
+    }
+
+    // Passata unica condivisa: senza sequence restituisce la maschera, altrimenti il numero di token memorizzati in ordine
+    private static long parse(CharSequence input, int modulus, int[] sequence) {
+        ModularPcSet.checkModulus(modulus);
+        if (input == null) {
+            return 0;
+        }
+
+        long mask = 0;
+        int count = 0;
+        StringBuilder errors = null; // Creato solo se serve
+        int length = input.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = input.charAt(i);
+            if (isSeparator(c)) {
+                i++;
+                continue;
+            }
+            if (!isTokenChar(c)) {
+                if (isBlank(input)) {
+                    return 0; // Solo caratteri di controllo: input vuoto, come in parseAndCleanPitchClasses
+                }
+                throw new IllegalArgumentException(
+                    "Errore: L'input '" + input + "' contiene caratteri non validi. "
+                    + "Sono ammessi solo numeri (0-" + (modulus - 1) + "), " + letterNames(modulus) + "spazi e virgole."
+                );
+            }
+
+            // Token: sequenza massimale di cifre, 't', 'e' e '-'
+            int start = i;
+            while (i < length && isTokenChar(input.charAt(i))) {
+                i++;
+            }
+            int pc = parseToken(input, start, i, modulus);
+            if (pc >= 0) {
+                mask |= 1L << pc;
+                if (sequence != null && count < sequence.length) {
+                    sequence[count] = pc;
+                }
+                count++;
+            } else if (pc == RANGE_ERROR) {
+                errors = appendError(errors, "Errore: La pitch class '", input, start, i,
+                                     "' è fuori dal range consentito (0-" + (modulus - 1) + ").");
+            } else if (pc == FORMAT_ERROR) {
+                errors = appendError(errors, "Errore: Il token '", input, start, i, "' non è un numero intero valido.");
+            }
+        }
+
+        if (errors != null) {
+            throw new IllegalArgumentException(errors.toString());
+        }
+        return sequence != null ? count : mask;
+    }
+
+    private static final int SKIP = -1;
+    private static final int RANGE_ERROR = -2;
+    private static final int FORMAT_ERROR = -3;
+
+    /**
+     * Interpreta un token con la semantica di Integer.parseInt, più 't' ed 'e'.
+     * @return La pitch class (0 - modulus-1), oppure SKIP per un "-" isolato, RANGE_ERROR o FORMAT_ERROR.
+     */
+    private static int parseToken(CharSequence input, int start, int end, int modulus) {
+        int first = lower(input.charAt(start));
+        if (end - start == 1) {
+            if (first == 't') return 10 < modulus ? 10 : RANGE_ERROR;
+            if (first == 'e') return 11 < modulus ? 11 : RANGE_ERROR;
+            if (first == '-') return SKIP;
+        }
+
+        boolean negative = first == '-';
+        int i = negative ? start + 1 : start;
+        long value = 0;
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        boolean overflow = false;
+        for (; i < end; i++) {
+            char c = input.charAt(i);
+            if (c < '0' || c > '9') {
+                return FORMAT_ERROR;
+            }
+            if (!overflow) {
+                value = value * 10 + (c - '0');
+                overflow = value > limit;
+            }
+        }
+        if (overflow) {
+            return FORMAT_ERROR;
+        }
+        if (negative) {
+            value = -value;
+        }
+        return value < 0 || value >= modulus ? RANGE_ERROR : (int) value;
+    }
+
+    // Spazi bianchi secondo la classe \s delle espressioni regolari Java, più la virgola
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == ',' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
+    private static boolean isTokenChar(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || lower(c) == 't' || lower(c) == 'e';
+    }
+
+    private static char lower(char c) {
+        return c == 'T' ? 't' : c == 'E' ? 'e' : c;
+    }
+
+    private static StringBuilder appendError(StringBuilder errors, String prefix, CharSequence input, int start, int end, String suffix) {
+        if (errors == null) {
+            errors = new StringBuilder();
+        } else {
+            errors.append('\n');
+        }
+        errors.append(prefix);
+        for (int i = start; i < end; i++) {
+            errors.append(lower(input.charAt(i)));
+        }
+        return errors.append(suffix);
+    }
+
+    // Stesso criterio di String.trim().isEmpty(): tutti i caratteri sono <= ' '
+    private static boolean isBlank(CharSequence input) {
+        for (int i = 0; i < input.length(); i++) {
+            if (input.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Vista riutilizzabile su una porzione di un array di caratteri.
+     */
+    private static final class CharArraySequence implements CharSequence {
+        private char[] buffer;
+        private int offset;
+        private int length;
+
+        void set(char[] buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return buffer[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(buffer, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buffer, offset, length);
+        }
+    }
+
+    /**
+     * Vista riutilizzabile su una porzione di un array di byte: i byte non ASCII diventano caratteri non validi.
+     */
+    private static final class ByteArraySequence implements CharSequence {
+        private byte[] buffer;
+        private int offset;
+        private int length;
+
+        void set(byte[] buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer[offset + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(buffer, offset + start, end - start, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buffer, offset, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Analisi di sequenze ordinate di altezze (es. numeri di nota MIDI) o di pitch classes, senza ridurle a set:
+ * segmenti di contorno (CSEG) e loro forme primarie, successioni di intervalli ordinati e ricerca delle
+ * occorrenze di un motivo in una melodia a meno di trasposizione, inversione e retrogradazione.
+ *
+ * Le sequenze sono array primitivi. Il parametro modulus sceglie lo spazio degli intervalli: 0 per lo spazio
+ * delle altezze (intervalli con segno, es. -3 = terza minore discendente), altrimenti l'universo delle pitch
+ * classes (intervalli ridotti in 0 - modulus-1).
+ *
+ * Due sequenze della stessa lunghezza sono trasposizioni l'una dell'altra se e solo se hanno gli stessi
+ * intervalli successivi, quindi la ricerca di un motivo diventa la ricerca delle successioni di intervalli
+ * delle sue forme P, I, R e RI nella successione della melodia. Le finestre della melodia vengono confrontate
+ * con un hash polinomiale aggiornato a ogni nota (Rabin-Karp): la ricerca richiede una sola passata, in tempo
+ * lineare nella lunghezza della melodia e indipendente da quella del motivo, e solo le finestre con lo stesso
+ * hash di una forma vengono verificate intervallo per intervallo.
+ */
+public final class PitchSequence {
+
+    /**
+     * Le forme di un motivo M di lunghezza m: P = M, I = -M, R = M al contrario, RI = -M al contrario.
+     * Un'occorrenza della forma F al livello n è una finestra w con w[i] = F[i] + n per ogni i: per P e R
+     * n è la trasposizione, per I e RI l'asse dell'inversione (w[i] = n - M[i]).
+     */
+    public enum Form {
+        P, I, R, RI
+    }
+
+    /**
+     * Riceve le occorrenze trovate da findMotif, in ordine di posizione.
+     */
+    public interface OccurrenceVisitor {
+        /**
+         * @param position L'indice (da 0) della prima nota dell'occorrenza nella melodia.
+         * @param form La forma del motivo riconosciuta.
+         * @param level La trasposizione o l'asse di inversione (vedi Form), ridotto nel modulo se modulus > 0.
+         */
+        void occurrence(int position, Form form, int level);
+    }
+
+    private static final long HASH_BASE = 0x9E3779B97F4A7C15L; // Dispari: le potenze non si annullano modulo 2^64
+
+    private PitchSequence() {
+    }
+
+    // Intervalli
+
+    /**
+     * Intervallo ordinato da a a b: b - a nello spazio delle altezze (modulus = 0), (b - a) mod modulus altrimenti.
+     */
+    public static int interval(int a, int b, int modulus) {
+        return modulus == 0 ? b - a : PitchSetUtils.normalizePc(b - a, modulus);
+    }
+
+    /**
+     * @return I size - 1 intervalli ordinati tra elementi consecutivi dei primi size elementi di pitches.
+     * @see #interval(int, int, int)
+     */
+    public static int[] orderedIntervals(int[] pitches, int size, int modulus) {
+        int[] intervals = new int[Math.max(0, size - 1)];
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = interval(pitches[i], pitches[i + 1], modulus);
+        }
+        return intervals;
+    }
+
+    // Contorno
+
+    /**
+     * Segmento di contorno (CSEG): ogni altezza sostituita dal suo rango tra le altezze distinte della
+     * sequenza, da 0 (la più grave) a k-1 (la più acuta). Le ripetizioni hanno lo stesso rango.
+     * Es. &lt;60,67,64,60&gt; -&gt; &lt;0,2,1,0&gt;.
+     */
+    public static int[] contour(int[] pitches, int size) {
+        int[] distinct = Arrays.copyOf(pitches, size);
+        Arrays.sort(distinct);
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || distinct[i] != distinct[i - 1]) {
+                distinct[count++] = distinct[i];
+            }
+        }
+        int[] cseg = new int[size];
+        for (int i = 0; i < size; i++) {
+            cseg[i] = Arrays.binarySearch(distinct, 0, count, pitches[i]);
+        }
+        return cseg;
+    }
+
+    /**
+     * Forma primaria del contorno: il rappresentante della classe di equivalenza per inversione (c -&gt; max - c)
+     * e retrogradazione. Come nell'algoritmo di Marvin e Laprade si parte dal CSEG normalizzato e si sceglie
+     * tra P, I, R e RI; a differenza dei loro passi, che con primo e ultimo elemento in parità non determinano
+     * una forma unica, qui si sceglie sempre la minima in ordine lessicografico, quindi tutte le forme della
+     * classe hanno la stessa forma primaria.
+     *
+     * @param pitches Le altezze o un CSEG (viene normalizzato con contour).
+     * @return La forma primaria, un CSEG normalizzato.
+     */
+    public static int[] contourPrimeForm(int[] pitches, int size) {
+        int[] cseg = contour(pitches, size);
+        int max = 0;
+        for (int c : cseg) {
+            max = Math.max(max, c);
+        }
+        int[] best = cseg;
+        int[] candidate = new int[size];
+        for (Form form : Form.values()) {
+            if (form == Form.P) {
+                continue;
+            }
+            for (int i = 0; i < size; i++) {
+                int c = form == Form.I ? cseg[i] : cseg[size - 1 - i];
+                candidate[i] = form == Form.R ? c : max - c;
+            }
+            if (Arrays.compare(candidate, best) < 0) {
+                best = candidate.clone();
+            }
+        }
+        return best;
+    }
+
+    // Ricerca di motivi
+
+    /**
+     * Cerca in una melodia le occorrenze di un motivo e delle sue forme I, R e RI (vedi Form), a qualsiasi
+     * livello di trasposizione. Se più forme hanno la stessa successione di intervalli (motivi simmetrici),
+     * ogni occorrenza viene segnalata una sola volta, con la prima forma nell'ordine P, I, R, RI.
+     *
+     * @param melody Le note della melodia.
+     * @param length Il numero di note della melodia da considerare.
+     * @param motif Il motivo (almeno una nota).
+     * @param modulus 0 per lo spazio delle altezze, altrimenti la dimensione dell'universo delle pitch classes.
+     * @param visitor Riceve le occorrenze, in ordine di posizione.
+     * @return Il numero di occorrenze.
+     * @throws IllegalArgumentException Se il motivo è vuoto.
+     */
+    public static long findMotif(int[] melody, int length, int[] motif, int modulus, OccurrenceVisitor visitor) {
+        if (motif.length == 0) {
+            throw new IllegalArgumentException("Errore: Il motivo non contiene note.");
+        }
+        if (modulus != 0) {
+            ModularPcSet.checkModulus(modulus);
+        }
+        int m = motif.length;
+        int k = m - 1; // Intervalli per finestra
+
+        // Forme distinte del motivo, con le loro successioni di intervalli e i relativi hash
+        Form[] forms = new Form[Form.values().length];
+        int[][] formPitches = new int[forms.length][];
+        int[][] patterns = new int[forms.length][];
+        long[] hashes = new long[forms.length];
+        int formCount = 0;
+        for (Form form : Form.values()) {
+            int[] pitches = new int[m];
+            for (int i = 0; i < m; i++) {
+                int pitch = form == Form.P || form == Form.I ? motif[i] : motif[m - 1 - i];
+                pitches[i] = form == Form.P || form == Form.R ? pitch : -pitch;
+            }
+            int[] pattern = orderedIntervals(pitches, m, modulus);
+            boolean duplicate = false;
+            for (int f = 0; f < formCount; f++) {
+                duplicate |= Arrays.equals(patterns[f], pattern);
+            }
+            if (!duplicate) {
+                forms[formCount] = form;
+                formPitches[formCount] = pitches;
+                patterns[formCount] = pattern;
+                hashes[formCount++] = hash(pattern, 0, k);
+            }
+        }
+
+        long count = 0;
+        if (length < m) {
+            return 0;
+        }
+        // HASH_BASE^k, per togliere dall'hash l'intervallo che esce dalla finestra
+        long outgoingFactor = 1;
+        for (int i = 0; i < k; i++) {
+            outgoingFactor *= HASH_BASE;
+        }
+        long windowHash = 0;
+        for (int i = 0; i < k; i++) {
+            windowHash = windowHash * HASH_BASE + interval(melody[i], melody[i + 1], modulus);
+        }
+        for (int position = 0; ; position++) {
+            for (int f = 0; f < formCount; f++) {
+                if (windowHash == hashes[f] && matches(melody, position, patterns[f], modulus)) {
+                    int level = melody[position] - formPitches[f][0];
+                    visitor.occurrence(position, forms[f], modulus == 0 ? level : PitchSetUtils.normalizePc(level, modulus));
+                    count++;
+                    break;
+                }
+            }
+            if (position + m >= length) {
+                return count;
+            }
+            // Finestra successiva: esce l'intervallo in posizione position, entra quello in position + k
+            windowHash = windowHash * HASH_BASE + interval(melody[position + k], melody[position + m], modulus)
+                         - outgoingFactor * interval(melody[position], melody[position + 1], modulus);
+        }
+    }
+
+    private static long hash(int[] values, int from, int to) {
+        long hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = hash * HASH_BASE + values[i];
+        }
+        return hash;
+    }
+
+    // Verifica di una finestra con lo stesso hash della forma, per escludere le collisioni
+    private static boolean matches(int[] melody, int position, int[] pattern, int modulus) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (interval(melody[position + i], melody[position + i + 1], modulus) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Lettura delle sequenze
+
+    /**
+     * Interpreta una sequenza di numeri interi (anche negativi) separati da spazi, virgole o a capo;
+     * 't' ed 'e' valgono 10 e 11 come in PitchClassParser.
+     * @throws IllegalArgumentException Se l'input contiene altri caratteri o numeri non validi.
+     */
+    public static int[] parse(CharSequence input) {
+        NumberReader reader = new NumberReader(16);
+        for (int i = 0; i < input.length(); i++) {
+            reader.accept(input.charAt(i), input);
+        }
+        return reader.finish(input);
+    }
+
+    /**
+     * Legge un'intera melodia (anche su più righe) con la sintassi di parse(CharSequence), a blocchi.
+     * @throws IllegalArgumentException Se l'input contiene caratteri o numeri non validi.
+     */
+    public static int[] read(Reader in) throws IOException {
+        NumberReader reader = new NumberReader(1 << 16);
+        char[] buffer = new char[1 << 16];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                reader.accept(buffer[i], null);
+            }
+        }
+        return reader.finish(null);
+    }
+
+    // Automa dei token numerici condiviso da parse e read; input serve solo ai messaggi di errore
+    private static final class NumberReader {
+        private int[] values;
+        private int count;
+        private long current;
+        private boolean negative;
+        private int digits; // -1 fuori da un token
+        private long tokens;
+
+        NumberReader(int capacity) {
+            values = new int[capacity];
+            digits = -1;
+        }
+
+        void accept(char c, CharSequence input) {
+            if (c >= '0' && c <= '9' && digits != Integer.MAX_VALUE) {
+                digits = Math.max(digits, 0) + 1;
+                current = current * 10 + (c - '0');
+                if (current > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Errore: Numero troppo grande" + where(input) + ".");
+                }
+            } else if (c == '-' && digits == -1) {
+                negative = true;
+                digits = 0;
+            } else if ((c == 't' || c == 'T' || c == 'e' || c == 'E') && digits == -1) {
+                current = c == 't' || c == 'T' ? 10 : 11;
+                digits = Integer.MAX_VALUE; // Token completo: non può continuare con cifre
+            } else if (c == ' ' || c == ',' || c == '\t' || c == '\n' || c == '\r') {
+                end(input);
+            } else {
+                throw new IllegalArgumentException("Errore: Carattere '" + c + "' non valido" + where(input)
+                                                   + ". Sono ammessi solo numeri interi, 't', 'e', spazi, virgole e a capo.");
+            }
+        }
+
+        private void end(CharSequence input) {
+            if (digits == -1) {
+                return;
+            }
+            if (digits == 0) {
+                throw new IllegalArgumentException("Errore: Segno '-' senza numero" + where(input) + ".");
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[count++] = (int) (negative ? -current : current);
+            tokens++;
+            current = 0;
+            negative = false;
+            digits = -1;
+        }
+
+        private String where(CharSequence input) {
+            return input != null ? " nell'input '" + input + "'" : " dopo " + tokens + " numeri";
+        }
+
+        int[] finish(CharSequence input) {
+            end(input);
+            return Arrays.copyOf(values, count);
+        }
+    }
+
+    // Elaborazione in blocco
+
+    /**
+     * Legge una sequenza di altezze per riga e scrive CSEG, forma primaria del contorno e intervalli ordinati
+     * nello spazio indicato, con le colonne input, cseg, prime, intervals ed error (vedi PitchSetBatchProcessor
+     * per formati e gestione degli errori). Altezze e intervalli possono essere negativi o maggiori di 255, quindi
+     * vengono scritti come liste di interi (PcSetRenderer.numbers). Lo stream viene svuotato ma non chiuso.
+     *
+     * @return Il numero di righe elaborate.
+     */
+    public static long contourLines(BufferedReader reader, OutputStream out, PitchSetBatchProcessor.OutputFormat format,
+                                    int modulus) throws IOException {
+        PcSetRenderer renderer = PcSetRenderer.create(format.toRendererFormat(), out, "input", "cseg", "prime", "intervals", "error");
+        long count = 0;
+        String input;
+        while ((input = reader.readLine()) != null) {
+            if (input.trim().isEmpty()) {
+                continue;
+            }
+            renderer.text(input);
+            try {
+                int[] pitches = parse(input);
+                if (pitches.length == 0) {
+                    renderer.absent().absent().absent().text("Errore: Nessun numero valido inserito.");
+                } else {
+                    int[] intervals = orderedIntervals(pitches, pitches.length, modulus);
+                    renderer.numbers(contour(pitches, pitches.length), pitches.length)
+                            .numbers(contourPrimeForm(pitches, pitches.length), pitches.length)
+                            .numbers(intervals, intervals.length)
+                            .absent();
+                }
+            } catch (IllegalArgumentException e) {
+                renderer.absent().absent().absent().text(e.getMessage());
+            }
+            renderer.endRecord();
+            count++;
+        }
+        renderer.flush();
+        return count;
+    }
+
+    /**
+     * Legge un'intera melodia e scrive le occorrenze del motivo, con le colonne position, form, level e
+     * occurrence (le note della finestra). Lo stream viene svuotato ma non chiuso.
+     *
+     * @return Il numero di occorrenze.
+     * @throws IllegalArgumentException Se la melodia contiene caratteri non validi o il motivo è vuoto.
+     */
+    public static long findMotifLines(BufferedReader reader, OutputStream out, PitchSetBatchProcessor.OutputFormat format,
+                                      int[] motif, int modulus) throws IOException {
+        int[] melody = read(reader);
+        PcSetRenderer renderer = PcSetRenderer.create(format.toRendererFormat(), out, "position", "form", "level", "occurrence");
+        int[] window = new int[motif.length];
+        long count;
+        try {
+            count = findMotif(melody, melody.length, motif, modulus, (position, form, level) -> {
+                System.arraycopy(melody, position, window, 0, window.length);
+                try {
+                    renderer.number(position).text(form.name()).number(level).numbers(window, window.length).endRecord();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        renderer.flush();
+        return count;
+    }
+}
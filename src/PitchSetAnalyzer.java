@@ -1,149 +1,376 @@
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class PitchSetAnalyzer {
 
     /**
-     * Calcola l'oggetto RotationDetails che rappresenta l'Ordine Normale (Normal Order)
-     * di un dato set di pitch classes.
-     * Questa implementazione segue la definizione accademica rigorosa, valutando tutte le
-     * rotazioni per trovare quella con il minimo span e la massima "left-packedness".
+     * Restituisce l'oggetto RotationDetails che rappresenta l'Ordine Normale (Normal Order)
+     * di un dato set di pitch classes, leggendolo dalle tabelle precalcolate di PitchSetTables.
+     * Il risultato coincide con quello dell'algoritmo di riferimento computeNormalOrderObject.
      *
      * @param pcSet L'insieme di pitch classes di input (non necessariamente ordinato o pulito).
      * @return Un oggetto RotationDetails contenente la rotazione dell'ordine normale (trasposta a 0),
      * il suo span e gli intervalli successivi.
      */
     public static RotationDetails getNormalOrderObject(List<Integer> pcSet) {
-        // 1. Pulisci e ordina l'input.
-        List<Integer> cleanedAndSortedPcs = pcSet.stream()
-                                                  .map(PitchSetUtils::normalizePc)
-                                                  .distinct()
-                                                  .sorted()
-                                                  .collect(Collectors.toList());
-
-        if (cleanedAndSortedPcs.isEmpty()) {
+        return getNormalOrderObject(PcSet.fromList(pcSet));
+    }
+
+    /**
+     * Variante di getNormalOrderObject per un PcSet: la rotazione viene ricostruita
+     * dalla pitch class iniziale memorizzata in tabella, senza generare candidati.
+     *
+     * @param pcSet L'insieme di pitch classes.
+     * @return L'oggetto RotationDetails dell'Ordine Normale.
+     */
+    public static RotationDetails getNormalOrderObject(PcSet pcSet) {
+        if (AnalyzerMetrics.ENABLED) {
+            return AnalyzerMetrics.time(AnalyzerMetrics.Operation.NORMAL_ORDER, () -> normalOrderFromTables(pcSet));
+        }
+        return normalOrderFromTables(pcSet);
+    }
+
+    private static RotationDetails normalOrderFromTables(PcSet pcSet) {
+        int[] pcs = new int[PcSet.MODULUS];
+        int size = PitchSetTables.normalOrder(pcSet.mask(), pcs);
+        if (size == 0) {
             return new RotationDetails(Collections.emptyList(), Collections.emptyList(), 0, Collections.emptyList());
         }
 
-        if (cleanedAndSortedPcs.size() == 1) {
-            List<Integer> singlePcRotation = Collections.singletonList(cleanedAndSortedPcs.get(0));
-            return new RotationDetails(
-                singlePcRotation,
-                Collections.singletonList(0),
-                0,
-                Collections.emptyList()
-            );
-        }
-
-        // 2. Genera tutte le rotazioni del set ordinato.
-        List<List<Integer>> allRotations = PitchSetUtils.getRotations(cleanedAndSortedPcs);
-
-        // 3. Prepara i candidati RotationDetails per il confronto.
-        List<RotationDetails> candidates = new ArrayList<>();
-        for (List<Integer> rot : allRotations) {
-            
-        	int root = rot.get(0);
-            
-        	List<Integer> distances = rot.stream()
-						            		.map(pc -> PitchSetUtils.normalizePc(pc - root))
-						            		.collect(Collectors.toList());
-            
-        	int span = PitchSetUtils.getSpan(distances);
-            
-        	List<Integer> intervals = PitchSetUtils.getSuccessiveIntervals(distances);
-            candidates.add(new RotationDetails(rot, distances, span, intervals));
-        }
-
-        // 4. Trova la migliore RotationDetails usando il criterio standard della Normal Order.
-        // Criteri di ordinamento:
-        // a) Span minimo (l'intervallo tra il primo e l'ultimo elemento della forma 0-based).
-        // b) Se span uguale, confronta lessicograficamente le sequenze degli intervalli successivi.
-        // c) Se anche gli intervalli sono uguali (set simmetrici), scegli la rotazione che inizia con la pitch class più bassa.
-        RotationDetails bestRotation = Collections.min(candidates, new Comparator<RotationDetails>() {
-            @Override
-            public int compare(RotationDetails objA, RotationDetails objB) {
-                // Criterio 1: Span minimo
-                int spanComparison = Integer.compare(objA.getSpan(), objB.getSpan());
-                if (spanComparison != 0) {
-                    return spanComparison;
-                }
-
-                // Criterio 2: Intervalli successivi lessicograficamente (più "left-packed")
-                List<Integer> intervalsA = objA.getIntervals();
-                List<Integer> intervalsB = objB.getIntervals();
-
-                int len = Math.min(intervalsA.size(), intervalsB.size());
-                for (int i = 0; i < len; i++) {
-                    int intervalComparison = Integer.compare(intervalsA.get(i), intervalsB.get(i));
-                    if (intervalComparison != 0) {
-                        return intervalComparison;
-                    }
-                }
-                // Criterio 3: Se span e intervalli sono identici, scegli la rotazione che inizia con la PC più bassa.
-                // Questo è un tie-breaker per i set simmetrici con multiple Normal Orders equivalenti.
-                return Integer.compare(objA.getRotation().get(0), objB.getRotation().get(0));
+        return toRotationDetails(pcs, size, PcSet.MODULUS);
+    }
+
+    /**
+     * Restituisce la Prime Form di un set di pitch classes tramite una lettura indicizzata
+     * nelle tabelle precalcolate. Il risultato coincide con quello di computePrimeForm.
+     *
+     * @param pcSet L'insieme di pitch classes di input (non necessariamente ordinato o pulito).
+     * @return Una lista di interi che rappresenta la Prime Form.
+     */
+    public static List<Integer> getPrimeForm(List<Integer> pcSet) {
+        return getPrimeForm(PcSet.fromList(pcSet)).toList();
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return La Prime Form del set, letta dalla tabella precalcolata.
+     */
+    public static PcSet getPrimeForm(PcSet pcSet) {
+        if (AnalyzerMetrics.ENABLED) {
+            return AnalyzerMetrics.time(AnalyzerMetrics.Operation.PRIME_FORM, () -> PcSet.fromMask(PitchSetTables.primeFormMask(pcSet.mask())));
+        }
+        return PcSet.fromMask(PitchSetTables.primeFormMask(pcSet.mask()));
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return Il livello n tale che il set sia T_n della Prime Form (o I_n, se isInvertedForm è true).
+     */
+    public static int getTranspositionLevel(PcSet pcSet) {
+        return PitchSetTables.transpositionLevel(pcSet.mask());
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return true se il set si ottiene dalla Prime Form solo tramite inversione.
+     */
+    public static boolean isInvertedForm(PcSet pcSet) {
+        return PitchSetTables.isInverted(pcSet.mask());
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return Il vettore delle classi di intervalli (ic1-ic6), letto dal catalogo delle classi.
+     */
+    public static int[] getIntervalClassVector(PcSet pcSet) {
+        return SetClassCatalog.intervalVector(SetClassCatalog.classOf(pcSet.mask()));
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return Il nome di Forte della classe del set (es. "3-11", "4-Z15").
+     */
+    public static String getForteName(PcSet pcSet) {
+        return SetClassCatalog.forteName(SetClassCatalog.classOf(pcSet.mask()));
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return Il nome di Forte della classe Z-correlata, oppure null se il set non ha partner Z.
+     */
+    public static String getZPartnerName(PcSet pcSet) {
+        int partner = SetClassCatalog.zPartner(SetClassCatalog.classOf(pcSet.mask()));
+        return partner < 0 ? null : SetClassCatalog.forteName(partner);
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return Il nome di Forte della classe del complemento del set.
+     */
+    public static String getComplementForteName(PcSet pcSet) {
+        return SetClassCatalog.forteName(SetClassCatalog.complementClass(SetClassCatalog.classOf(pcSet.mask())));
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return Il numero di trasposizioni T_n (T_0 compresa) che lasciano invariato il set.
+     */
+    public static int getTranspositionalSymmetry(PcSet pcSet) {
+        return SetClassCatalog.transpositionalSymmetry(SetClassCatalog.classOf(pcSet.mask()));
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return Il numero di inversioni I_n che lasciano invariato il set.
+     */
+    public static int getInversionalSymmetry(PcSet pcSet) {
+        return SetClassCatalog.inversionalSymmetry(SetClassCatalog.classOf(pcSet.mask()));
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return I nomi di Forte delle classi che includono il set sotto qualche T_n/T_nI (esclusa la sua classe).
+     */
+    public static List<String> getSupersetClassNames(PcSet pcSet) {
+        return toForteNames(SetClassInclusionIndex.supersetClasses(SetClassCatalog.classOf(pcSet.mask())));
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return I nomi di Forte delle classi incluse nel set sotto qualche T_n/T_nI (esclusa la sua classe).
+     */
+    public static List<String> getSubsetClassNames(PcSet pcSet) {
+        return toForteNames(SetClassInclusionIndex.subsetClasses(SetClassCatalog.classOf(pcSet.mask())));
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @param nexus Il set nexus del complesso.
+     * @return true se la classe del set appartiene al complesso K del nexus.
+     */
+    public static boolean isInComplexK(PcSet pcSet, PcSet nexus) {
+        return SetClassInclusionIndex.isInK(SetClassCatalog.classOf(pcSet.mask()), SetClassCatalog.classOf(nexus.mask()));
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @param nexus Il set nexus del complesso.
+     * @return true se la classe del set appartiene al sottocomplesso Kh del nexus.
+     */
+    public static boolean isInComplexKh(PcSet pcSet, PcSet nexus) {
+        return SetClassInclusionIndex.isInKh(SetClassCatalog.classOf(pcSet.mask()), SetClassCatalog.classOf(nexus.mask()));
+    }
+
+    /**
+     * @param nexus Il set nexus.
+     * @return I nomi di Forte delle classi del complesso K del nexus.
+     */
+    public static List<String> getComplexKNames(PcSet nexus) {
+        return toForteNames(SetClassInclusionIndex.complexK(SetClassCatalog.classOf(nexus.mask())));
+    }
+
+    /**
+     * @param nexus Il set nexus.
+     * @return I nomi di Forte delle classi del sottocomplesso Kh del nexus.
+     */
+    public static List<String> getComplexKhNames(PcSet nexus) {
+        return toForteNames(SetClassInclusionIndex.complexKh(SetClassCatalog.classOf(nexus.mask())));
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @param metric La misura di somiglianza.
+     * @param k Il numero massimo di classi.
+     * @return I nomi di Forte delle k classi più simili alla classe del set (esclusa), dalla più vicina.
+     */
+    public static List<String> getMostSimilarClassNames(PcSet pcSet, SetClassSimilarity.Metric metric, int k) {
+        return toForteNames(SetClassSimilarity.nearestClasses(metric, SetClassCatalog.classOf(pcSet.mask()), k));
+    }
+
+    // Converte identificativi di classe nei rispettivi nomi di Forte, mantenendo l'ordine
+    private static List<String> toForteNames(int[] classIds) {
+        List<String> names = new ArrayList<>(classIds.length);
+        for (int classId : classIds) {
+            names.add(SetClassCatalog.forteName(classId));
+        }
+        return names;
+    }
+
+    /**
+     * Ordine Normale in un universo a modulus suddivisioni dell'ottava (es. 19, 24, 31 o 53 EDO),
+     * calcolato in tempo lineare da NormalOrderEngine con gli stessi criteri della versione a 12.
+     *
+     * @param pcSet L'insieme di pitch classes di input (non necessariamente ordinato o pulito).
+     * @param modulus La dimensione dell'universo (al massimo ModularPcSet.MAX_MODULUS).
+     * @return L'oggetto RotationDetails dell'Ordine Normale.
+     */
+    public static RotationDetails getNormalOrderObject(List<Integer> pcSet, int modulus) {
+        if (AnalyzerMetrics.ENABLED) {
+            return AnalyzerMetrics.time(AnalyzerMetrics.Operation.NORMAL_ORDER, () -> normalOrderModular(pcSet, modulus));
+        }
+        return normalOrderModular(pcSet, modulus);
+    }
+
+    private static RotationDetails normalOrderModular(List<Integer> pcSet, int modulus) {
+        ModularPcSet set = ModularPcSet.fromList(pcSet, modulus);
+        int[] rotation = new int[set.cardinality()];
+        int size = getNormalOrder(set, rotation);
+        if (size == 0) {
+            return new RotationDetails(Collections.emptyList(), Collections.emptyList(), 0, Collections.emptyList());
+        }
+        return toRotationDetails(rotation, size, modulus);
+    }
+
+    /**
+     * Prime Form in un universo a modulus suddivisioni dell'ottava: la forma canonica del "bracelet",
+     * cioè la più compatta tra l'Ordine Normale del set e quello della sua inversione (trasposti a 0),
+     * confrontati per span e poi per intervalli successivi. Con modulus = 12 il risultato coincide con
+     * getPrimeForm(List).
+     *
+     * @param pcSet L'insieme di pitch classes di input (non necessariamente ordinato o pulito).
+     * @param modulus La dimensione dell'universo (al massimo ModularPcSet.MAX_MODULUS).
+     * @return Una lista di interi che rappresenta la Prime Form.
+     */
+    public static List<Integer> getPrimeForm(List<Integer> pcSet, int modulus) {
+        return getPrimeForm(ModularPcSet.fromList(pcSet, modulus)).toList();
+    }
+
+    /**
+     * @param pcSet L'insieme di pitch classes.
+     * @return La Prime Form canonica del set (vedi getPrimeForm(List, int)).
+     */
+    public static ModularPcSet getPrimeForm(ModularPcSet pcSet) {
+        if (AnalyzerMetrics.ENABLED) {
+            return AnalyzerMetrics.time(AnalyzerMetrics.Operation.PRIME_FORM, () -> primeFormModular(pcSet));
+        }
+        return primeFormModular(pcSet);
+    }
+
+    private static ModularPcSet primeFormModular(ModularPcSet pcSet) {
+        int size = pcSet.cardinality();
+        if (size == 0) {
+            return pcSet;
+        }
+        int modulus = pcSet.modulus();
+        int[] original = new int[size];
+        int[] inverted = new int[size];
+        getNormalOrder(pcSet, original);
+        getNormalOrder(pcSet.invert(0), inverted);
+        toDistances(original, size, modulus);
+        toDistances(inverted, size, modulus);
+
+        int[] best = compareNormalOrders(original, inverted, size) <= 0 ? original : inverted;
+        return ModularPcSet.of(modulus, best);
+    }
+
+    /**
+     * Scrive l'Ordine Normale di un set in un array primitivo, senza costruire liste.
+     * @param set L'insieme di pitch classes.
+     * @param dest L'array di destinazione (almeno cardinality() elementi).
+     * @return La cardinalità del set.
+     */
+    public static int getNormalOrder(ModularPcSet set, int[] dest) {
+        int[] sorted = set.toArray();
+        int size = sorted.length;
+        if (size == 0) {
+            return 0;
+        }
+        int start = NormalOrderEngine.normalOrderStart(sorted, size, set.modulus(), new int[size]);
+        for (int k = 0; k < size; k++) {
+            dest[k] = sorted[(start + k) % size];
+        }
+        return size;
+    }
+
+    // Trasforma una rotazione nelle distanze dalla sua prima pitch class
+    private static void toDistances(int[] rotation, int size, int modulus) {
+        int root = rotation[0];
+        for (int k = 0; k < size; k++) {
+            rotation[k] = PitchSetUtils.normalizePc(rotation[k] - root, modulus);
+        }
+    }
+
+    // Confronta due Ordini Normali trasposti a 0: prima lo span, poi le distanze da sinistra
+    private static int compareNormalOrders(int[] a, int[] b, int size) {
+        int spanComparison = Integer.compare(a[size - 1], b[size - 1]);
+        if (spanComparison != 0) {
+            return spanComparison;
+        }
+        for (int k = 1; k < size; k++) {
+            if (a[k] != b[k]) {
+                return Integer.compare(a[k], b[k]);
             }
-        });
+        }
+        return 0;
+    }
+
+    /**
+     * Calcola l'oggetto RotationDetails che rappresenta l'Ordine Normale (Normal Order)
+     * di un dato set di pitch classes. È l'algoritmo di riferimento usato per popolare PitchSetTables.
+     * Segue la definizione accademica rigorosa: span minimo, poi intervalli successivi lessicograficamente
+     * minimi ("left-packedness"), infine la rotazione che inizia con la pitch class più bassa.
+     * La rotazione vincente viene trovata in tempo lineare da NormalOrderEngine sulla stringa
+     * circolare degli intervalli, senza generare e ordinare tutte le rotazioni.
+     *
+     * @param pcSet L'insieme di pitch classes di input (non necessariamente ordinato o pulito).
+     * @return Un oggetto RotationDetails contenente la rotazione dell'ordine normale (trasposta a 0),
+     * il suo span e gli intervalli successivi.
+     */
+    static RotationDetails computeNormalOrderObject(List<Integer> pcSet) {
+        // 1. Pulisci e ordina l'input (normalizzazione, duplicati e ordinamento passano dalla maschera a 12 bit).
+        int[] sortedPcs = new int[PcSet.MODULUS];
+        int size = PcSet.fromList(pcSet).toArray(sortedPcs);
+
+        if (size == 0) {
+            return new RotationDetails(Collections.emptyList(), Collections.emptyList(), 0, Collections.emptyList());
+        }
+
+        // 2. Trova l'indice iniziale della rotazione migliore.
+        int start = NormalOrderEngine.normalOrderStart(sortedPcs, size, PcSet.MODULUS, new int[size]);
 
-        return bestRotation;
+        // 3. Ricostruisci la rotazione a partire da quell'indice.
+        int[] rotation = new int[size];
+        for (int k = 0; k < size; k++) {
+            rotation[k] = sortedPcs[(start + k) % size];
+        }
+        return toRotationDetails(rotation, size, PcSet.MODULUS);
+    }
+
+    /**
+     * Costruisce il RotationDetails di una rotazione: distanze dalla prima pitch class, span e intervalli successivi.
+     * @param rotation Le pitch classes della rotazione, nell'ordine.
+     * @param size Il numero di pitch classes (almeno 1).
+     * @param modulus La dimensione dell'universo.
+     */
+    private static RotationDetails toRotationDetails(int[] rotation, int size, int modulus) {
+        int root = rotation[0];
+        List<Integer> rotationList = new ArrayList<>(size);
+        List<Integer> distances = new ArrayList<>(size);
+        List<Integer> intervals = new ArrayList<>(size - 1);
+        for (int i = 0; i < size; i++) {
+            rotationList.add(rotation[i]);
+            distances.add(PitchSetUtils.normalizePc(rotation[i] - root, modulus));
+            if (i > 0) {
+                intervals.add(PitchSetUtils.normalizePc(rotation[i] - rotation[i - 1], modulus));
+            }
+        }
+        return new RotationDetails(rotationList, distances, distances.get(size - 1), intervals);
     }
 
     /**
      * Calcola la Prime Form di un set di pitch classes.
-     * La Prime Form è la rappresentazione più compatta (left-packed) di un set,
-     * considerando sia il set originale che la sua inversione.
-     * Questo metodo sfrutta l'algoritmo della Normal Order per efficienza.
+     * La Prime Form è la più compatta tra l'Ordine Normale del set e quello della sua inversione, trasposti
+     * a 0: span minore, poi distanze minori da sinistra. È lo stesso criterio di getPrimeForm(List, int),
+     * quindi per l'universo a 12 pitch classes le due versioni coincidono. Rispetto al catalogo di Forte
+     * (SetClassCatalog) coincide l'appartenenza alla classe, non sempre il rappresentante: per alcune classi
+     * Forte elenca un'altra forma (es. 5-20: [0,1,5,6,8] invece di [0,1,3,7,8]).
+     * È l'algoritmo di riferimento usato per popolare PitchSetTables.
      *
      * @param pcSet L'insieme di pitch classes di input (non necessariamente ordinato o pulito).
      * @return Una lista di interi che rappresenta la Prime Form.
      */
-    public static List<Integer> getPrimeForm(List<Integer> pcSet) {
-        // 1. Pulisci e ordina l'input per lavorare su un set canonico
-        List<Integer> cleanedPcSet = pcSet.stream()
-                                          .map(PitchSetUtils::normalizePc)
-                                          .distinct()
-                                          .sorted()
-                                          .collect(Collectors.toList());
-
-        if (cleanedPcSet.isEmpty()) {
-            return Collections.emptyList();
-        }
-        if (cleanedPcSet.size() == 1) {
-            return Collections.singletonList(0); // Prime form di un singolo elemento è [0]
-        }
-
-        // 2. Calcola la Normal Order del set originale
-        RotationDetails originalNormObj = getNormalOrderObject(cleanedPcSet);
-        List<Integer> noDistances = originalNormObj.getDistances(); // La NO trasposta a 0
-
-        // Se il set ha meno di 2 elementi (già gestito sopra, ma per sicurezza negli indici)
-        if (noDistances.size() < 2) {
-            return noDistances;
-        }
-
-        // 3. Calcola gli intervalli tra i primi due elementi e gli ultimi due della Normal Order (0-based)
-        int firstInterval = noDistances.get(1) - noDistances.get(0);
-        int lastInterval = noDistances.get(noDistances.size() - 1) - noDistances.get(noDistances.size() - 2);
-
-        // 4. Confronta gli intervalli per decidere se invertire
-        // Se il primo intervallo è minore o uguale all'ultimo, la NO del set originale è la Prime Form.
-        // Altrimenti, si calcola la NO dell'inversione.
-        if (firstInterval <= lastInterval) {
-            return noDistances;
-        } else {
-            // Per ottenere la Prime Form invertendo la Normal Order:
-            // Si inverte il set [0, pc2, ..., pcN] attorno all'asse che fa diventare 0 l'ultimo elemento.
-            // Questo è equivalente a (ultimo_elemento - pc_i) mod 12.
-            int lastElementOfNO = noDistances.get(noDistances.size() - 1);
-            List<Integer> invertedPrimeForm = noDistances.stream()
-                                                         .map(pc -> PitchSetUtils.normalizePc(lastElementOfNO - pc))
-                                                         .distinct()
-                                                         .sorted()
-                                                         .collect(Collectors.toList());
-            return invertedPrimeForm;
-        }
+    static List<Integer> computePrimeForm(List<Integer> pcSet) {
+        return primeFormModular(ModularPcSet.fromList(pcSet, PcSet.MODULUS)).toList();
     }
 }
\ No newline at end of file
@@ -0,0 +1,180 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Modalità batch non interattiva: legge un set di pitch classes per riga e scrive,
+ * per ciascuna, Normal Form, Prime Form e intervalli della Prime Form in formato TSV,
+ * JSON Lines o binario (vedi PcSetRenderer). Le righe vengono elaborate una alla volta
+ * (memoria costante) e l'output passa da un unico PcSetRenderer, senza prompt né messaggi interattivi.
+ * Le righe non valide producono un record con il messaggio di errore e non interrompono l'elaborazione.
+ */
+public class PitchSetBatchProcessor {
+
+    public enum OutputFormat {
+        TSV,
+        JSONL,
+        /** Il formato binario di PcSetRenderer. */
+        BINARY;
+
+        /**
+         * @param name Il nome del formato da riga di comando ("tsv", "jsonl" o "binary").
+         * @return Il formato corrispondente.
+         * @throws IllegalArgumentException Se il formato non è riconosciuto.
+         */
+        public static OutputFormat fromName(String name) {
+            switch (name.toLowerCase()) {
+                case "tsv":
+                    return TSV;
+                case "jsonl":
+                case "json":
+                    return JSONL;
+                case "binary":
+                case "bin":
+                    return BINARY;
+                default:
+                    throw new IllegalArgumentException("Errore: Formato di output '" + name + "' non supportato (usa 'tsv', 'jsonl' o 'binary').");
+            }
+        }
+
+        /**
+         * @return Il formato di PcSetRenderer corrispondente.
+         */
+        public PcSetRenderer.Format toRendererFormat() {
+            switch (this) {
+                case TSV:
+                    return PcSetRenderer.Format.TSV;
+                case JSONL:
+                    return PcSetRenderer.Format.JSONL;
+                default:
+                    return PcSetRenderer.Format.BINARY;
+            }
+        }
+    }
+
+    private static final String[] COLUMNS = {"input", "normal_form", "prime_form", "pf_intervals", "error"};
+
+    private final OutputFormat format;
+    private final int modulus;
+    private final int[] pcs;
+    private PcSetRenderer renderer;
+
+    public PitchSetBatchProcessor(OutputFormat format) {
+        this(format, PcSet.MODULUS);
+    }
+
+    /**
+     * @param format Il formato di output.
+     * @param modulus La dimensione dell'universo: 12 usa le tabelle precalcolate, gli altri valori
+     * (fino a ModularPcSet.MAX_MODULUS) l'algoritmo lineare di NormalOrderEngine.
+     */
+    public PitchSetBatchProcessor(OutputFormat format, int modulus) {
+        ModularPcSet.checkModulus(modulus);
+        this.format = format;
+        this.modulus = modulus;
+        this.pcs = new int[modulus];
+    }
+
+    /**
+     * Elabora tutte le righe del reader e scrive i risultati sullo stream.
+     * Le righe vuote vengono ignorate. Lo stream viene svuotato (flush) ma non chiuso.
+     *
+     * @param reader La sorgente delle righe di input.
+     * @param out La destinazione dei record (il renderer la scrive a blocchi, non serve bufferizzarla).
+     * @return Il numero di righe elaborate.
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    public long process(BufferedReader reader, OutputStream out) throws IOException {
+        renderer = PcSetRenderer.create(format.toRendererFormat(), out, COLUMNS);
+
+        long count = 0;
+        String input;
+        while ((input = reader.readLine()) != null) {
+            if (input.trim().isEmpty()) {
+                continue;
+            }
+            long time = AnalyzerMetrics.ENABLED ? System.nanoTime() : 0;
+            try {
+                long mask = PitchClassParser.parseMask(input, modulus);
+                if (AnalyzerMetrics.ENABLED) {
+                    time = AnalyzerMetrics.lap(AnalyzerMetrics.Operation.BATCH_PARSE, time);
+                }
+                if (mask == 0) {
+                    appendError(input, "Errore: Nessun numero valido inserito o set vuoto dopo il parsing.");
+                } else {
+                    appendResult(input, mask);
+                }
+            } catch (IllegalArgumentException e) {
+                appendError(input, e.getMessage());
+            }
+            if (AnalyzerMetrics.ENABLED) {
+                time = AnalyzerMetrics.lap(AnalyzerMetrics.Operation.BATCH_ANALYZE, time);
+            }
+            renderer.endRecord();
+            if (AnalyzerMetrics.ENABLED) {
+                AnalyzerMetrics.lap(AnalyzerMetrics.Operation.BATCH_WRITE, time);
+            }
+            count++;
+        }
+        renderer.flush();
+        return count;
+    }
+
+    private void appendResult(String input, long mask) {
+        int size;
+        long primeMask;
+        if (modulus == PcSet.MODULUS) {
+            size = PitchSetTables.normalOrder((int) mask, pcs);
+            primeMask = PitchSetTables.primeFormMask((int) mask);
+        } else {
+            ModularPcSet set = ModularPcSet.fromMask(mask, modulus);
+            size = PitchSetAnalyzer.getNormalOrder(set, pcs);
+            primeMask = PitchSetAnalyzer.getPrimeForm(set).mask();
+        }
+
+        renderer.text(input).set(pcs, size);
+        size = ModularPcSet.fromMask(primeMask, modulus).toArray(pcs);
+        renderer.set(pcs, size).intervals(pcs, size, modulus).absent();
+    }
+
+    private void appendError(String input, String message) {
+        renderer.text(input).absent().absent().absent().text(message);
+    }
+
+    /**
+     * Aggiunge una stringa JSON (tra virgolette, con i caratteri di controllo in escape).
+     * Condiviso con le altre uscite JSON (es. PitchSetServer).
+     * @param line Il buffer di destinazione.
+     * @param value Il testo da scrivere.
+     */
+    static void appendJsonString(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
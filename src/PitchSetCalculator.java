@@ -1,14 +1,59 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class PitchSetCalculator {
 
+    /** Stato di uscita: esecuzione completata. */
+    public static final int EXIT_OK = 0;
+    /** Stato di uscita: errore di I/O o dati di input non validi. */
+    public static final int EXIT_IO_ERROR = 1;
+    /** Stato di uscita: argomenti da riga di comando non validi. */
+    public static final int EXIT_USAGE = 2;
+
     /**
      * Esegue il loop principale del programma, gestendo l'input utente e il menu delle operazioni.
      *
      * @param args Gli argomenti da riga di comando passati all'applicazione.
+     * @return Lo stato di uscita (EXIT_OK, EXIT_IO_ERROR o EXIT_USAGE).
      */
-    public void run(String[] args) {
+    public int run(String[] args) {
+        int modulus;
+        try {
+            modulus = parseModulus(args);
+        } catch (IllegalArgumentException e) {
+            return fail(EXIT_USAGE, e.getMessage());
+        }
+        args = removeModulusOption(args);
+        if (AnalyzerMetrics.ENABLED) {
+            AnalyzerMetrics.initialize();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(AnalyzerMetrics.report()), "metrics-report"));
+        }
+
+        if (args.length > 0 && args[0].startsWith("--")) {
+            return runCommand(args, modulus);
+        }
+
         Scanner scanner = new Scanner(System.in);
         String inputLine = "";
         List<Integer> currentPcSet = null; // Memorizza l'insieme iniziale per operazioni ripetute
@@ -30,7 +75,9 @@ public class PitchSetCalculator {
                         inputLine = scanner.nextLine();
                     }
                 } else { // Prima esecuzione o dopo aver scelto '4. Inserisci un nuovo insieme'
-                    System.out.println("Inserisci le pitch classes (0-11, 't' per 10, 'e' per 11) separate da spazi o virgole:");
+                    // 't' ed 'e' sono accettate solo se il modulo contiene le pitch classes 10 e 11
+                    String letters = modulus > 11 ? ", 't' per 10, 'e' per 11" : modulus > 10 ? ", 't' per 10" : "";
+                    System.out.println("Inserisci le pitch classes (0-" + (modulus - 1) + letters + ") separate da spazi o virgole:");
                     inputLine = scanner.nextLine();
                 }
             }
@@ -38,7 +85,9 @@ public class PitchSetCalculator {
             // Tenta di fare il parsing solo se inputLine non è vuota
             if (!inputLine.isEmpty()) {
                 try {
-                    currentPcSet = PitchSetUtils.parseAndCleanPitchClasses(inputLine);
+                    currentPcSet = modulus == PcSet.MODULUS
+                                   ? PitchSetUtils.parseAndCleanPitchClasses(inputLine)
+                                   : PitchSetUtils.parseAndCleanPitchClasses(inputLine, modulus);
                 } catch (IllegalArgumentException e) {
                     System.err.println(e.getMessage());
                     args = new String[0]; // Resetta gli argomenti per forzare l'input interattivo nel prossimo ciclo
@@ -59,14 +108,31 @@ public class PitchSetCalculator {
             // Mostra i risultati iniziali dell'analisi per il set corrente
             System.out.println("\n--- Risultati Analisi Insieme Iniziale ---");
             System.out.println("Input PCs:        " + PitchSetUtils.toStringPcSet(currentPcSet));
-            RotationDetails normObj = PitchSetAnalyzer.getNormalOrderObject(currentPcSet);
-            List<Integer> primeForm = PitchSetAnalyzer.getPrimeForm(currentPcSet);
-            List<Integer> pfIntervals = PitchSetUtils.getSuccessiveIntervals(primeForm);
+            RotationDetails normObj = modulus == PcSet.MODULUS
+                                      ? PitchSetAnalyzer.getNormalOrderObject(currentPcSet)
+                                      : PitchSetAnalyzer.getNormalOrderObject(currentPcSet, modulus);
+            List<Integer> primeForm = modulus == PcSet.MODULUS
+                                      ? PitchSetAnalyzer.getPrimeForm(currentPcSet)
+                                      : PitchSetAnalyzer.getPrimeForm(currentPcSet, modulus);
+            List<Integer> pfIntervals = PitchSetUtils.getSuccessiveIntervals(primeForm, modulus);
 
             System.out.println("Normal Form:      " + PitchSetUtils.toStringPcSet(normObj.getRotation()));
             System.out.println("Primary Form:     " + PitchSetUtils.toStringPcSet(primeForm));
             System.out.println("Intervalli PF:    " + PitchSetUtils.toStringPcSet(pfIntervals));
 
+            if (modulus != PcSet.MODULUS) { // Il catalogo di Forte esiste solo per l'universo a 12 pitch classes
+                System.out.println("Universo:         " + modulus + "-EDO");
+            } else {
+                PcSet currentMaskSet = PcSet.fromList(currentPcSet);
+                String zPartner = PitchSetAnalyzer.getZPartnerName(currentMaskSet);
+                System.out.println("Forte:            " + PitchSetAnalyzer.getForteName(currentMaskSet));
+                System.out.println("Vettore IC:       " + PitchSetUtils.toStringPcSet(toList(PitchSetAnalyzer.getIntervalClassVector(currentMaskSet))));
+                System.out.println("Partner Z:        " + (zPartner != null ? zPartner : "-"));
+                System.out.println("Complemento:      " + PitchSetAnalyzer.getComplementForteName(currentMaskSet));
+                System.out.println("Simmetria:        T_n " + PitchSetAnalyzer.getTranspositionalSymmetry(currentMaskSet)
+                                   + ", I_n " + PitchSetAnalyzer.getInversionalSymmetry(currentMaskSet));
+            }
+
             // Ciclo del menu per le operazioni sul set corrente
             while (true) {
                 System.out.println("\n--- Scegli un'operazione ---");
@@ -75,18 +141,21 @@ public class PitchSetCalculator {
                 System.out.println("3. Inverti l'insieme (I_n)");
                 System.out.println("4. Inserisci un nuovo insieme");
                 System.out.println("5. Esci");
+                System.out.println("6. Mostra inclusioni e complessi K/Kh");
+                System.out.println("7. Mostra le classi più simili");
+                System.out.println("8. Applica un'espressione di operatori T/I/M (es. T3 I5 M5)");
                 System.out.print("La tua scelta: ");
                 String choice = scanner.nextLine().trim();
 
                 switch (choice) {
                     case "1":
-                        displayAllTranspositionsAndInversions(currentPcSet);
+                        displayAllTranspositionsAndInversions(currentPcSet, modulus);
                         break;
                     case "2":
-                        transposeSet(currentPcSet, scanner);
+                        transposeSet(currentPcSet, scanner, modulus);
                         break;
                     case "3":
-                        invertSet(currentPcSet, scanner);
+                        invertSet(currentPcSet, scanner, modulus);
                         break;
                     case "4":
                         currentPcSet = null; // Flag per chiedere un nuovo input nel ciclo principale
@@ -94,7 +163,16 @@ public class PitchSetCalculator {
                     case "5":
                         System.out.println("Uscita dal programma. Arrivederci!");
                         scanner.close();
-                        return; // Esce dall'applicazione
+                        return EXIT_OK; // Esce dall'applicazione
+                    case "6":
+                        showInclusions(currentPcSet, scanner, modulus);
+                        break;
+                    case "7":
+                        showSimilarClasses(currentPcSet, modulus);
+                        break;
+                    case "8":
+                        applyExpression(currentPcSet, scanner, modulus);
+                        break;
                     default:
                         System.out.println("Scelta non valida. Riprova.");
                 }
@@ -107,74 +185,1031 @@ public class PitchSetCalculator {
         }
     }
 
+    /**
+     * Legge l'opzione --edo N, che può comparire in qualsiasi posizione tra gli argomenti.
+     * @param args Gli argomenti da riga di comando.
+     * @return La dimensione dell'universo (12 se l'opzione è assente).
+     * @throws IllegalArgumentException Se il valore manca o è fuori dal range 2-64.
+     */
+    private static int parseModulus(String[] args) {
+        int modulus = PcSet.MODULUS;
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].equals("--edo")) {
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Errore: Manca il valore di --edo. Uso: --edo N (2-" + ModularPcSet.MAX_MODULUS + ")");
+            }
+            try {
+                modulus = Integer.parseInt(args[i + 1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Errore: Valore di --edo non numerico: '" + args[i + 1] + "'.");
+            }
+            if (modulus < 2 || modulus > ModularPcSet.MAX_MODULUS) {
+                throw new IllegalArgumentException("Errore: Il valore di --edo deve essere compreso tra 2 e " + ModularPcSet.MAX_MODULUS + ".");
+            }
+        }
+        return modulus;
+    }
+
+    // Restituisce gli argomenti senza l'opzione --edo e il suo valore
+    private static String[] removeModulusOption(String[] args) {
+        List<String> remaining = new ArrayList<>(args.length);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--edo")) {
+                i++; // Salta anche il valore
+            } else {
+                remaining.add(args[i]);
+            }
+        }
+        return remaining.toArray(new String[0]);
+    }
+
+    /**
+     * Esegue una modalità non interattiva selezionata dal primo argomento.
+     * @param args Gli argomenti da riga di comando, il primo dei quali inizia con "--".
+     * @param modulus La dimensione dell'universo scelta con --edo.
+     * @return Lo stato di uscita.
+     */
+    private static int runCommand(String[] args, int modulus) {
+        switch (args[0]) {
+            case "--apply":
+                return runApply(args, modulus);
+            case "--batch":
+                return runBatch(args, modulus);
+            case "--contour":
+                return runContour(args, modulus);
+            case "--motif":
+                return runMotif(args, modulus);
+            case "--catalog":
+                if (modulus != PcSet.MODULUS) {
+                    return fail(EXIT_USAGE, "Errore: Il catalogo delle classi è disponibile solo per l'universo a 12 pitch classes.");
+                }
+                return runCatalog(args);
+            case "--pairs":
+                if (modulus != PcSet.MODULUS) {
+                    return fail(EXIT_USAGE, "Errore: La ricerca degli operatori è disponibile solo per l'universo a 12 pitch classes.");
+                }
+                return runPairs(args);
+            case "--rows":
+                if (modulus != PcSet.MODULUS) {
+                    return fail(EXIT_USAGE, "Errore: Le serie dodecafoniche sono disponibili solo per l'universo a 12 pitch classes.");
+                }
+                return runRows(args);
+            case "--search":
+                if (modulus != PcSet.MODULUS) {
+                    return fail(EXIT_USAGE, "Errore: La ricerca di serie è disponibile solo per l'universo a 12 pitch classes.");
+                }
+                return runSearch(args);
+            case "--stream":
+                if (modulus != PcSet.MODULUS) {
+                    return fail(EXIT_USAGE, "Errore: L'analisi di flussi di eventi è disponibile solo per l'universo a 12 pitch classes.");
+                }
+                return runStream(args);
+            case "--midi":
+                if (modulus != PcSet.MODULUS) {
+                    return fail(EXIT_USAGE, "Errore: L'analisi dei file MIDI è disponibile solo per l'universo a 12 pitch classes.");
+                }
+                return runMidi(args);
+            case "--corpus-file":
+                if (modulus != PcSet.MODULUS) {
+                    return fail(EXIT_USAGE, "Errore: I corpus binari sono disponibili solo per l'universo a 12 pitch classes.");
+                }
+                return runCorpusFile(args);
+            case "--group-by":
+                if (modulus != PcSet.MODULUS) {
+                    return fail(EXIT_USAGE, "Errore: I raggruppamenti dei corpus binari sono disponibili solo per l'universo a 12 pitch classes.");
+                }
+                return runGroupBy(args);
+            case "--voice-leading":
+                if (modulus != PcSet.MODULUS) {
+                    return fail(EXIT_USAGE, "Errore: Le distanze di condotta delle parti sono disponibili solo per l'universo a 12 pitch classes.");
+                }
+                return runVoiceLeading(args);
+            case "--snapshot":
+                return runSnapshot(args);
+            case "--serve":
+                if (modulus != PcSet.MODULUS) {
+                    return fail(EXIT_USAGE, "Errore: Il server è disponibile solo per l'universo a 12 pitch classes.");
+                }
+                return runServer(args);
+            default:
+                return fail(EXIT_USAGE, "Errore: Opzione '" + args[0] + "' non riconosciuta. Opzioni disponibili: --apply, --batch, --catalog, --contour, --corpus-file, --group-by, --midi, --motif, --pairs, --rows, --search, --serve, --snapshot, --stream, --voice-leading, --edo N");
+        }
+    }
+
+    /**
+     * Enumera in parallelo tutti i sottoinsiemi e scrive il catalogo delle classi: --catalog [file].
+     * Senza file il catalogo viene scritto su stdout; il riepilogo della verifica va su stderr.
+     * @param args Gli argomenti da riga di comando, a partire da "--catalog".
+     * @return Lo stato di uscita.
+     */
+    private static int runCatalog(String[] args) {
+        SetClassEnumerator enumerator = new SetClassEnumerator();
+        List<SetClassEnumerator.Entry> entries = enumerator.enumerate();
+        boolean toStdout = args.length < 2 || args[1].equals("-");
+        try (BufferedWriter writer = toStdout
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)
+                : Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            SetClassEnumerator.writeCatalog(entries, writer);
+        } catch (IOException e) {
+            return fail(EXIT_IO_ERROR, "Errore durante la scrittura del catalogo: " + e.getMessage());
+        }
+        System.err.println("Classi: " + entries.size()
+                           + ", incongruenze dell'analizzatore: " + enumerator.getMismatchCount()
+                           + ", classi con Prime Form non univoca: " + SetClassEnumerator.countAmbiguousClasses(entries));
+        return EXIT_OK;
+    }
+
+    /**
+     * Avvia il servizio HTTP locale: --serve [porta]. Il server resta attivo fino all'arresto del processo.
+     * @param args Gli argomenti da riga di comando, a partire da "--serve".
+     * @return Lo stato di uscita.
+     */
+    private static int runServer(String[] args) {
+        int port = PitchSetServer.DEFAULT_PORT;
+        if (args.length > 1) {
+            try {
+                port = Integer.parseInt(args[1].trim());
+            } catch (NumberFormatException e) {
+                return fail(EXIT_USAGE, "Errore: Porta non valida '" + args[1] + "'. Uso: --serve [porta]");
+            }
+        }
+        // TCP_NODELAY per le risposte keep-alive (vedi PitchSetServer): qui il processo serve solo il server
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        PitchSetServer server;
+        try {
+            server = new PitchSetServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IllegalArgumentException e) { // Porta fuori dal range 0-65535
+            return fail(EXIT_USAGE, "Errore: Impossibile avviare il server sulla porta " + port + ": " + e.getMessage());
+        } catch (IOException e) {
+            return fail(EXIT_IO_ERROR, "Errore: Impossibile avviare il server sulla porta " + port + ": " + e.getMessage());
+        }
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        InetSocketAddress address = server.getAddress();
+        System.err.println("Server in ascolto su http://" + address.getHostString() + ":" + address.getPort()
+                           + (server.usesVirtualThreads() ? " (thread virtuali)" : " (pool di thread)"));
+        return EXIT_OK;
+    }
+
+    /**
+     * Modalità batch: --batch [--format tsv|jsonl|binary] [file].
+     * Legge un set per riga dal file indicato (o da stdin se assente o "-") e scrive i risultati su stdout.
+     * @param args Gli argomenti da riga di comando, a partire da "--batch".
+     * @param modulus La dimensione dell'universo scelta con --edo.
+     * @return Lo stato di uscita.
+     */
+    private static int runBatch(String[] args, int modulus) {
+        return runLineProcessor(args, format -> new PitchSetBatchProcessor(format, modulus)::process);
+    }
+
+    /**
+     * Trasformazione in blocco: --apply espressione [--format tsv|jsonl|binary] [file].
+     * L'espressione (es. "T3 I5 M5") viene compilata in un unico operatore (vedi PcOperator) e applicata
+     * a ogni set letto, uno per riga, dal file indicato o da stdin.
+     * @param args Gli argomenti da riga di comando, a partire da "--apply".
+     * @param modulus La dimensione dell'universo scelta con --edo.
+     * @return Lo stato di uscita.
+     */
+    private static int runApply(String[] args, int modulus) {
+        if (args.length < 2 || args[1].startsWith("--")) {
+            return fail(EXIT_USAGE, "Errore: Espressione mancante. Uso: --apply espressione [--format tsv|jsonl|binary] [file]");
+        }
+        PcOperator operator;
+        try {
+            operator = PcOperator.parse(args[1], modulus);
+        } catch (IllegalArgumentException e) {
+            return fail(EXIT_USAGE, e.getMessage());
+        }
+        System.err.println("Operatore composto: " + operator);
+        String[] options = new String[args.length - 1];
+        options[0] = args[0];
+        System.arraycopy(args, 2, options, 1, args.length - 2);
+        return runLineProcessor(options, format -> (reader, out) -> operator.transformLines(reader, out, format));
+    }
+
+    /**
+     * Analisi del contorno in blocco: --contour [--pc] [--format tsv|jsonl|binary] [file].
+     * Legge una sequenza di altezze per riga (es. numeri di nota MIDI) e scrive CSEG, forma primaria del
+     * contorno e intervalli ordinati (vedi PitchSequence); con --pc gli intervalli sono ridotti nel modulo.
+     * @param args Gli argomenti da riga di comando, a partire da "--contour".
+     * @param modulus La dimensione dell'universo scelta con --edo, usata con --pc.
+     * @return Lo stato di uscita.
+     */
+    private static int runContour(String[] args, int modulus) {
+        String[] options = removeFlag(args, "--pc");
+        int intervalModulus = options.length < args.length ? modulus : 0;
+        return runLineProcessor(options, format -> (reader, out) -> PitchSequence.contourLines(reader, out, format, intervalModulus));
+    }
+
+    /**
+     * Ricerca di un motivo: --motif motivo [--pc] [--format tsv|jsonl|binary] [file].
+     * Legge un'intera melodia (numeri separati da spazi, virgole o a capo) dal file indicato o da stdin e
+     * scrive le occorrenze del motivo nelle forme P, I, R e RI a qualsiasi trasposizione (vedi PitchSequence).
+     * Senza --pc il confronto avviene nello spazio delle altezze, con --pc tra pitch classes nel modulo.
+     * @param args Gli argomenti da riga di comando, a partire da "--motif".
+     * @param modulus La dimensione dell'universo scelta con --edo, usata con --pc.
+     * @return Lo stato di uscita.
+     */
+    private static int runMotif(String[] args, int modulus) {
+        if (args.length < 2 || args[1].startsWith("--")) {
+            return fail(EXIT_USAGE, "Errore: Motivo mancante. Uso: --motif motivo [--pc] [--format tsv|jsonl|binary] [file]");
+        }
+        int[] motif;
+        try {
+            motif = PitchSequence.parse(args[1]);
+            if (motif.length == 0) {
+                throw new IllegalArgumentException("Errore: Il motivo non contiene note.");
+            }
+        } catch (IllegalArgumentException e) {
+            return fail(EXIT_USAGE, e.getMessage());
+        }
+        String[] options = new String[args.length - 1];
+        options[0] = args[0];
+        System.arraycopy(args, 2, options, 1, args.length - 2);
+        String[] remaining = removeFlag(options, "--pc");
+        int intervalModulus = remaining.length < options.length ? modulus : 0;
+        long start = System.nanoTime();
+        return runLineProcessor(remaining, format -> (reader, out) -> {
+            long occurrences = PitchSequence.findMotifLines(reader, out, format, motif, intervalModulus);
+            System.err.println("Occorrenze: " + occurrences + ", tempo: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            return occurrences;
+        });
+    }
+
+    // Gli argomenti senza le occorrenze di un'opzione senza valore
+    private static String[] removeFlag(String[] args, String flag) {
+        List<String> remaining = new ArrayList<>(args.length);
+        for (String arg : args) {
+            if (!arg.equals(flag)) {
+                remaining.add(arg);
+            }
+        }
+        return remaining.toArray(new String[0]);
+    }
+
+    /**
+     * Coppie di set legate da operatori T_n/I_n: --pairs [--format tsv|jsonl|binary] [file].
+     * Legge un set per riga e scrive ogni coppia di set con gli operatori che trasformano il primo nel secondo.
+     * @param args Gli argomenti da riga di comando, a partire da "--pairs".
+     * @return Lo stato di uscita.
+     */
+    private static int runPairs(String[] args) {
+        return runLineProcessor(args, format -> (reader, out) -> TransformationFinder.writeMappingPairs(reader, out, format));
+    }
+
+    /**
+     * Analisi in blocco di serie dodecafoniche: --rows [--format tsv|jsonl|binary] [file].
+     * Legge una serie per riga e scrive matrice, forme coincidenti e forme che conservano gli esacordi.
+     * @param args Gli argomenti da riga di comando, a partire da "--rows".
+     * @return Lo stato di uscita.
+     */
+    private static int runRows(String[] args) {
+        return runLineProcessor(args, format -> new ToneRowBatchProcessor(format)::process);
+    }
+
+    /**
+     * Ricerca di serie: --search allinterval|hexachords [--comb P,I,R,RI] [--list].
+     * Con "allinterval" enumera le serie a tutti gli intervalli che iniziano con 0, eventualmente filtrate per
+     * combinatorietà del primo esacordo; con "hexachords" gli esacordi combinatori che contengono 0.
+     * L'avanzamento viene mostrato su stderr; con --list i risultati vengono scritti su stdout, uno per riga.
+     * @param args Gli argomenti da riga di comando, a partire da "--search".
+     * @return Lo stato di uscita.
+     */
+    private static int runSearch(String[] args) {
+        String usage = "Uso: --search allinterval|hexachords [--comb P,I,R,RI] [--list]";
+        String mode = null;
+        int required = 0;
+        boolean list = false;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--comb")) {
+                    for (String type : optionValue(args, i++, usage).split(",")) {
+                        required |= RowSearch.requiredMask(RowSearch.Combinatoriality.valueOf(type.trim().toUpperCase()));
+                    }
+                } else if (args[i].equals("--list")) {
+                    list = true;
+                } else if (mode == null && (args[i].equals("allinterval") || args[i].equals("hexachords"))) {
+                    mode = args[i];
+                } else {
+                    throw new IllegalArgumentException("Errore: Argomento inatteso '" + args[i] + "'. " + usage);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return fail(EXIT_USAGE, e.getMessage().startsWith("Errore") ? e.getMessage() : "Errore: Tipo di combinatorietà non valido. " + usage);
+        }
+        if (mode == null) {
+            return fail(EXIT_USAGE, "Errore: Specificare il tipo di ricerca. " + usage);
+        }
+
+        RowSearch search = new RowSearch();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "row-search-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> System.err.println("Nodi visitati: " + search.getNodesVisited()
+                                                              + ", soluzioni: " + search.getSolutionsFound()),
+                                     500, 500, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            if (mode.equals("allinterval")) {
+                List<ToneRow> rows = search.allIntervalRows(required, list);
+                progress.shutdownNow();
+                for (ToneRow row : rows) {
+                    writer.write(row.toString());
+                    writer.newLine();
+                }
+                writer.flush();
+                System.err.println("Serie a tutti gli intervalli: " + search.getSolutionsFound()
+                                   + " (nodi visitati: " + search.getNodesVisited() + ", "
+                                   + (System.nanoTime() - start) / 1_000_000 + " ms)");
+            } else {
+                int[] hexachords = search.combinatorialHexachords(required);
+                progress.shutdownNow();
+                if (list) {
+                    for (int mask : hexachords) {
+                        writer.write(PcSet.fromMask(mask) + "\t" + SetClassCatalog.forteName(SetClassCatalog.classOf(mask))
+                                     + "\t" + combinatorialityNames(RowSearch.combinatoriality(mask)));
+                        writer.newLine();
+                    }
+                    writer.flush();
+                }
+                System.err.println("Esacordi combinatori: " + hexachords.length
+                                   + ", serie che iniziano con 0: " + search.getSolutionsFound()
+                                   + " (" + (System.nanoTime() - start) / 1_000_000 + " ms)");
+            }
+        } catch (IOException e) {
+            return fail(EXIT_IO_ERROR, "Errore durante la scrittura dei risultati: " + e.getMessage());
+        } finally {
+            progress.shutdownNow();
+        }
+        return EXIT_OK;
+    }
+
+    /**
+     * Analisi incrementale di un flusso di eventi: --stream [--window N] [--format tsv|jsonl|binary] [file].
+     * Ogni riga contiene "istante on|off altezza" (es. "480 on 60"). Senza --window il set attivo è quello
+     * delle note che suonano (note-on/note-off); con --window N ogni attacco resta attivo per N unità di tempo
+     * e i note-off vengono ignorati. Su stdout viene scritto un record (time, pcs, forte) per ogni cambio di
+     * classe di insiemi.
+     * @param args Gli argomenti da riga di comando, a partire da "--stream".
+     * @return Lo stato di uscita.
+     */
+    private static int runStream(String[] args) {
+        String usage = "Uso: --stream [--window N] [--format tsv|jsonl|binary] [file]";
+        long window = 0;
+        PitchSetBatchProcessor.OutputFormat format = PitchSetBatchProcessor.OutputFormat.TSV;
+        String inputPath = null;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--window")) {
+                    window = Long.parseLong(optionValue(args, i++, usage).trim());
+                } else if (args[i].equals("--format")) {
+                    format = PitchSetBatchProcessor.OutputFormat.fromName(optionValue(args, i++, usage));
+                } else if (inputPath == null) {
+                    inputPath = args[i];
+                } else {
+                    throw new IllegalArgumentException("Errore: Argomento inatteso '" + args[i] + "'. " + usage);
+                }
+            }
+        } catch (NumberFormatException e) {
+            return fail(EXIT_USAGE, "Errore: Durata della finestra non valida. " + usage);
+        } catch (IllegalArgumentException e) {
+            return fail(EXIT_USAGE, e.getMessage());
+        }
+
+        PcSetRenderer renderer = PcSetRenderer.create(format.toRendererFormat(), System.out, "time", "pcs", "forte");
+        int[] pcs = new int[PcSet.MODULUS];
+        IncrementalPcSetTracker.SetClassListener listener = (time, mask, previousClassId, classId) -> {
+            renderer.number(time).set(pcs, PcSet.fromMask(mask).toArray(pcs)).text(SetClassCatalog.forteName(classId));
+            try {
+                renderer.endRecord();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        SlidingWindowAnalyzer windowAnalyzer = window > 0 ? new SlidingWindowAnalyzer(window, listener) : null;
+        IncrementalPcSetTracker tracker = windowAnalyzer != null ? windowAnalyzer.getTracker() : new IncrementalPcSetTracker(listener);
+
+        boolean fromStdin = inputPath == null || inputPath.equals("-");
+        long lineNumber = 0;
+        try (InputStream in = fromStdin ? System.in : new FileInputStream(inputPath)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length == 1 && fields[0].isEmpty()) {
+                    continue;
+                }
+                try {
+                    if (fields.length != 3) {
+                        throw new IllegalArgumentException("attesi 3 campi");
+                    }
+                    long time = Long.parseLong(fields[0]);
+                    int pitch = Integer.parseInt(fields[2]);
+                    boolean on = fields[1].equalsIgnoreCase("on");
+                    if (!on && !fields[1].equalsIgnoreCase("off")) {
+                        throw new IllegalArgumentException("tipo di evento '" + fields[1] + "' non valido");
+                    }
+                    if (windowAnalyzer != null) {
+                        if (on) {
+                            windowAnalyzer.onset(time, pitch);
+                        } else {
+                            windowAnalyzer.advanceTo(time);
+                        }
+                    } else if (on) {
+                        tracker.noteOn(time, pitch);
+                    } else {
+                        tracker.noteOff(time, pitch);
+                    }
+                } catch (IllegalArgumentException e) { // Comprende NumberFormatException
+                    System.err.println("Errore alla riga " + lineNumber + " (" + e.getMessage() + "): '" + line + "'");
+                }
+            }
+            tracker.flush();
+            renderer.flush();
+            System.err.println("Eventi: " + tracker.getEventCount() + ", cambi di classe: " + tracker.getChangeCount());
+        } catch (IOException | UncheckedIOException e) {
+            return fail(EXIT_IO_ERROR, "Errore di I/O in modalità stream: " + e.getMessage());
+        }
+        return EXIT_OK;
+    }
+
+    /**
+     * Statistiche sulle classi di insiemi di un corpus MIDI: --midi directory [--window battiti] [--threads N] [--out file].
+     * Senza --window i file vengono segmentati in simultaneità; il CSV va su stdout se --out è assente o "-".
+     * @param args Gli argomenti da riga di comando, a partire da "--midi".
+     * @return Lo stato di uscita.
+     */
+    private static int runMidi(String[] args) {
+        String usage = "Uso: --midi directory [--window battiti] [--threads N] [--out file]";
+        String directory = null;
+        String outputPath = null;
+        double window = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--window")) {
+                    window = Double.parseDouble(optionValue(args, i++, usage).trim());
+                } else if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(optionValue(args, i++, usage).trim());
+                } else if (args[i].equals("--out")) {
+                    outputPath = optionValue(args, i++, usage);
+                } else if (directory == null) {
+                    directory = args[i];
+                } else {
+                    throw new IllegalArgumentException("Errore: Argomento inatteso '" + args[i] + "'. " + usage);
+                }
+            }
+            if (directory == null) {
+                throw new IllegalArgumentException("Errore: Directory mancante. " + usage);
+            }
+        } catch (NumberFormatException e) {
+            return fail(EXIT_USAGE, "Errore: Valore numerico non valido. " + usage);
+        } catch (IllegalArgumentException e) {
+            return fail(EXIT_USAGE, e.getMessage());
+        }
+
+        MidiCorpusPipeline pipeline;
+        try {
+            pipeline = new MidiCorpusPipeline(threads, window);
+        } catch (IllegalArgumentException e) {
+            return fail(EXIT_USAGE, e.getMessage());
+        }
+        boolean toStdout = outputPath == null || outputPath.equals("-");
+        long start = System.nanoTime();
+        try (OutputStream out = toStdout ? System.out : Files.newOutputStream(Paths.get(outputPath))) {
+            MidiCorpusPipeline.FileResult corpus = pipeline.run(Paths.get(directory), out);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.err.println("File analizzati: " + pipeline.getFilesAnalyzed() + ", con errori: " + pipeline.getFilesFailed()
+                               + ", eventi di nota: " + corpus.getNoteEvents() + ", tempo: " + millis + " ms");
+        } catch (IOException e) {
+            return fail(EXIT_IO_ERROR, "Errore durante l'analisi del corpus: " + e.getMessage());
+        }
+        return EXIT_OK;
+    }
+
+    /**
+     * Distanze di condotta delle parti: --voice-leading [--norm l1|l2|linf] [--nearest set [--count k]] [--corpus file] [--out file].
+     * Il corpus contiene un set per riga; senza --corpus si usano tutti i 4096 sottoinsiemi. Con --nearest scrive
+     * su stdout i set del corpus più vicini al set indicato; altrimenti scrive la matrice binaria delle distanze
+     * nel file indicato da --out (vedi VoiceLeading.writeMatrix).
+     * @param args Gli argomenti da riga di comando, a partire da "--voice-leading".
+     * @return Lo stato di uscita.
+     */
+    private static int runVoiceLeading(String[] args) {
+        String usage = "Uso: --voice-leading [--norm l1|l2|linf] [--nearest set [--count k]] [--corpus file] [--out file]";
+        VoiceLeading.Norm norm = VoiceLeading.Norm.L1;
+        String nearest = null;
+        int count = 10;
+        String corpusPath = null;
+        String outputPath = null;
+        int[] corpus;
+        int reference = 0;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Errore: Argomento inatteso '" + args[i] + "'. " + usage);
+                }
+                switch (args[i]) {
+                    case "--norm":
+                        norm = VoiceLeading.Norm.fromName(args[++i]);
+                        break;
+                    case "--nearest":
+                        nearest = args[++i];
+                        break;
+                    case "--count":
+                        count = Integer.parseInt(args[++i].trim());
+                        break;
+                    case "--corpus":
+                        corpusPath = args[++i];
+                        break;
+                    case "--out":
+                        outputPath = args[++i];
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Errore: Argomento inatteso '" + args[i] + "'. " + usage);
+                }
+            }
+            if (nearest == null && outputPath == null) {
+                throw new IllegalArgumentException("Errore: Indicare --nearest oppure --out. " + usage);
+            }
+            if (nearest != null) {
+                reference = PitchClassParser.parseMask(nearest);
+            }
+        } catch (NumberFormatException e) {
+            return fail(EXIT_USAGE, "Errore: Numero di risultati non valido. " + usage);
+        } catch (IllegalArgumentException e) {
+            return fail(EXIT_USAGE, e.getMessage());
+        }
+
+        try {
+            corpus = corpusPath == null ? VoiceLeading.allSubsets() : readCorpus(corpusPath);
+            long start = System.nanoTime();
+            if (nearest != null) {
+                VoiceLeading engine = new VoiceLeading(norm);
+                System.out.println("set\tdistance");
+                for (int index : engine.nearest(reference, corpus, count)) {
+                    System.out.println(PcSet.fromMask(corpus[index]) + "\t" + engine.distance(reference, corpus[index]));
+                }
+            } else {
+                try (OutputStream out = outputPath.equals("-") ? System.out : Files.newOutputStream(Paths.get(outputPath))) {
+                    VoiceLeading.writeMatrix(corpus, norm, out);
+                }
+                System.err.println("Matrice " + corpus.length + "x" + corpus.length + " (" + norm + ") scritta in "
+                                   + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+        } catch (IOException e) {
+            return fail(EXIT_IO_ERROR, "Errore di I/O: " + e.getMessage());
+        }
+        return EXIT_OK;
+    }
+
+    /**
+     * Corpus binari di pc-set (vedi PcSetCorpusFile):
+     * --corpus-file convert testo.txt corpus.pcs [--line-numbers] | stats corpus.pcs | dump corpus.pcs.
+     * convert legge un set per riga ("-" per stdin); stats scrive su stdout il numero di record per classe;
+     * dump riscrive il corpus come testo, un set per riga seguito dalle eventuali colonne di metadati.
+     * @param args Gli argomenti da riga di comando, a partire da "--corpus-file".
+     * @return Lo stato di uscita.
+     */
+    private static int runCorpusFile(String[] args) {
+        String usage = "Uso: --corpus-file convert testo.txt corpus.pcs [--line-numbers] | stats corpus.pcs | dump corpus.pcs";
+        String command = args.length > 1 ? args[1] : "";
+        boolean convert = command.equals("convert");
+        boolean lineNumbers = convert && args.length == 5 && args[4].equals("--line-numbers");
+        if (convert ? args.length != 4 && !lineNumbers : args.length != 3 || !command.equals("stats") && !command.equals("dump")) {
+            return fail(EXIT_USAGE, "Errore: Argomenti non validi. " + usage);
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (convert) {
+                long records;
+                try (BufferedReader reader = args[2].equals("-")
+                        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                        : Files.newBufferedReader(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+                    records = PcSetCorpusFile.convert(reader, Paths.get(args[3]), lineNumbers);
+                }
+                System.err.println("Record scritti: " + records + ", tempo: "
+                                   + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                return EXIT_OK;
+            }
+            try (PcSetCorpusFile corpus = PcSetCorpusFile.open(Paths.get(args[2]))) {
+                if (command.equals("stats")) {
+                    long[] histogram = corpus.classHistogram();
+                    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    System.out.println("forte\tprime_form\tcount");
+                    for (int c = 0; c < histogram.length; c++) {
+                        if (histogram[c] > 0) {
+                            System.out.println(SetClassCatalog.forteName(c) + "\t" + PcSet.fromMask(SetClassCatalog.primeFormMask(c)) + "\t" + histogram[c]);
+                        }
+                    }
+                    System.err.println("Record: " + corpus.size() + ", colonne di metadati: " + corpus.getColumnCount()
+                                       + ", tempo: " + millis + " ms");
+                } else {
+                    try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)) {
+                        StringBuilder line = new StringBuilder(64);
+                        for (long i = 0; i < corpus.size(); i++) {
+                            line.setLength(0);
+                            line.append(PcSet.fromMask(corpus.mask(i)));
+                            for (int c = 0; c < corpus.getColumnCount(); c++) {
+                                line.append('\t').append(corpus.value(i, c));
+                            }
+                            writer.append(line);
+                            writer.newLine();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return fail(EXIT_IO_ERROR, "Errore di I/O: " + e.getMessage());
+        }
+        return EXIT_OK;
+    }
+
+    /**
+     * Carica un corpus binario nell'archivio colonnare e conta i record per gruppo (vedi PcSetColumnStore):
+     * --group-by corpus.pcs colonna[,colonna] [--where colonna=valore] [--top k] [--memory MB] [--spill-dir dir].
+     * Le colonne sono mask, class, cardinality o le colonne di metadati del corpus; il risultato va su stdout
+     * in TSV, in ordine di chiave oppure, con --top, dei k gruppi più numerosi.
+     * @param args Gli argomenti da riga di comando, a partire da "--group-by".
+     * @return Lo stato di uscita.
+     */
+    private static int runGroupBy(String[] args) {
+        String usage = "Uso: --group-by corpus.pcs colonna[,colonna] [--where colonna=valore] [--top k] [--memory MB] [--spill-dir dir]";
+        if (args.length < 3 || args.length % 2 == 0) {
+            return fail(EXIT_USAGE, "Errore: Argomenti non validi. " + usage);
+        }
+        String[] keys = args[2].split(",");
+        String filterColumn = null;
+        long filterValue = 0;
+        int top = -1;
+        long memoryLimit = Long.MAX_VALUE;
+        Path spillDirectory = null;
+        try {
+            for (int i = 3; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--where":
+                        int equals = args[i + 1].indexOf('=');
+                        if (equals <= 0) {
+                            throw new IllegalArgumentException("Errore: Filtro '" + args[i + 1] + "' non valido. Uso: --where colonna=valore");
+                        }
+                        filterColumn = args[i + 1].substring(0, equals);
+                        filterValue = Long.parseLong(args[i + 1].substring(equals + 1).trim());
+                        break;
+                    case "--top":
+                        top = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--memory":
+                        memoryLimit = Long.parseLong(args[i + 1]) << 20;
+                        break;
+                    case "--spill-dir":
+                        spillDirectory = Paths.get(args[i + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Errore: Opzione '" + args[i] + "' non valida. " + usage);
+                }
+            }
+        } catch (NumberFormatException e) {
+            return fail(EXIT_USAGE, "Errore: Valore numerico non valido. " + usage);
+        } catch (IllegalArgumentException e) {
+            return fail(EXIT_USAGE, e.getMessage());
+        }
+
+        long start = System.nanoTime();
+        try (PcSetCorpusFile corpus = PcSetCorpusFile.open(Paths.get(args[1]));
+             PcSetColumnStore store = PcSetColumnStore.load(corpus, memoryLimit, spillDirectory)) {
+            long loaded = System.nanoTime();
+            PcSetColumnStore.GroupCounts groups = store.groupBy(filterColumn, filterValue, keys);
+            if (top >= 0) {
+                groups = groups.top(top);
+            }
+            long queried = System.nanoTime();
+
+            String[] header = Arrays.copyOf(groups.getColumns(), keys.length + 1);
+            header[keys.length] = "count";
+            PcSetRenderer renderer = PcSetRenderer.create(PcSetRenderer.Format.TSV, System.out, header);
+            int[] pcs = new int[PcSet.MODULUS];
+            for (int g = 0; g < groups.size(); g++) {
+                for (int k = 0; k < keys.length; k++) {
+                    long key = groups.key(g, k);
+                    if (header[k].equals(PcSetColumnStore.MASK)) {
+                        renderer.set(pcs, PcSet.fromMask((int) key).toArray(pcs));
+                    } else if (header[k].equals(PcSetColumnStore.CLASS)) {
+                        renderer.text(SetClassCatalog.forteName((int) key));
+                    } else {
+                        renderer.number(key);
+                    }
+                }
+                renderer.number(groups.count(g)).endRecord();
+            }
+            renderer.flush();
+            System.err.println("Record: " + store.size() + ", gruppi: " + groups.size()
+                               + (store.isSpilled() ? ", blocchi trascritti su disco" : "")
+                               + ", caricamento: " + TimeUnit.NANOSECONDS.toMillis(loaded - start) + " ms"
+                               + ", interrogazione: " + TimeUnit.NANOSECONDS.toMillis(queried - loaded) + " ms");
+        } catch (IllegalArgumentException e) { // Colonna inesistente o troppe colonne di raggruppamento
+            return fail(EXIT_USAGE, e.getMessage());
+        } catch (IllegalStateException e) {
+            return fail(EXIT_IO_ERROR, e.getMessage());
+        } catch (IOException e) {
+            return fail(EXIT_IO_ERROR, "Errore di I/O: " + e.getMessage());
+        }
+        return EXIT_OK;
+    }
+
+    /**
+     * Scrive l'istantanea delle tabelle di analisi caricata all'avvio: --snapshot file (vedi AnalysisSnapshot).
+     * @param args Gli argomenti da riga di comando, a partire da "--snapshot".
+     * @return Lo stato di uscita.
+     */
+    private static int runSnapshot(String[] args) {
+        if (args.length != 2) {
+            return fail(EXIT_USAGE, "Errore: Argomenti non validi. Uso: --snapshot file");
+        }
+        try {
+            int bytes = AnalysisSnapshot.write(Paths.get(args[1]));
+            System.err.println("Istantanea delle tabelle scritta in " + args[1] + " (" + bytes + " byte)");
+        } catch (IOException e) {
+            return fail(EXIT_IO_ERROR, "Errore di I/O: " + e.getMessage());
+        }
+        return EXIT_OK;
+    }
+
+    // Legge un set per riga; le righe vuote vengono ignorate e quelle non valide segnalate su stderr
+    private static int[] readCorpus(String path) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+        int[] masks = new int[lines.size()];
+        int count = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).trim().isEmpty()) {
+                continue;
+            }
+            try {
+                masks[count++] = PitchClassParser.parseMask(lines.get(i));
+            } catch (IllegalArgumentException e) {
+                count--;
+                System.err.println("Riga " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return Arrays.copyOf(masks, count);
+    }
+
+    // Nomi dei tipi di combinatorietà presenti nella maschera (es. "P,I,R,RI")
+    private static String combinatorialityNames(int properties) {
+        StringBuilder names = new StringBuilder();
+        for (RowSearch.Combinatoriality type : RowSearch.Combinatoriality.values()) {
+            if ((properties & RowSearch.requiredMask(type)) != 0) {
+                names.append(names.length() > 0 ? "," : "").append(type);
+            }
+        }
+        return names.toString();
+    }
+
+    /**
+     * Elaborazione riga per riga da file o stdin verso stdout, condivisa dalle modalità in blocco.
+     */
+    private interface LineProcessor {
+        long process(BufferedReader reader, OutputStream out) throws IOException;
+    }
+
+    /**
+     * Interpreta le opzioni comuni [--format tsv|jsonl|binary] [file] e avvia l'elaborazione riga per riga.
+     * @param args Gli argomenti da riga di comando, a partire dal nome della modalità.
+     * @param factory Crea l'elaboratore per il formato di output scelto.
+     * @return Lo stato di uscita.
+     */
+    private static int runLineProcessor(String[] args, Function<PitchSetBatchProcessor.OutputFormat, LineProcessor> factory) {
+        String usage = "Uso: " + args[0] + " [--format tsv|jsonl|binary] [file]";
+        PitchSetBatchProcessor.OutputFormat format = PitchSetBatchProcessor.OutputFormat.TSV;
+        String inputPath = null;
+        LineProcessor processor;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--format")) {
+                    format = PitchSetBatchProcessor.OutputFormat.fromName(optionValue(args, i++, usage));
+                } else if (inputPath == null) {
+                    inputPath = args[i];
+                } else {
+                    throw new IllegalArgumentException("Errore: Argomento inatteso '" + args[i] + "'. " + usage);
+                }
+            }
+            processor = factory.apply(format);
+        } catch (IllegalArgumentException e) {
+            return fail(EXIT_USAGE, e.getMessage());
+        }
+
+        boolean fromStdin = inputPath == null || inputPath.equals("-");
+        try (InputStream in = fromStdin ? System.in : new FileInputStream(inputPath)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+            processor.process(reader, System.out);
+        } catch (IOException e) {
+            return fail(EXIT_IO_ERROR, "Errore di I/O in modalità batch: " + e.getMessage());
+        } catch (IllegalArgumentException e) { // Input che interrompe l'elaborazione (es. melodia non valida di --motif)
+            return fail(EXIT_IO_ERROR, e.getMessage());
+        }
+        return EXIT_OK;
+    }
+
+    // Il valore dell'opzione in posizione i; un'opzione senza valore è un errore d'uso
+    private static String optionValue(String[] args, int i, String usage) {
+        if (i + 1 >= args.length) {
+            throw new IllegalArgumentException("Errore: Manca il valore di " + args[i] + ". " + usage);
+        }
+        return args[i + 1];
+    }
+
+    // Segnala l'errore su stderr e restituisce lo stato di uscita indicato
+    private static int fail(int status, String message) {
+        System.err.println(message);
+        return status;
+    }
+
     /**
      * Mostra tutte le 12 trasposizioni di un set e le 12 inversioni in formato tabellare.
      * @param pcSet Il set di pitch classes di partenza.
      */
-    private static void displayAllTranspositionsAndInversions(List<Integer> pcSet) {
+    static void displayAllTranspositionsAndInversions(List<Integer> pcSet) {
+        displayAllTranspositionsAndInversions(pcSet, PcSet.MODULUS);
+    }
+
+    /**
+     * Mostra tutte le trasposizioni e inversioni di un set in un universo a modulus pitch classes.
+     * @param pcSet Il set di pitch classes di partenza.
+     * @param modulus La dimensione dell'universo (numero di righe della tabella).
+     */
+    static void displayAllTranspositionsAndInversions(List<Integer> pcSet, int modulus) {
         System.out.println("\n--- Categorie T & I ---");
 
-        // Le stringhe formattate delle trasposizioni e inversioni
-        String[] tnStrings = new String[12];
-        String[] inStrings = new String[12];
-        int maxTnStringLength = 0;
-        int maxInStringLength = 0;
+        // Pitch classes distinte nell'ordine di PitchSetUtils.transpose (prima occorrenza) e di invert
+        // (lista percorsa dall'ultimo elemento): T_n e I_n sono biiezioni, quindi i duplicati sono gli stessi
+        int[] forward = new int[pcSet.size()];
+        int[] backward = new int[pcSet.size()];
+        int size = 0;
+        long seen = 0;
+        for (int pc : pcSet) {
+            pc = PitchSetUtils.normalizePc(pc, modulus);
+            if ((seen & (1L << pc)) == 0) {
+                seen |= 1L << pc;
+                forward[size++] = pc;
+            }
+        }
+        seen = 0;
+        for (int i = pcSet.size() - 1, count = 0; i >= 0; i--) {
+            int pc = PitchSetUtils.normalizePc(pcSet.get(i), modulus);
+            if ((seen & (1L << pc)) == 0) {
+                seen |= 1L << pc;
+                backward[count++] = pc;
+            }
+        }
 
-        for (int n = 0; n < 12; n++) {
-            List<Integer> transposedSet = PitchSetUtils.transpose(pcSet, n);
-            tnStrings[n] = PitchSetUtils.toStringPcSet(transposedSet);
-            maxTnStringLength = Math.max(maxTnStringLength, tnStrings[n].length());
+        // Larghezza minima per leggibilità, se i set sono molto piccoli
+        PcSetRenderer table = PcSetRenderer.create(PcSetRenderer.Format.TABLE, System.out, "n", "Tn", "n", "In")
+                .minimumWidth(0, 4).minimumWidth(1, 5).minimumWidth(2, 4).minimumWidth(3, 5);
+        int[] row = new int[size];
+        try {
+            for (int n = 0; n < modulus; n++) {
+                table.number(n);
+                for (int i = 0; i < size; i++) {
+                    row[i] = PitchSetUtils.normalizePc(forward[i] + n, modulus);
+                }
+                table.set(row, size).number(n);
+                for (int i = 0; i < size; i++) {
+                    row[i] = PitchSetUtils.normalizePc(n - backward[i], modulus);
+                }
+                table.set(row, size).endRecord();
+            }
+            table.flush(); // System.out resta aperto
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            List<Integer> invertedSet = PitchSetUtils.invert(pcSet, n);
-            inStrings[n] = PitchSetUtils.toStringPcSet(invertedSet);
-            maxInStringLength = Math.max(maxInStringLength, inStrings[n].length());
+    /**
+     * Mostra le classi che includono il set e quelle incluse in esso, poi chiede un nexus opzionale
+     * e indica l'appartenenza del set ai complessi K e Kh. Le risposte vengono dall'indice precalcolato
+     * SetClassInclusionIndex, senza generare trasposizioni o inversioni.
+     * @param pcSet Il set di pitch classes corrente.
+     * @param scanner Lo scanner per l'input utente.
+     * @param modulus La dimensione dell'universo.
+     */
+    private static void showInclusions(List<Integer> pcSet, Scanner scanner, int modulus) {
+        if (modulus != PcSet.MODULUS) {
+            System.out.println("Inclusioni e complessi sono disponibili solo per l'universo a 12 pitch classes.");
+            return;
         }
+        PcSet set = PcSet.fromList(pcSet);
+        System.out.println("\n--- Inclusioni di " + PitchSetAnalyzer.getForteName(set) + " ---");
+        System.out.println("Incluso in:");
+        printByCardinality(PitchSetAnalyzer.getSupersetClassNames(set));
+        System.out.println("Include:");
+        printByCardinality(PitchSetAnalyzer.getSubsetClassNames(set));
 
-        // Assicura una larghezza minima per leggibilità, se i set sono molto piccoli
-        maxTnStringLength = Math.max(maxTnStringLength, 5); // Es. "<0>"
-        maxInStringLength = Math.max(maxInStringLength, 5);
+        System.out.println("Inserisci un nexus per i complessi K/Kh (invio per saltare):");
+        String input = scanner.nextLine();
+        if (input.trim().isEmpty()) {
+            return;
+        }
+        PcSet nexus;
+        try {
+            nexus = PitchSetUtils.parsePcSet(input);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        String nexusName = PitchSetAnalyzer.getForteName(nexus);
+        List<String> complexK = PitchSetAnalyzer.getComplexKNames(nexus);
+        List<String> complexKh = PitchSetAnalyzer.getComplexKhNames(nexus);
+        System.out.println("Nexus:            " + nexusName + " (complemento " + PitchSetAnalyzer.getComplementForteName(nexus) + ")");
+        System.out.println("In K(" + nexusName + "):   " + (PitchSetAnalyzer.isInComplexK(set, nexus) ? "sì" : "no")
+                           + " (" + complexK.size() + " classi)");
+        System.out.println("In Kh(" + nexusName + "):  " + (PitchSetAnalyzer.isInComplexKh(set, nexus) ? "sì" : "no")
+                           + " (" + complexKh.size() + " classi)");
+        System.out.println("Complesso Kh:");
+        printByCardinality(complexKh);
+    }
 
-        // Intestazioni delle colonne
-        System.out.printf("%-4s | %-" + maxTnStringLength + "s | %-4s | %-" + maxInStringLength + "s%n",
-                          "n", "Tn", "n", "In");
-        System.out.printf("-----|-%-" + maxTnStringLength + "s-|-----|-%-" + maxInStringLength + "s%n",
-                          repeatChar('-', maxTnStringLength), repeatChar('-', maxInStringLength));
+    /**
+     * Mostra, per ogni misura di somiglianza, le classi più vicine alla classe del set con le rispettive distanze.
+     * @param pcSet Il set corrente.
+     * @param modulus La dimensione dell'universo (le misure richiedono il catalogo a 12 pitch classes).
+     */
+    private static void showSimilarClasses(List<Integer> pcSet, int modulus) {
+        if (modulus != PcSet.MODULUS) {
+            System.out.println("Le misure di somiglianza sono disponibili solo per l'universo a 12 pitch classes.");
+            return;
+        }
+        int classId = SetClassSimilarity.classOf(PitchSetAnalyzer.getPrimeForm(pcSet));
+        System.out.println("\n--- Classi più simili a " + SetClassCatalog.forteName(classId) + " ---");
+        for (SetClassSimilarity.Metric metric : SetClassSimilarity.Metric.values()) {
+            StringBuilder line = new StringBuilder(String.format("%-8s", metric + ":"));
+            int[] nearest = SetClassSimilarity.nearestClasses(metric, classId, 6);
+            for (int i = 0; i < nearest.length; i++) {
+                line.append(i == 0 ? " " : ", ").append(SetClassCatalog.forteName(nearest[i]))
+                    .append(String.format(" (%.3g)", SetClassSimilarity.distance(metric, classId, nearest[i])));
+            }
+            System.out.println(nearest.length == 0 ? line.append(" -") : line);
+        }
+    }
 
-        // Stampa le righe della tabella
-        for (int n = 0; n < 12; n++) {
-            System.out.printf("%-4d | %-" + maxTnStringLength + "s | %-4d | %-" + maxInStringLength + "s%n",
-                              n, tnStrings[n], n, inStrings[n]);
+    // Stampa i nomi di Forte su una riga per cardinalità (i nomi sono già in ordine di Forte)
+    private static void printByCardinality(List<String> forteNames) {
+        if (forteNames.isEmpty()) {
+            System.out.println("  -");
+            return;
+        }
+        StringBuilder line = new StringBuilder();
+        String currentCardinality = null;
+        for (String name : forteNames) {
+            String cardinality = name.substring(0, name.indexOf('-'));
+            if (!cardinality.equals(currentCardinality)) {
+                if (currentCardinality != null) {
+                    System.out.println(line);
+                }
+                line.setLength(0);
+                line.append("  ").append(cardinality).append(':');
+                currentCardinality = cardinality;
+            }
+            line.append(' ').append(name);
         }
+        System.out.println(line);
     }
 
     /**
-     * Metodo di supporto per ripetere un carattere per la formattazione.
-     * @param charToRepeat Il carattere da ripetere.
-     * @param count Quante volte ripetere.
-     * @return Una stringa con il carattere ripetuto.
+     * Metodo di supporto per convertire un array di interi nella lista usata da toStringPcSet.
+     * @param values I valori da convertire.
+     * @return Una nuova lista con gli stessi valori.
      */
-    private static String repeatChar(char charToRepeat, int count) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < count; i++) {
-            sb.append(charToRepeat);
+    private static List<Integer> toList(int[] values) {
+        List<Integer> list = new ArrayList<>(values.length);
+        for (int value : values) {
+            list.add(value);
         }
-        return sb.toString();
+        return list;
     }
 
     /**
      * Permette all'utente di specificare un intervallo di trasporto e mostra il set risultante.
      * @param pcSet Il set di pitch classes di partenza.
      * @param scanner Lo scanner per l'input utente.
+     * @param modulus La dimensione dell'universo.
      */
-    private static void transposeSet(List<Integer> pcSet, Scanner scanner) {
-        System.out.print("Inserisci l'intervallo di trasporto (n da 0 a 11): ");
+    private static void transposeSet(List<Integer> pcSet, Scanner scanner, int modulus) {
+        System.out.print("Inserisci l'intervallo di trasporto (n da 0 a " + (modulus - 1) + "): ");
         try {
             int n = Integer.parseInt(scanner.nextLine().trim());
-            if (n >= 0 && n <= 11) {
-                List<Integer> transposedSet = PitchSetUtils.transpose(pcSet, n);
+            if (n >= 0 && n < modulus) {
+                List<Integer> transposedSet = PitchSetUtils.transpose(pcSet, n, modulus);
                 System.out.println("T_" + n + " di " + PitchSetUtils.toStringPcSet(pcSet) + " è: " + PitchSetUtils.toStringPcSet(transposedSet));
             } else {
-                System.out.println("Intervallo non valido. Inserisci un numero tra 0 e 11.");
+                System.out.println("Intervallo non valido. Inserisci un numero tra 0 e " + (modulus - 1) + ".");
             }
         } catch (NumberFormatException e) {
             System.out.println("Input non numerico. Riprova.");
@@ -185,19 +1220,40 @@ public class PitchSetCalculator {
      * Permette all'utente di specificare un asse di inversione e mostra il set risultante.
      * @param pcSet Il set di pitch classes di partenza.
      * @param scanner Lo scanner per l'input utente.
+     * @param modulus La dimensione dell'universo.
      */
-    private static void invertSet(List<Integer> pcSet, Scanner scanner) {
-        System.out.print("Inserisci l'asse di inversione (n da 0 a 11): ");
+    private static void invertSet(List<Integer> pcSet, Scanner scanner, int modulus) {
+        System.out.print("Inserisci l'asse di inversione (n da 0 a " + (modulus - 1) + "): ");
         try {
             int n = Integer.parseInt(scanner.nextLine().trim());
-            if (n >= 0 && n <= 11) {
-                List<Integer> invertedSet = PitchSetUtils.invert(pcSet, n);
+            if (n >= 0 && n < modulus) {
+                List<Integer> invertedSet = PitchSetUtils.invert(pcSet, n, modulus);
                 System.out.println("I_" + n + " di " + PitchSetUtils.toStringPcSet(pcSet) + " è: " + PitchSetUtils.toStringPcSet(invertedSet));
             } else {
-                System.out.println("Asse non valido. Inserisci un numero tra 0 e 11.");
+                System.out.println("Asse non valido. Inserisci un numero tra 0 e " + (modulus - 1) + ".");
             }
         } catch (NumberFormatException e) {
             System.out.println("Input non numerico. Riprova.");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Chiede un'espressione di operatori T/I/M, la compila in un unico operatore e mostra il set trasformato.
+     * @param pcSet Il set di pitch classes di partenza.
+     * @param scanner Lo scanner per l'input utente.
+     * @param modulus La dimensione dell'universo.
+     */
+    private static void applyExpression(List<Integer> pcSet, Scanner scanner, int modulus) {
+        System.out.print("Inserisci l'espressione (es. T3 I5 M5, applicata da destra a sinistra): ");
+        String expression = scanner.nextLine().trim();
+        try {
+            PcOperator operator = PcOperator.parse(expression, modulus);
+            List<Integer> transformedSet = operator.apply(pcSet);
+            System.out.println("Operatore composto: " + operator + " (pc -> " + operator.multiplier() + "pc + " + operator.offset()
+                               + " mod " + modulus + ")");
+            System.out.println(expression + " di " + PitchSetUtils.toStringPcSet(pcSet) + " è: " + PitchSetUtils.toStringPcSet(transformedSet));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
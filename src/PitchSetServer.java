@@ -0,0 +1,521 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Servizio HTTP locale che espone PitchSetAnalyzer ad altri strumenti senza avviare una JVM per richiesta.
+ * Usa il server HTTP integrato nel JDK (com.sun.net.httpserver) con un thread virtuale per richiesta,
+ * se il JDK li offre, altrimenti con un pool di thread.
+ *
+ * Endpoint (tutti rispondono in JSON):
+ * - /parse, /normal-order, /prime-form, /ti-table, /set-class: GET con ?set=0,4,7 per un singolo set,
+ *   oppure POST con un array JSON di set (stringhe come "0 4 7" o array di numeri) per l'elaborazione in blocco;
+ *   un corpo POST che non inizia con '[' viene trattato come un singolo set.
+ * - /stats: richieste servite e statistiche della cache.
+ *
+ * I risultati dipendono solo dalla maschera del set, quindi vengono memorizzati in una cache senza lock
+ * indicizzata da (endpoint, maschera): al massimo 5 x 4096 frammenti JSON immutabili, limite garantito
+ * dalla chiave stessa senza bisogno di politiche di rimozione.
+ *
+ * Header e corpo della risposta sono scritti separatamente: senza TCP_NODELAY l'algoritmo di Nagle e l'ACK
+ * ritardato aggiungono ~40 ms a ogni richiesta su una connessione keep-alive. Il server HTTP del JDK attiva
+ * TCP_NODELAY solo con la proprietà di sistema sun.net.httpserver.nodelay=true, che vale per tutti i server
+ * della JVM e va quindi impostata da chi avvia il processo (-D, oppure --serve, che la imposta se assente).
+ */
+public class PitchSetServer {
+
+    public enum Endpoint {
+        PARSE("/parse"),
+        NORMAL_ORDER("/normal-order"),
+        PRIME_FORM("/prime-form"),
+        TI_TABLE("/ti-table"),
+        SET_CLASS("/set-class");
+
+        private final String path;
+
+        Endpoint(String path) {
+            this.path = path;
+        }
+
+        public String getPath() {
+            return path;
+        }
+    }
+
+    public static final int DEFAULT_PORT = 8080;
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final String EMPTY_SET_ERROR = "Errore: Nessun numero valido inserito o set vuoto dopo il parsing.";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    private final AtomicReferenceArray<String> cache = new AtomicReferenceArray<>(Endpoint.values().length * (PcSet.FULL_MASK + 1));
+    private final AtomicInteger cacheEntries = new AtomicInteger();
+    private final AnalyzerMetrics.CacheCounter cacheCounter = new AnalyzerMetrics.CacheCounter();
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * Crea il server (senza avviarlo) sull'indirizzo indicato.
+     * @param address L'indirizzo di ascolto; la porta 0 sceglie una porta libera.
+     * @throws IOException Se l'indirizzo non è disponibile.
+     */
+    public PitchSetServer(InetSocketAddress address) throws IOException {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null
+                        ? virtual
+                        : Executors.newFixedThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        this.server = HttpServer.create(address, 1024);
+        this.server.setExecutor(executor);
+        for (Endpoint endpoint : Endpoint.values()) {
+            server.createContext(endpoint.getPath(), exchange -> handle(exchange, endpoint));
+        }
+        server.createContext("/stats", this::handleStats);
+        if (AnalyzerMetrics.ENABLED) {
+            AnalyzerMetrics.registerCache("server: risultati", cacheCounter);
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor tramite reflection: il sorgente resta compilabile anche con
+    // JDK privi dei thread virtuali (o in cui sono ancora una preview non abilitata)
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Arresta il server attendendo al massimo delaySeconds secondi le richieste in corso.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public long getCacheHits() {
+        return cacheCounter.getHits();
+    }
+
+    public long getCacheMisses() {
+        return cacheCounter.getMisses();
+    }
+
+    // Gestione delle richieste
+
+    private void handle(HttpExchange exchange, Endpoint endpoint) throws IOException {
+        requests.increment();
+        try {
+            String method = exchange.getRequestMethod();
+            if (method.equals("GET")) {
+                String input = queryParameter(exchange.getRequestURI().getRawQuery(), "set");
+                if (input == null) {
+                    sendError(exchange, 400, "Errore: Parametro 'set' mancante.");
+                    return;
+                }
+                StringBuilder response = new StringBuilder(128);
+                int status = appendRecord(response, endpoint, input) ? 200 : 400;
+                send(exchange, status, response);
+            } else if (method.equals("POST")) {
+                String body = readBody(exchange);
+                if (body == null) {
+                    sendError(exchange, 413, "Errore: Corpo della richiesta troppo grande (massimo " + MAX_BODY_BYTES + " byte).");
+                    return;
+                }
+                if (!body.trim().startsWith("[")) {
+                    StringBuilder response = new StringBuilder(128);
+                    int status = appendRecord(response, endpoint, body.trim()) ? 200 : 400;
+                    send(exchange, status, response);
+                    return;
+                }
+                List<String> inputs;
+                try {
+                    inputs = parseJsonArray(body);
+                } catch (IllegalArgumentException e) {
+                    sendError(exchange, 400, e.getMessage());
+                    return;
+                }
+                // In blocco gli errori dei singoli set restano nei rispettivi record
+                StringBuilder response = new StringBuilder(64 * inputs.size() + 2);
+                response.append('[');
+                for (int i = 0; i < inputs.size(); i++) {
+                    if (i > 0) {
+                        response.append(',');
+                    }
+                    appendRecord(response, endpoint, inputs.get(i));
+                }
+                response.append(']');
+                send(exchange, 200, response);
+            } else {
+                exchange.getResponseHeaders().set("Allow", "GET, POST");
+                sendError(exchange, 405, "Errore: Metodo " + method + " non supportato.");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            StringBuilder response = new StringBuilder(160);
+            response.append("{\"requests\":").append(requests.sum())
+                    .append(",\"cache_hits\":").append(cacheCounter.getHits())
+                    .append(",\"cache_misses\":").append(cacheCounter.getMisses())
+                    .append(",\"cache_entries\":").append(cacheEntries.get())
+                    .append(",\"virtual_threads\":").append(virtualThreads)
+                    .append('}');
+            send(exchange, 200, response);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Aggiunge il record JSON di un set: {"input": ..., campi del risultato} oppure {"input": ..., "error": ...}.
+     * @return true se il set è stato analizzato senza errori.
+     */
+    private boolean appendRecord(StringBuilder response, Endpoint endpoint, String input) {
+        response.append("{\"input\":");
+        PitchSetBatchProcessor.appendJsonString(response, input);
+        String error;
+        try {
+            int mask = PitchClassParser.parseMask(input);
+            if (mask != 0 || endpoint == Endpoint.PARSE) {
+                response.append(',').append(result(endpoint, mask)).append('}');
+                return true;
+            }
+            error = EMPTY_SET_ERROR;
+        } catch (IllegalArgumentException e) {
+            error = e.getMessage();
+        }
+        response.append(",\"error\":");
+        PitchSetBatchProcessor.appendJsonString(response, error);
+        response.append('}');
+        return false;
+    }
+
+    // Frammento JSON del risultato, dalla cache o calcolato e pubblicato (calcoli concorrenti producono lo stesso valore)
+    private String result(Endpoint endpoint, int mask) {
+        int key = endpoint.ordinal() * (PcSet.FULL_MASK + 1) + mask;
+        String cached = cache.get(key);
+        if (cached != null) {
+            cacheCounter.hit();
+            return cached;
+        }
+        cacheCounter.miss();
+        String computed = compute(endpoint, mask);
+        if (cache.compareAndSet(key, null, computed)) {
+            cacheEntries.incrementAndGet();
+        }
+        return computed;
+    }
+
+    private static String compute(Endpoint endpoint, int mask) {
+        StringBuilder sb = new StringBuilder(96);
+        int[] pcs = new int[PcSet.MODULUS];
+        switch (endpoint) {
+            case PARSE: {
+                sb.append("\"pcs\":");
+                appendArray(sb, pcs, PcSet.fromMask(mask).toArray(pcs));
+                break;
+            }
+            case NORMAL_ORDER: {
+                int size = PitchSetTables.normalOrder(mask, pcs);
+                sb.append("\"normal_form\":");
+                appendArray(sb, pcs, size);
+                sb.append(",\"span\":").append(PitchSetUtils.normalizePc(pcs[size - 1] - pcs[0]));
+                sb.append(",\"intervals\":");
+                appendIntervals(sb, pcs, size);
+                break;
+            }
+            case PRIME_FORM: {
+                int size = PcSet.fromMask(PitchSetTables.primeFormMask(mask)).toArray(pcs);
+                sb.append("\"prime_form\":");
+                appendArray(sb, pcs, size);
+                sb.append(",\"pf_intervals\":");
+                appendIntervals(sb, pcs, size);
+                sb.append(",\"transposition\":").append(PitchSetTables.transpositionLevel(mask));
+                sb.append(",\"inverted\":").append(PitchSetTables.isInverted(mask));
+                break;
+            }
+            case TI_TABLE: {
+                // Ogni riga è l'Ordine Normale di T_n (o I_n) del set
+                sb.append("\"tn\":[");
+                for (int n = 0; n < PcSet.MODULUS; n++) {
+                    sb.append(n > 0 ? "," : "");
+                    appendArray(sb, pcs, PitchSetTables.normalOrder(PcSet.transposeMask(mask, n), pcs));
+                }
+                sb.append("],\"in\":[");
+                for (int n = 0; n < PcSet.MODULUS; n++) {
+                    sb.append(n > 0 ? "," : "");
+                    appendArray(sb, pcs, PitchSetTables.normalOrder(PcSet.invertMask(mask, n), pcs));
+                }
+                sb.append(']');
+                break;
+            }
+            case SET_CLASS: {
+                int classId = SetClassCatalog.classOf(mask);
+                int zPartner = SetClassCatalog.zPartner(classId);
+                int[] icv = SetClassCatalog.intervalVector(classId);
+                sb.append("\"forte\":\"").append(SetClassCatalog.forteName(classId)).append('"');
+                sb.append(",\"prime_form\":");
+                appendArray(sb, pcs, PcSet.fromMask(PitchSetTables.primeFormMask(mask)).toArray(pcs));
+                sb.append(",\"icv\":");
+                appendArray(sb, icv, icv.length);
+                sb.append(",\"z_partner\":");
+                if (zPartner < 0) {
+                    sb.append("null");
+                } else {
+                    sb.append('"').append(SetClassCatalog.forteName(zPartner)).append('"');
+                }
+                sb.append(",\"complement\":\"").append(SetClassCatalog.forteName(SetClassCatalog.complementClass(classId))).append('"');
+                sb.append(",\"t_symmetry\":").append(SetClassCatalog.transpositionalSymmetry(classId));
+                sb.append(",\"i_symmetry\":").append(SetClassCatalog.inversionalSymmetry(classId));
+                break;
+            }
+            default:
+                throw new IllegalStateException("Endpoint non gestito: " + endpoint);
+        }
+        return sb.toString();
+    }
+
+    private static void appendArray(StringBuilder sb, int[] values, int size) {
+        sb.append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+        sb.append(']');
+    }
+
+    private static void appendIntervals(StringBuilder sb, int[] values, int size) {
+        sb.append('[');
+        for (int i = 1; i < size; i++) {
+            if (i > 1) {
+                sb.append(',');
+            }
+            sb.append(PitchSetUtils.normalizePc(values[i] - values[i - 1]));
+        }
+        sb.append(']');
+    }
+
+    // Supporto HTTP
+
+    private static void send(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder response = new StringBuilder(message.length() + 16);
+        response.append("{\"error\":");
+        PitchSetBatchProcessor.appendJsonString(response, message);
+        response.append('}');
+        send(exchange, status, response);
+    }
+
+    // Legge il corpo come UTF-8, oppure restituisce null se supera MAX_BODY_BYTES
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (body.size() + read > MAX_BODY_BYTES) {
+                    return null;
+                }
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String queryParameter(String rawQuery, String name) {
+        if (rawQuery == null) {
+            return null;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            if (key.equals(name)) {
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Legge un array JSON di set: ogni elemento è una stringa ("0 4 7", "0,t,e") o un array di numeri ([0,4,7]).
+     * Gli array di numeri vengono convertiti nel testo equivalente, così i controlli di range restano quelli del parser.
+     * @throws IllegalArgumentException Se il JSON non è un array con elementi di questo tipo.
+     */
+    static List<String> parseJsonArray(String json) {
+        List<String> items = new ArrayList<>();
+        int[] pos = {skipWhitespace(json, 0)};
+        expect(json, pos, '[');
+        if (peek(json, pos) == ']') {
+            pos[0]++;
+        } else {
+            while (true) {
+                char c = peek(json, pos);
+                if (c == '"') {
+                    items.add(readJsonString(json, pos));
+                } else if (c == '[') {
+                    items.add(readNumberArray(json, pos));
+                } else {
+                    throw invalidJson(pos[0]);
+                }
+                c = peek(json, pos);
+                pos[0]++;
+                if (c == ']') {
+                    break;
+                }
+                if (c != ',') {
+                    throw invalidJson(pos[0] - 1);
+                }
+            }
+        }
+        if (skipWhitespace(json, pos[0]) != json.length()) {
+            throw invalidJson(pos[0]);
+        }
+        return items;
+    }
+
+    private static String readJsonString(String json, int[] pos) {
+        StringBuilder sb = new StringBuilder();
+        int i = pos[0] + 1;
+        while (i < json.length()) {
+            char c = json.charAt(i++);
+            if (c == '"') {
+                pos[0] = i;
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (i >= json.length()) {
+                break;
+            }
+            char escaped = json.charAt(i++);
+            switch (escaped) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 4 > json.length()) {
+                        throw invalidJson(i);
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(json.substring(i, i + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw invalidJson(i);
+                    }
+                    i += 4;
+                    break;
+                default: sb.append(escaped); // '"', '\\' e '/'
+            }
+        }
+        throw invalidJson(pos[0]);
+    }
+
+    private static String readNumberArray(String json, int[] pos) {
+        StringBuilder sb = new StringBuilder();
+        pos[0]++;
+        if (peek(json, pos) == ']') {
+            pos[0]++;
+            return "";
+        }
+        while (true) {
+            int start = pos[0];
+            int end = start;
+            while (end < json.length() && (Character.isDigit(json.charAt(end)) || json.charAt(end) == '-')) {
+                end++;
+            }
+            if (end == start) {
+                throw invalidJson(start);
+            }
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(json, start, end);
+            pos[0] = end;
+            char c = peek(json, pos);
+            pos[0]++;
+            if (c == ']') {
+                return sb.toString();
+            }
+            if (c != ',') {
+                throw invalidJson(pos[0] - 1);
+            }
+            peek(json, pos);
+        }
+    }
+
+    // Salta gli spazi e restituisce il prossimo carattere senza consumarlo
+    private static char peek(String json, int[] pos) {
+        pos[0] = skipWhitespace(json, pos[0]);
+        if (pos[0] >= json.length()) {
+            throw invalidJson(pos[0]);
+        }
+        return json.charAt(pos[0]);
+    }
+
+    private static void expect(String json, int[] pos, char expected) {
+        if (peek(json, pos) != expected) {
+            throw invalidJson(pos[0]);
+        }
+        pos[0]++;
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static IllegalArgumentException invalidJson(int position) {
+        return new IllegalArgumentException("Errore: JSON non valido alla posizione " + position
+                                            + " (atteso un array di stringhe o di array di numeri).");
+    }
+}
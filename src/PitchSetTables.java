@@ -0,0 +1,124 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Tabelle precalcolate per tutti i 4096 sottoinsiemi dell'universo a 12 pitch classes.
+ * Per ogni maschera a 12 bit vengono memorizzati, in array primitivi:
+ * la pitch class iniziale dell'Ordine Normale, la maschera della Prime Form,
+ * il livello di trasposizione e il flag di inversione rispetto alla Prime Form.
+ * Le tabelle sono calcolate una sola volta, al primo accesso alla classe,
+ * usando gli algoritmi di riferimento di PitchSetAnalyzer (oppure lette
+ * dall'istantanea di AnalysisSnapshot, se disponibile); ogni interrogazione
+ * successiva è una singola lettura indicizzata.
+ */
+public final class PitchSetTables {
+
+    public static final int SIZE = PcSet.FULL_MASK + 1;
+
+    private static final byte[] NORMAL_ROOT = new byte[SIZE];   // Prima pitch class dell'Ordine Normale (-1 per il set vuoto)
+    private static final short[] PRIME_MASK = new short[SIZE];  // Maschera della Prime Form
+    private static final byte[] T_LEVEL = new byte[SIZE];       // n tale che il set sia T_n(PF) oppure I_n(PF)
+    private static final boolean[] INVERTED = new boolean[SIZE]; // true se il set è I_n(PF) e non T_n(PF)
+
+    static {
+        ByteBuffer snapshot = AnalysisSnapshot.section(AnalysisSnapshot.Section.TABLES);
+        if (snapshot != null) {
+            snapshot.get(NORMAL_ROOT);
+            AnalysisSnapshot.getShorts(snapshot, PRIME_MASK);
+            snapshot.get(T_LEVEL);
+            AnalysisSnapshot.getBooleans(snapshot, INVERTED);
+        } else {
+            compute();
+        }
+    }
+
+    private PitchSetTables() {
+    }
+
+    private static void compute() {
+        for (int mask = 0; mask < SIZE; mask++) {
+            PcSet pcSet = PcSet.fromMask(mask);
+            if (pcSet.isEmpty()) {
+                NORMAL_ROOT[mask] = -1;
+                continue;
+            }
+            RotationDetails normObj = PitchSetAnalyzer.computeNormalOrderObject(pcSet.toList());
+            NORMAL_ROOT[mask] = normObj.getRotation().get(0).byteValue();
+
+            int primeMask = PcSet.maskOf(PitchSetAnalyzer.computePrimeForm(pcSet.toList()));
+            PRIME_MASK[mask] = (short) primeMask;
+
+            // Cerca prima una trasposizione, poi un'inversione che porti la Prime Form sul set
+            int level = -1;
+            boolean inverted = false;
+            for (int n = 0; n < PcSet.MODULUS && level < 0; n++) {
+                if (PcSet.transposeMask(primeMask, n) == mask) {
+                    level = n;
+                }
+            }
+            for (int n = 0; n < PcSet.MODULUS && level < 0; n++) {
+                if (PcSet.invertMask(primeMask, n) == mask) {
+                    level = n;
+                    inverted = true;
+                }
+            }
+            T_LEVEL[mask] = (byte) level;
+            INVERTED[mask] = inverted;
+        }
+    }
+
+    // Scrive le tabelle nella sezione TABLES dell'istantanea, nell'ordine in cui le legge il blocco statico
+    static void writeSnapshot(ByteBuffer out) {
+        out.put(NORMAL_ROOT);
+        AnalysisSnapshot.putShorts(out, PRIME_MASK);
+        out.put(T_LEVEL);
+        AnalysisSnapshot.putBooleans(out, INVERTED);
+    }
+
+    /**
+     * @return La pitch class con cui inizia l'Ordine Normale del set, oppure -1 per il set vuoto.
+     */
+    public static int normalOrderRoot(int mask) {
+        return NORMAL_ROOT[mask & PcSet.FULL_MASK];
+    }
+
+    /**
+     * @return La maschera della Prime Form del set.
+     */
+    public static int primeFormMask(int mask) {
+        return PRIME_MASK[mask & PcSet.FULL_MASK];
+    }
+
+    /**
+     * @return Il livello n tale che il set sia T_n (o I_n, se invertito) della sua Prime Form; 0 per il set vuoto.
+     */
+    public static int transpositionLevel(int mask) {
+        return T_LEVEL[mask & PcSet.FULL_MASK];
+    }
+
+    /**
+     * @return true se il set si ottiene dalla Prime Form solo tramite inversione (I_n).
+     */
+    public static boolean isInverted(int mask) {
+        return INVERTED[mask & PcSet.FULL_MASK];
+    }
+
+    /**
+     * Scrive l'Ordine Normale del set (la rotazione che inizia da normalOrderRoot) nell'array fornito.
+     * @param mask La maschera del set.
+     * @param dest L'array di destinazione (almeno tanti elementi quanti la cardinalità del set).
+     * @return Il numero di pitch classes scritte.
+     */
+    public static int normalOrder(int mask, int[] dest) {
+        int root = normalOrderRoot(mask);
+        if (root < 0) {
+            return 0;
+        }
+        // Le pitch classes >= root, seguite da quelle < root: la rotazione circolare a partire dalla radice
+        int rotated = PcSet.transposeMask(mask, -root);
+        int count = 0;
+        for (int bits = rotated; bits != 0; bits &= bits - 1) {
+            dest[count++] = PitchSetUtils.normalizePc(Integer.numberOfTrailingZeros(bits) + root);
+        }
+        return count;
+    }
+}
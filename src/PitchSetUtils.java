@@ -1,7 +1,6 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class PitchSetUtils {
 
@@ -18,77 +17,49 @@ public class PitchSetUtils {
      */
 	
     public static List<Integer> parseAndCleanPitchClasses(String input) throws IllegalArgumentException {
-        if (input == null || input.trim().isEmpty()) {
-            return Collections.emptyList(); // Non lanciamo errore qui, il chiamante (PitchSetCalculator) gestirà il set vuoto.
+        if (AnalyzerMetrics.ENABLED) {
+            return AnalyzerMetrics.time(AnalyzerMetrics.Operation.PARSE, () -> parseToList(input));
         }
+        return parseToList(input);
+    }
 
-        String normalizedInput = input.toLowerCase();
-
-        // Validazione preliminare: controlla se ci sono caratteri non consentiti
-        // Consentiti: numeri (0-9), 't', 'e', spazio, virgola, segno meno (temporaneamente per split, ma sarà gestito successivamente dopo)
-        // Il pattern regex è stato modificato per non aspettarsi il '-' se non precede un numero per un parsing più pulito
-        if (!normalizedInput.matches("^[0-9te,\\s-]+$")) { // Manteniamo '-' per lo split
-             // Rileva se ci sono caratteri *veramente* invalidi non numeri, t, e, spazi, virgole, meno
-            if (!normalizedInput.replaceAll("[0-9te,\\s-]", "").isEmpty()) {
-                throw new IllegalArgumentException(
-                    "Errore: L'input '" + input + "' contiene caratteri non validi. " +
-                    "Sono ammessi solo numeri (0-11), 't' (per 10), 'e' (per 11), spazi e virgole."
-                );
-            }
+    private static List<Integer> parseToList(String input) {
+        if (input == null || input.isEmpty()) {
+            return Collections.emptyList(); // Non lanciamo errore qui, il chiamante (PitchSetCalculator) gestirà il set vuoto.
         }
-        
-        // Lista temporanea per raccogliere pitch classes valide
-        List<Integer> validPitchClasses = new ArrayList<>();
-        StringBuilder errors = new StringBuilder(); // Per accumulare messaggi di errore specifici
-
-        // Splitta l'input in token e processa
-        String[] tokens = normalizedInput.split("[^0-9te-]+"); // Splitta per tutto ciò che NON è 0-9, t, e, -
-        
-        for (String token : tokens) {
-            if (token.isEmpty() || token.equals("-")) { // Ignora stringhe vuote o solo "-" derivanti dallo split
-                continue;
-            }
+        // Il parser a passata singola restituisce direttamente la maschera: duplicati e ordinamento sono impliciti
+        return PcSet.fromMask(PitchClassParser.parseMask(input)).toList();
+    }
 
-            Integer pc = null;
-            try {
-                // Tenta di parsare 't' o 'e'
-                if (token.equals("t")) {
-                    pc = 10;
-                } else if (token.equals("e")) {
-                    pc = 11;
-                } else {
-                    // Tenta di parsare come numero intero
-                    pc = Integer.parseInt(token);
-                }
-
-                // Ora, VALIDA il valore numerico
-                if (pc != null) {
-                    if (pc < 0 || pc > 11) {
-                        errors.append("Errore: La pitch class '" + token + "' è fuori dal range consentito (0-11).\n");
-                    } else {
-                        validPitchClasses.add(pc);
-                    }
-                } else {
-                    // Questo caso dovrebbe essere già coperto dal regex iniziale, ma è una safety net
-                    errors.append("Errore: Il token '" + token + "' non è un numero valido, 't' o 'e'.\n");
-                }
-
-            } catch (NumberFormatException e) {
-                // Questo catch ora cattura solo numeri malformati che il regex ha lasciato passare
-                errors.append("Errore: Il token '" + token + "' non è un numero intero valido.\n");
-            }
+    /**
+     * Variante di parseAndCleanPitchClasses per un universo a modulus suddivisioni dell'ottava:
+     * sono ammessi i numeri da 0 a modulus - 1 (più 't' ed 'e' se modulus > 11).
+     *
+     * @param input La stringa contenente le pitch classes.
+     * @param modulus La dimensione dell'universo (da 1 a ModularPcSet.MAX_MODULUS).
+     * @return Una lista ordinata e unica di pitch classes.
+     * @throws IllegalArgumentException Se l'input contiene caratteri non validi o pitch classes fuori range.
+     */
+    public static List<Integer> parseAndCleanPitchClasses(String input, int modulus) throws IllegalArgumentException {
+        if (AnalyzerMetrics.ENABLED) {
+            return AnalyzerMetrics.time(AnalyzerMetrics.Operation.PARSE, () -> parseToList(input, modulus));
         }
+        return parseToList(input, modulus);
+    }
 
-        // Se ci sono stati errori specifici, lancia un'eccezione con tutti i messaggi
-        if (errors.length() > 0) {
-            throw new IllegalArgumentException(errors.toString().trim()); // Rimuove l'ultimo newline
-        }
-        
-        // Ritorna la lista pulita, unica e ordinata
-        return validPitchClasses.stream()
-                                .distinct() // Rimuove duplicati
-                                .sorted()   // Ordina in ordine crescente
-                                .collect(Collectors.toList());
+    private static List<Integer> parseToList(String input, int modulus) {
+        return ModularPcSet.fromMask(PitchClassParser.parseMask(input, modulus), modulus).toList();
+    }
+
+    /**
+     * Come parseAndCleanPitchClasses, ma restituisce direttamente il PcSet senza costruire liste.
+     *
+     * @param input La sequenza contenente le pitch classes.
+     * @return Il set di pitch classes (vuoto se l'input è null o vuoto).
+     * @throws IllegalArgumentException Con gli stessi messaggi di parseAndCleanPitchClasses.
+     */
+    public static PcSet parsePcSet(CharSequence input) throws IllegalArgumentException {
+        return PcSet.fromMask(PitchClassParser.parseMask(input));
     }
 
     /**
@@ -104,26 +75,83 @@ public class PitchSetUtils {
         return (pc % 12 + 12) % 12;
     }
 
+    /**
+     * Normalizza una pitch class nel range [0, modulus - 1] per un universo a modulus suddivisioni
+     * dell'ottava (es. 19, 24, 31 o 53 EDO). Gestisce correttamente numeri negativi.
+     * @param pc La pitch class da normalizzare.
+     * @param modulus La dimensione dell'universo.
+     * @return La pitch class normalizzata.
+     */
+    public static int normalizePc(int pc, int modulus) {
+        return (pc % modulus + modulus) % modulus;
+    }
+
     // formatVector, transpose, invert, getRotations, getSuccessiveIntervals, getCircularIntervals, getSpan
     public static String toStringPcSet(List<Integer> arr) {
         if (arr == null || arr.isEmpty()) {
             return "<>";
         }
-        return "<" + arr.stream()
-                .map(String::valueOf)
-                .collect(Collectors.joining(",")) + ">";
+        StringBuilder text = new StringBuilder(2 + 3 * arr.size()).append('<');
+        for (int i = 0; i < arr.size(); i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(arr.get(i).intValue());
+        }
+        return text.append('>').toString();
+    }
+
+    /**
+     * Come toStringPcSet(List), a partire dai primi size elementi di un array primitivo.
+     */
+    public static String toStringPcSet(int[] values, int size) {
+        StringBuilder text = new StringBuilder(2 + 3 * size).append('<');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(values[i]);
+        }
+        return text.append('>').toString();
     }
 
     public static List<Integer> transpose(List<Integer> pcSet, int n) {
+        return transpose(pcSet, n, 12);
+    }
+
+    /**
+     * Trasposizione T_n in un universo a modulus suddivisioni: ogni pc diventa (pc + n) mod modulus.
+     * Mantiene l'ordine degli elementi e rimuove i duplicati.
+     *
+     * @param pcSet Il set (o la sequenza) di pitch classes.
+     * @param n L'intervallo di trasposizione.
+     * @param modulus La dimensione dell'universo (al massimo ModularPcSet.MAX_MODULUS).
+     * @return Il set trasposto.
+     */
+    public static List<Integer> transpose(List<Integer> pcSet, int n, int modulus) {
+        if (AnalyzerMetrics.ENABLED) {
+            return AnalyzerMetrics.time(AnalyzerMetrics.Operation.TRANSPOSE, () -> transposeList(pcSet, n, modulus));
+        }
+        return transposeList(pcSet, n, modulus);
+    }
+
+    private static List<Integer> transposeList(List<Integer> pcSet, int n, int modulus) {
         if (pcSet == null || pcSet.isEmpty()) {
             return Collections.emptyList();
         }
-        int finalN = normalizePc(n);
+        int finalN = normalizePc(n, modulus);
 
-        return pcSet.stream()
-                .map(pc -> normalizePc(pc + finalN))
-                .distinct()
-                .collect(Collectors.toList());
+        // Mantiene l'ordine degli elementi; la maschera di bit sostituisce il distinct() dello stream
+        List<Integer> transposed = new ArrayList<>(pcSet.size());
+        long seen = 0;
+        for (int i = 0; i < pcSet.size(); i++) {
+            int pc = normalizePc(pcSet.get(i) + finalN, modulus);
+            if ((seen & (1L << pc)) == 0) {
+                seen |= 1L << pc;
+                transposed.add(pc);
+            }
+        }
+        return transposed;
     }
 
     /**
@@ -137,32 +165,60 @@ public class PitchSetUtils {
      * @return Il set di pitch classes invertito e poi con ordine invertito, senza duplicati.
      */
     public static List<Integer> invert(List<Integer> pcSet, int n) {
+        return invert(pcSet, n, 12);
+    }
+
+    /**
+     * Inversione I_n in un universo a modulus suddivisioni: ogni pc diventa (n - pc) mod modulus,
+     * con l'ordine degli elementi invertito e i duplicati rimossi, come in invert(pcSet, n).
+     *
+     * @param pcSet Il set di pitch classes da invertire.
+     * @param n L'asse di inversione.
+     * @param modulus La dimensione dell'universo (al massimo ModularPcSet.MAX_MODULUS).
+     * @return Il set invertito.
+     */
+    public static List<Integer> invert(List<Integer> pcSet, int n, int modulus) {
+        if (AnalyzerMetrics.ENABLED) {
+            return AnalyzerMetrics.time(AnalyzerMetrics.Operation.INVERT, () -> invertList(pcSet, n, modulus));
+        }
+        return invertList(pcSet, n, modulus);
+    }
+
+    private static List<Integer> invertList(List<Integer> pcSet, int n, int modulus) {
         if (pcSet == null || pcSet.isEmpty()) {
             return Collections.emptyList();
         }
-        int finalN = normalizePc(n);
-
-        // 1. Applica l'inversione matematica (n - pc) mod 12 a ogni elemento
-        List<Integer> invertedMapped = pcSet.stream()
-                .map(pc -> normalizePc(finalN - pc))
-                .collect(Collectors.toList()); // Raccoglie in una lista mantenendo l'ordine iniziale
+        int finalN = normalizePc(n, modulus);
 
-        // 2. Inverti l'ordine della lista risultante
-        Collections.reverse(invertedMapped);
-
-        // 3. Rimuovi i duplicati e ordina (se desiderato per la rappresentazione finale del set)
-        // Se si vuole mantenere l'ordine inverso e non riordinare, il .sorted() va rimosso.
-        // Se si vuole rimuovere i duplicati, ma non ordinare, il .distinct() va mantenuto senza .sorted().
-        // Date le tue istruzioni ("l'ultimo diventa il primo, il penultimo il secondo"),
-        // assumeremo che non ci sia un riordinamento numerico dopo l'inversione dell'ordine.
-        // La rimozione dei duplicati è ancora una scelta per un "set" o una "sequenza".
-        // Per un "set", i duplicati si rimuovono. Per una "sequenza" i duplicati possono rimanere.
-        // Manteniamo .distinct() per coerenza con l'idea di "set" ma rimuoviamo .sorted().
+        // Applica (n - pc) mod modulus percorrendo la lista dall'ultimo elemento al primo:
+        // l'ultimo diventa il primo, il penultimo il secondo, e così via.
+        // Per coerenza con l'idea di "set" i duplicati vengono rimossi (tramite una maschera di bit),
+        // ma non si riordina numericamente il risultato.
+        List<Integer> inverted = new ArrayList<>(pcSet.size());
+        long seen = 0;
+        for (int i = pcSet.size() - 1; i >= 0; i--) {
+            int pc = normalizePc(finalN - pcSet.get(i), modulus);
+            if ((seen & (1L << pc)) == 0) {
+                seen |= 1L << pc;
+                inverted.add(pc);
+            }
+        }
+        return inverted;
+    }
 
-        return invertedMapped
-        		.stream()
-                .distinct() // Rimuovi i duplicati dopo l'inversione dell'ordine
-                .collect(Collectors.toList());
+    /**
+     * Applica un'espressione di operatori T/I/M (es. "T3 I5 M5", composta da destra a sinistra) compilata
+     * in un unico operatore: una sola passata sulla lista qualunque sia la lunghezza dell'espressione.
+     * Per trasformare molti set con la stessa espressione conviene compilarla una volta con PcOperator.parse.
+     *
+     * @param pcSet Il set (o la sequenza) di pitch classes; l'ordine degli elementi viene mantenuto.
+     * @param expression L'espressione di operatori.
+     * @param modulus La dimensione dell'universo.
+     * @return Il set trasformato, senza duplicati.
+     * @throws IllegalArgumentException Se l'espressione non è valida.
+     */
+    public static List<Integer> transform(List<Integer> pcSet, String expression, int modulus) {
+        return PcOperator.parse(expression, modulus).apply(pcSet);
     }
 
     public static List<List<Integer>> getRotations(List<Integer> sortedPcSet) {
@@ -187,17 +243,29 @@ public class PitchSetUtils {
     }
 
     public static List<Integer> getSuccessiveIntervals(List<Integer> pcs) {
+        return getSuccessiveIntervals(pcs, 12);
+    }
+
+    public static List<Integer> getSuccessiveIntervals(List<Integer> pcs, int modulus) {
         List<Integer> intervals = new ArrayList<>();
         if (pcs == null || pcs.size() < 2) {
             return intervals;
         }
         for (int i = 1; i < pcs.size(); i++) {
-            intervals.add(normalizePc(pcs.get(i) - pcs.get(i - 1)));
+            intervals.add(normalizePc(pcs.get(i) - pcs.get(i - 1), modulus));
         }
         return intervals;
     }
 
     public static List<Integer> getCircularIntervals(List<Integer> sortedPcs) {
+        return getCircularIntervals(sortedPcs, 12);
+    }
+
+    /**
+     * Intervalli tra elementi consecutivi di un set ordinato, compreso quello che chiude il cerchio
+     * dall'ultimo elemento al primo, in un universo a modulus suddivisioni.
+     */
+    public static List<Integer> getCircularIntervals(List<Integer> sortedPcs, int modulus) {
         List<Integer> intervals = new ArrayList<>();
         if (sortedPcs == null || sortedPcs.isEmpty()) {
             return Collections.emptyList();
@@ -207,18 +275,25 @@ public class PitchSetUtils {
         }
 
         for (int i = 0; i < sortedPcs.size() - 1; i++) {
-            intervals.add(normalizePc(sortedPcs.get(i + 1) - sortedPcs.get(i)));
+            intervals.add(normalizePc(sortedPcs.get(i + 1) - sortedPcs.get(i), modulus));
         }
 
-        intervals.add(normalizePc(sortedPcs.get(0) + 12 - sortedPcs.get(sortedPcs.size() - 1)));
+        intervals.add(normalizePc(sortedPcs.get(0) + modulus - sortedPcs.get(sortedPcs.size() - 1), modulus));
 
         return intervals;
     }
 
     public static int getSpan(List<Integer> pcs) {
+        return getSpan(pcs, 12);
+    }
+
+    /**
+     * Distanza (mod modulus) dal primo all'ultimo elemento della sequenza.
+     */
+    public static int getSpan(List<Integer> pcs, int modulus) {
         if (pcs == null || pcs.isEmpty() || pcs.size() == 1) {
             return 0;
         }
-        return normalizePc(pcs.get(pcs.size() - 1) - pcs.get(0));
+        return normalizePc(pcs.get(pcs.size() - 1) - pcs.get(0), modulus);
     }
 }
\ No newline at end of file
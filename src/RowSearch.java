@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Ricerca parallela di serie dodecafoniche: serie a tutti gli intervalli (all-interval) ed esacordi
+ * combinatori (P, I, R, RI).
+ *
+ * Le serie a tutti gli intervalli vengono cercate con un backtracking su maschere di bit (pitch classes e
+ * intervalli già usati), normalizzate per trasposizione (iniziano con 0). L'inversione I_0 manda una serie
+ * a tutti gli intervalli in un'altra con intervalli complementari (d -> 12 - d), quindi basta esplorare le
+ * serie con il primo intervallo tra 1 e 6: quelle con il primo intervallo minore di 6 valgono doppio e la
+ * loro inversione viene ricostruita senza cercarla. È l'unica simmetria sfruttata: anche la retrogradazione
+ * (trasposta a 0) di una serie a tutti gli intervalli lo è, ma la forma canonica rispetto a R dipende
+ * dall'ultimo intervallo, noto solo in fondo all'albero, quindi non permetterebbe di potare rami; le serie
+ * R vengono cercate come le altre. I primi livelli dell'albero diventano task di un ForkJoinPool; i livelli
+ * profondi vengono esplorati sequenzialmente senza allocazioni.
+ *
+ * La combinatorietà esacordale dipende solo dal contenuto del primo esacordo, quindi viene calcolata una
+ * volta per le 924 maschere di cardinalità 6. Il numero di serie con un dato primo esacordo che iniziano
+ * con 0 è 5! * 6! = 86400.
+ */
+public class RowSearch {
+
+    /**
+     * Tipi di combinatorietà esacordale del primo esacordo H (con H' il complemento):
+     * P: T_n(H) = H' per qualche n; I: I_n(H) = H'; R: T_n(H) = H; RI: I_n(H) = H.
+     * Come in Babbitt, R è sempre soddisfatta (R_0 completa qualsiasi esacordo): gli esacordi combinatori
+     * per P, I, R e RI insieme sono quelli "all-combinatorial" (6 classi).
+     */
+    public enum Combinatoriality {
+        P, I, R, RI
+    }
+
+    public static final int ROWS_PER_HEXACHORD = 120 * 720; // 5! ordinamenti del resto di H (0 in testa) per 6! di H'
+
+    private static final int FULL_INTERVALS = 0xFFE; // Intervalli 1-11
+    private static final int SPLIT_DEPTH = 4;         // Profondità fino alla quale i rami diventano task paralleli
+
+    // Bit t (ordinale di Combinatoriality) per ogni maschera di cardinalità 6
+    private static final byte[] HEXACHORD_PROPERTIES = new byte[PcSet.FULL_MASK + 1];
+
+    static {
+        for (int mask = 0; mask <= PcSet.FULL_MASK; mask++) {
+            if (Integer.bitCount(mask) != 6) {
+                continue;
+            }
+            int complement = PcSet.complementMask(mask);
+            int properties = 0;
+            for (int n = 0; n < PcSet.MODULUS; n++) {
+                int transposed = PcSet.transposeMask(mask, n);
+                int inverted = PcSet.invertMask(mask, n);
+                if (transposed == complement) properties |= 1 << Combinatoriality.P.ordinal();
+                if (inverted == complement) properties |= 1 << Combinatoriality.I.ordinal();
+                if (transposed == mask) properties |= 1 << Combinatoriality.R.ordinal();
+                if (inverted == mask) properties |= 1 << Combinatoriality.RI.ordinal();
+            }
+            HEXACHORD_PROPERTIES[mask] = (byte) properties;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder solutions = new LongAdder();
+
+    public RowSearch(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public RowSearch() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @return Le proprietà di combinatorietà (bit = ordinale di Combinatoriality) di un esacordo, 0 se la
+     * maschera non ha cardinalità 6.
+     */
+    public static int combinatoriality(int hexachordMask) {
+        return HEXACHORD_PROPERTIES[hexachordMask & PcSet.FULL_MASK];
+    }
+
+    /**
+     * @param required I tipi richiesti (bit = ordinale di Combinatoriality); 0 accetta qualsiasi esacordo.
+     * @return true se la serie ha un primo esacordo con tutte le proprietà richieste.
+     */
+    public static boolean isCombinatorial(int[] row, int required) {
+        int mask = 0;
+        for (int i = 0; i < 6; i++) {
+            mask |= 1 << row[i];
+        }
+        return (combinatoriality(mask) & required) == required;
+    }
+
+    /**
+     * @param types I tipi di combinatorietà.
+     * @return La maschera di bit corrispondente, da passare alle ricerche.
+     */
+    public static int requiredMask(Combinatoriality... types) {
+        int mask = 0;
+        for (Combinatoriality type : types) {
+            mask |= 1 << type.ordinal();
+        }
+        return mask;
+    }
+
+    // Avanzamento (leggibile da un altro thread durante la ricerca)
+
+    /** @return I nodi dell'albero di ricerca visitati finora. */
+    public long getNodesVisited() {
+        return nodes.sum();
+    }
+
+    /** @return Le soluzioni trovate finora (comprese quelle ricostruite per simmetria). */
+    public long getSolutionsFound() {
+        return solutions.sum();
+    }
+
+    /**
+     * Enumera le serie a tutti gli intervalli che iniziano con 0 (3856 in totale).
+     *
+     * @param required Le proprietà di combinatorietà richieste al primo esacordo (0 per nessun filtro).
+     * @param collect true per restituire le serie trovate, false per contarle soltanto.
+     * @return Le serie trovate in ordine lessicografico (lista vuota se collect è false).
+     */
+    public List<ToneRow> allIntervalRows(int required, boolean collect) {
+        nodes.reset();
+        solutions.reset();
+        ConcurrentLinkedQueue<int[]> found = collect ? new ConcurrentLinkedQueue<>() : null;
+        int[] row = new int[ToneRow.SIZE];
+        pool.invoke(new AllIntervalTask(row, 1, 1, 0, required, found));
+        if (!collect) {
+            return Collections.emptyList();
+        }
+        List<int[]> sorted = new ArrayList<>(found);
+        sorted.sort(RowSearch::compareRows);
+        List<ToneRow> rows = new ArrayList<>(sorted.size());
+        for (int[] r : sorted) {
+            rows.add(ToneRow.of(r));
+        }
+        return rows;
+    }
+
+    /**
+     * Enumera in parallelo gli esacordi che contengono 0 e hanno tutte le proprietà richieste.
+     * Ognuno è il primo esacordo di ROWS_PER_HEXACHORD serie che iniziano con 0.
+     *
+     * @param required Le proprietà richieste (bit = ordinale di Combinatoriality).
+     * @return Le maschere degli esacordi, in ordine crescente.
+     */
+    public int[] combinatorialHexachords(int required) {
+        nodes.reset();
+        solutions.reset();
+        return pool.submit(() -> IntStream.rangeClosed(0, PcSet.FULL_MASK)
+                .parallel()
+                .filter(mask -> (mask & 1) != 0 && Integer.bitCount(mask) == 6)
+                .peek(mask -> nodes.increment())
+                .filter(mask -> (HEXACHORD_PROPERTIES[mask] & required) == required)
+                .peek(mask -> solutions.add(ROWS_PER_HEXACHORD))
+                .sorted()
+                .toArray()).join();
+    }
+
+    private static int compareRows(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i], b[i]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Ramo dell'albero di ricerca: row[0..depth-1] è già fissato, con le pitch classes e gli intervalli
+     * usati codificati nelle maschere.
+     */
+    private final class AllIntervalTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] row;
+        private final int depth;
+        private final int usedPcs;
+        private final int usedIntervals;
+        private final int required;
+        private final ConcurrentLinkedQueue<int[]> found;
+
+        AllIntervalTask(int[] row, int depth, int usedPcs, int usedIntervals, int required, ConcurrentLinkedQueue<int[]> found) {
+            this.row = row;
+            this.depth = depth;
+            this.usedPcs = usedPcs;
+            this.usedIntervals = usedIntervals;
+            this.required = required;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            if (depth >= SPLIT_DEPTH) {
+                search(row, depth, usedPcs, usedIntervals);
+                return;
+            }
+            nodes.increment();
+            List<AllIntervalTask> children = new ArrayList<>();
+            // Simmetria I (l'unica sfruttata, vedi l'intestazione): al primo passo bastano gli intervalli 1-6
+            int maxInterval = depth == 1 ? 6 : 11;
+            for (int interval = 1; interval <= maxInterval; interval++) {
+                int pc = (row[depth - 1] + interval) % PcSet.MODULUS;
+                if ((usedIntervals & (1 << interval)) != 0 || (usedPcs & (1 << pc)) != 0) {
+                    continue;
+                }
+                int[] next = row.clone();
+                next[depth] = pc;
+                children.add(new AllIntervalTask(next, depth + 1, usedPcs | (1 << pc), usedIntervals | (1 << interval), required, found));
+            }
+            invokeAll(children);
+        }
+
+        // Backtracking sequenziale in place sui livelli profondi
+        private void search(int[] prefix, int level, int pcMask, int intervalMask) {
+            nodes.increment();
+            if (level == ToneRow.SIZE) {
+                if (intervalMask == FULL_INTERVALS) {
+                    accept(prefix);
+                }
+                return;
+            }
+            int free = FULL_INTERVALS & ~intervalMask;
+            while (free != 0) {
+                int interval = Integer.numberOfTrailingZeros(free);
+                free &= free - 1;
+                int pc = (prefix[level - 1] + interval) % PcSet.MODULUS;
+                if ((pcMask & (1 << pc)) == 0) {
+                    prefix[level] = pc;
+                    search(prefix, level + 1, pcMask | (1 << pc), intervalMask | (1 << interval));
+                }
+            }
+        }
+
+        private void accept(int[] solution) {
+            if (!isCombinatorial(solution, required)) {
+                return; // La combinatorietà è invariante per inversione: vale anche per la serie speculare
+            }
+            boolean mirrored = solution[1] != 6; // Primo intervallo < 6: esiste anche l'inversione, non esplorata
+            solutions.add(mirrored ? 2 : 1);
+            if (found != null) {
+                found.add(solution.clone());
+                if (mirrored) {
+                    int[] inverted = new int[ToneRow.SIZE];
+                    for (int i = 0; i < ToneRow.SIZE; i++) {
+                        inverted[i] = PitchSetUtils.normalizePc(-solution[i]);
+                    }
+                    found.add(inverted);
+                }
+            }
+        }
+    }
+}
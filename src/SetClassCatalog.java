@@ -0,0 +1,268 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Catalogo precalcolato delle 224 classi di insiemi (equivalenza T_n/T_nI) dell'universo a 12 pitch classes.
+ * Per ogni classe memorizza il nome di Forte, la Prime Form, il vettore delle classi di intervalli (ICV),
+ * l'eventuale partner Z, la classe del complemento e il grado di simmetria (numero di operazioni T_n e I_n
+ * che lasciano invariato il set). Ogni maschera a 12 bit è associata alla propria classe tramite una tabella
+ * di 4096 elementi, quindi tutte le interrogazioni sono letture indicizzate. Se disponibile, il catalogo viene
+ * letto dall'istantanea di AnalysisSnapshot invece di essere ricostruito.
+ */
+public final class SetClassCatalog {
+
+    public static final int CLASS_COUNT = 224;
+
+    // Prime Form di Forte per le cardinalità 3-6, nell'ordine della numerazione di Forte.
+    // Le classi di cardinalità 7-9 sono i complementi di quelle di cardinalità 5-3 con lo stesso numero d'ordine.
+    private static final String[] TRICHORDS = {
+        "012", "013", "014", "015", "016", "024", "025", "026", "027", "036", "037", "048"
+    };
+    private static final String[] TETRACHORDS = {
+        "0123", "0124", "0134", "0125", "0126", "0127", "0145", "0156", "0167", "0235",
+        "0135", "0236", "0136", "0237", "Z0146", "0157", "0347", "0147", "0148", "0158",
+        "0246", "0247", "0257", "0248", "0268", "0358", "0258", "0369", "Z0137"
+    };
+    private static final String[] PENTACHORDS = {
+        "01234", "01235", "01245", "01236", "01237", "01256", "01267", "02346", "01246", "01346",
+        "02347", "Z01356", "01248", "01257", "01268", "01347", "Z01348", "Z01457", "01367", "01378",
+        "01458", "01478", "02357", "01357", "02358", "02458", "01358", "02368", "01368", "01468",
+        "01369", "01469", "02468", "02469", "02479", "Z01247", "Z03458", "Z01258"
+    };
+    private static final String[] HEXACHORDS = {
+        "012345", "012346", "Z012356", "Z012456", "012367", "Z012567", "012678", "023457", "012357", "Z013457",
+        "Z012457", "Z012467", "Z013467", "013458", "012458", "014568", "Z012478", "012578", "Z013478", "014589",
+        "023468", "012468", "Z023568", "Z013468", "Z013568", "Z013578", "013469", "Z013569", "Z013689", "013679",
+        "013589", "024579", "023579", "013579", "02468t", "Z012347", "Z012348", "Z012378", "Z023458", "Z012358",
+        "Z012368", "Z012369", "Z012568", "Z012569", "Z023469", "Z012469", "Z012479", "Z012579", "Z013479", "Z014679"
+    };
+
+    private static final short[] CLASS_OF_MASK = new short[PcSet.FULL_MASK + 1];
+
+    private static final String[] NAME = new String[CLASS_COUNT];
+    private static final short[] PRIME_MASK = new short[CLASS_COUNT];
+    private static final byte[] ICV = new byte[CLASS_COUNT * 6];
+    private static final short[] Z_PARTNER = new short[CLASS_COUNT];
+    private static final short[] COMPLEMENT = new short[CLASS_COUNT];
+    private static final byte[] T_SYMMETRY = new byte[CLASS_COUNT];
+    private static final byte[] I_SYMMETRY = new byte[CLASS_COUNT];
+
+    static {
+        ByteBuffer snapshot = AnalysisSnapshot.section(AnalysisSnapshot.Section.CATALOG);
+        if (snapshot != null) {
+            AnalysisSnapshot.getShorts(snapshot, CLASS_OF_MASK);
+            for (int classId = 0; classId < CLASS_COUNT; classId++) {
+                byte[] name = new byte[snapshot.get()];
+                snapshot.get(name);
+                NAME[classId] = new String(name, StandardCharsets.US_ASCII);
+            }
+            AnalysisSnapshot.getShorts(snapshot, PRIME_MASK);
+            snapshot.get(ICV);
+            AnalysisSnapshot.getShorts(snapshot, Z_PARTNER);
+            AnalysisSnapshot.getShorts(snapshot, COMPLEMENT);
+            snapshot.get(T_SYMMETRY);
+            snapshot.get(I_SYMMETRY);
+        } else {
+            build();
+        }
+    }
+
+    private SetClassCatalog() {
+    }
+
+    private static void build() {
+        // 1. Ogni maschera viene ricondotta al rappresentante minimo della propria orbita T_n/I_n
+        int[] canonical = new int[PcSet.FULL_MASK + 1];
+        for (int mask = 0; mask <= PcSet.FULL_MASK; mask++) {
+            canonical[mask] = canonicalMask(mask);
+        }
+
+        // 2. Assegna gli identificativi di classe nell'ordine di Forte: cardinalità, poi numero d'ordine
+        int[] classOfCanonical = new int[PcSet.FULL_MASK + 1];
+        Arrays.fill(classOfCanonical, -1);
+        int next = 0;
+        for (int cardinality = 0; cardinality <= PcSet.MODULUS; cardinality++) {
+            String[] primes = forteList(cardinality);
+            for (int ordinal = 0; ordinal < primes.length; ordinal++) {
+                String entry = primes[ordinal];
+                boolean z = entry.startsWith("Z");
+                int mask = parseDigits(z ? entry.substring(1) : entry);
+                if (cardinality > 6) { // Complemento della classe di cardinalità 12 - n con lo stesso numero d'ordine
+                    mask = PcSet.complementMask(mask);
+                }
+                classOfCanonical[canonical[mask]] = next;
+                NAME[next] = cardinality + "-" + (z ? "Z" : "") + (ordinal + 1);
+                next++;
+            }
+        }
+
+        // 3. Tabella maschera -> classe e proprietà di ogni classe (Prime Form dell'analizzatore, simmetrie)
+        for (int mask = 0; mask <= PcSet.FULL_MASK; mask++) {
+            int classId = classOfCanonical[canonical[mask]];
+            CLASS_OF_MASK[mask] = (short) classId;
+            if (canonical[mask] == mask) {
+                PRIME_MASK[classId] = (short) PitchSetTables.primeFormMask(mask);
+                int[] icv = intervalVectorOf(mask);
+                for (int i = 0; i < 6; i++) {
+                    ICV[classId * 6 + i] = (byte) icv[i];
+                }
+                int tSymmetry = 0;
+                int iSymmetry = 0;
+                for (int n = 0; n < PcSet.MODULUS; n++) {
+                    if (PcSet.transposeMask(mask, n) == mask) tSymmetry++;
+                    if (PcSet.invertMask(mask, n) == mask) iSymmetry++;
+                }
+                T_SYMMETRY[classId] = (byte) tSymmetry;
+                I_SYMMETRY[classId] = (byte) iSymmetry;
+            }
+        }
+
+        // 4. Complementi e partner Z (stessa cardinalità e stesso ICV, classe diversa)
+        for (int classId = 0; classId < CLASS_COUNT; classId++) {
+            COMPLEMENT[classId] = CLASS_OF_MASK[PcSet.complementMask(PRIME_MASK[classId])];
+            Z_PARTNER[classId] = -1;
+            for (int other = 0; other < CLASS_COUNT; other++) {
+                if (other != classId && cardinality(other) == cardinality(classId) && sameIntervalVector(classId, other)) {
+                    Z_PARTNER[classId] = (short) other;
+                }
+            }
+        }
+    }
+
+    // Scrive il catalogo nella sezione CATALOG dell'istantanea, nell'ordine in cui lo legge il blocco statico
+    static void writeSnapshot(ByteBuffer out) {
+        AnalysisSnapshot.putShorts(out, CLASS_OF_MASK);
+        for (String name : NAME) {
+            byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+            out.put((byte) bytes.length).put(bytes);
+        }
+        AnalysisSnapshot.putShorts(out, PRIME_MASK);
+        out.put(ICV);
+        AnalysisSnapshot.putShorts(out, Z_PARTNER);
+        AnalysisSnapshot.putShorts(out, COMPLEMENT);
+        out.put(T_SYMMETRY);
+        out.put(I_SYMMETRY);
+    }
+
+    private static String[] forteList(int cardinality) {
+        switch (cardinality) {
+            case 0: case 12:
+                return new String[] {""};
+            case 1: case 11:
+                return new String[] {"0"};
+            case 2: case 10:
+                return new String[] {"01", "02", "03", "04", "05", "06"};
+            case 3: case 9:
+                return TRICHORDS;
+            case 4: case 8:
+                return TETRACHORDS;
+            case 5: case 7:
+                return PENTACHORDS;
+            case 6:
+                return HEXACHORDS;
+            default:
+                throw new IllegalArgumentException("Cardinalità non valida: " + cardinality);
+        }
+    }
+
+    // Cifre 0-9 più 't' (10) ed 'e' (11)
+    private static int parseDigits(String digits) {
+        int mask = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            mask |= 1 << (c == 't' ? 10 : c == 'e' ? 11 : c - '0');
+        }
+        return mask;
+    }
+
+    /**
+     * Rappresentante canonico dell'orbita T_n/I_n di una maschera: il minimo tra le 24 trasformate.
+     */
+    static int canonicalMask(int mask) {
+        int best = mask;
+        for (int n = 0; n < PcSet.MODULUS; n++) {
+            best = Math.min(best, PcSet.transposeMask(mask, n));
+            best = Math.min(best, PcSet.invertMask(mask, n));
+        }
+        return best;
+    }
+
+    private static int[] intervalVectorOf(int mask) {
+        int[] icv = new int[6];
+        int[] pcs = PcSet.fromMask(mask).toArray();
+        for (int i = 0; i < pcs.length; i++) {
+            for (int j = i + 1; j < pcs.length; j++) {
+                int interval = pcs[j] - pcs[i];
+                icv[Math.min(interval, PcSet.MODULUS - interval) - 1]++;
+            }
+        }
+        return icv;
+    }
+
+    private static boolean sameIntervalVector(int a, int b) {
+        for (int i = 0; i < 6; i++) {
+            if (ICV[a * 6 + i] != ICV[b * 6 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Interrogazioni
+
+    /**
+     * @return L'identificativo (0-223) della classe a cui appartiene il set, nell'ordine di Forte.
+     */
+    public static int classOf(int mask) {
+        return CLASS_OF_MASK[mask & PcSet.FULL_MASK];
+    }
+
+    public static String forteName(int classId) {
+        return NAME[classId];
+    }
+
+    public static int primeFormMask(int classId) {
+        return PRIME_MASK[classId];
+    }
+
+    public static int cardinality(int classId) {
+        return Integer.bitCount(PRIME_MASK[classId]);
+    }
+
+    /**
+     * @return Il vettore delle classi di intervalli (ic1-ic6) della classe.
+     */
+    public static int[] intervalVector(int classId) {
+        int[] icv = new int[6];
+        for (int i = 0; i < 6; i++) {
+            icv[i] = ICV[classId * 6 + i];
+        }
+        return icv;
+    }
+
+    /**
+     * @return La classe Z-correlata (stesso ICV, classe diversa), oppure -1 se non esiste.
+     */
+    public static int zPartner(int classId) {
+        return Z_PARTNER[classId];
+    }
+
+    public static int complementClass(int classId) {
+        return COMPLEMENT[classId];
+    }
+
+    /**
+     * @return Il numero di trasposizioni T_n (n = 0-11, incluso T_0) che lasciano invariato il set.
+     */
+    public static int transpositionalSymmetry(int classId) {
+        return T_SYMMETRY[classId];
+    }
+
+    /**
+     * @return Il numero di inversioni I_n (n = 0-11) che lasciano invariato il set.
+     */
+    public static int inversionalSymmetry(int classId) {
+        return I_SYMMETRY[classId];
+    }
+}
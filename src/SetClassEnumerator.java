@@ -0,0 +1,217 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Enumerazione parallela di tutti i sottoinsiemi dell'universo a 12 pitch classes.
+ * Ogni sottoinsieme viene raggruppato nella propria classe T_n/I_n (orbita delle 24 trasformazioni) e
+ * classificato tramite PitchSetAnalyzer, sia con l'algoritmo di riferimento sia con le tabelle precalcolate.
+ * Il risultato è il catalogo completo delle classi: membri, dimensioni delle orbite T_n e T_n/I_n, vettori
+ * intervallari e coppie Z, emesso in un ordine deterministico indipendente dallo scheduling dei thread.
+ * L'enumerazione verifica anche l'analizzatore: tabelle e algoritmo di riferimento devono concordare e
+ * tutti i membri di una classe dovrebbero avere la stessa Prime Form.
+ */
+public class SetClassEnumerator {
+
+    /**
+     * Una classe di insiemi con tutti i suoi membri.
+     */
+    public static class Entry {
+        private final int primeMask;
+        private final int[] members;        // Maschere dei membri, in ordine crescente
+        private final int[] intervalVector;
+        private final int tnOrbitSize;
+        private final int[] analyzerPrimeForms; // Prime Form distinte restituite dall'analizzatore per i membri
+        private String zPartner;            // Nome di Forte del partner Z, assegnato dopo il raggruppamento
+
+        Entry(int primeMask, int[] members) {
+            this.primeMask = primeMask;
+            this.members = members;
+            this.analyzerPrimeForms = Arrays.stream(members)
+                                            .map(PitchSetTables::primeFormMask)
+                                            .distinct()
+                                            .sorted()
+                                            .toArray();
+            this.intervalVector = computeIntervalVector(primeMask);
+            int invariantTranspositions = 0;
+            for (int n = 0; n < PcSet.MODULUS; n++) {
+                if (PcSet.transposeMask(primeMask, n) == primeMask) {
+                    invariantTranspositions++;
+                }
+            }
+            this.tnOrbitSize = PcSet.MODULUS / invariantTranspositions;
+        }
+
+        public PcSet getPrimeForm() {
+            return PcSet.fromMask(primeMask);
+        }
+
+        public String getForteName() {
+            return SetClassCatalog.forteName(SetClassCatalog.classOf(primeMask));
+        }
+
+        public int getCardinality() {
+            return Integer.bitCount(primeMask);
+        }
+
+        public int[] getMembers() {
+            return members.clone();
+        }
+
+        public int[] getIntervalVector() {
+            return intervalVector.clone();
+        }
+
+        /** @return Il numero di set distinti ottenibili con le sole trasposizioni. */
+        public int getTnOrbitSize() {
+            return tnOrbitSize;
+        }
+
+        /** @return Il numero di set distinti ottenibili con trasposizioni e inversioni (i membri della classe). */
+        public int getTnIOrbitSize() {
+            return members.length;
+        }
+
+        /**
+         * @return Le Prime Form distinte che PitchSetAnalyzer restituisce per i membri della classe:
+         * più di una indica che la Prime Form calcolata dipende dal membro scelto.
+         */
+        public PcSet[] getAnalyzerPrimeForms() {
+            return Arrays.stream(analyzerPrimeForms).mapToObj(PcSet::fromMask).toArray(PcSet[]::new);
+        }
+
+        /** @return Il nome di Forte del partner Z, oppure null. */
+        public String getZPartner() {
+            return zPartner;
+        }
+    }
+
+    private final AtomicInteger mismatches = new AtomicInteger();
+
+    /**
+     * Classifica in parallelo tutti i 4096 sottoinsiemi e li raggruppa in classi.
+     * @return Le 224 classi, ordinate per cardinalità e numero di Forte.
+     */
+    public List<Entry> enumerate() {
+        mismatches.set(0);
+
+        // Chiave: il rappresentante minimo dell'orbita T_n/I_n, indipendente dalla Prime Form calcolata
+        ConcurrentMap<Integer, List<Integer>> byOrbit = IntStream.rangeClosed(0, PcSet.FULL_MASK)
+                .parallel()
+                .boxed()
+                .collect(Collectors.groupingByConcurrent(this::classify));
+
+        List<Entry> entries = byOrbit.values().parallelStream()
+                .map(members -> {
+                    int[] sorted = members.stream().mapToInt(Integer::intValue).sorted().toArray();
+                    return new Entry(PitchSetTables.primeFormMask(SetClassCatalog.canonicalMask(sorted[0])), sorted);
+                })
+                .sorted(Comparator.comparingInt((Entry e) -> e.getCardinality())
+                                  .thenComparingInt(e -> SetClassCatalog.classOf(e.primeMask)))
+                .collect(Collectors.toList());
+
+        assignZPartners(entries);
+        return entries;
+    }
+
+    /**
+     * @return Il numero di sottoinsiemi per cui le tabelle e l'algoritmo di riferimento non concordano,
+     * o la Prime Form non appartiene alla classe del set (nell'ultima enumerazione).
+     */
+    public int getMismatchCount() {
+        return mismatches.get();
+    }
+
+    /**
+     * @param entries Le classi restituite da enumerate().
+     * @return Il numero di classi i cui membri non hanno tutti la stessa Prime Form secondo l'analizzatore.
+     */
+    public static long countAmbiguousClasses(List<Entry> entries) {
+        return entries.stream().filter(e -> e.analyzerPrimeForms.length > 1).count();
+    }
+
+    private int classify(int mask) {
+        List<Integer> pcs = PcSet.fromMask(mask).toList();
+        int referencePrime = PcSet.maskOf(PitchSetAnalyzer.computePrimeForm(pcs));
+        int tablePrime = PcSet.maskOf(PitchSetAnalyzer.getPrimeForm(pcs));
+        int orbit = SetClassCatalog.canonicalMask(mask);
+        if (referencePrime != tablePrime || SetClassCatalog.canonicalMask(referencePrime) != orbit) {
+            mismatches.incrementAndGet();
+        }
+        return orbit;
+    }
+
+    // Classi con lo stesso vettore intervallare e la stessa cardinalità sono Z-correlate
+    private static void assignZPartners(List<Entry> entries) {
+        Map<String, List<Entry>> byVector = entries.stream()
+                .collect(Collectors.groupingBy(e -> e.getCardinality() + ":" + Arrays.toString(e.intervalVector)));
+        for (List<Entry> group : byVector.values()) {
+            if (group.size() == 2) {
+                group.get(0).zPartner = group.get(1).getForteName();
+                group.get(1).zPartner = group.get(0).getForteName();
+            }
+        }
+    }
+
+    private static int[] computeIntervalVector(int mask) {
+        int[] pcs = PcSet.fromMask(mask).toArray();
+        int[] icv = new int[6];
+        for (int i = 0; i < pcs.length; i++) {
+            for (int j = i + 1; j < pcs.length; j++) {
+                int interval = pcs[j] - pcs[i];
+                icv[Math.min(interval, PcSet.MODULUS - interval) - 1]++;
+            }
+        }
+        return icv;
+    }
+
+    /**
+     * Scrive il catalogo in formato TSV, una classe per riga.
+     * Colonne: forte, prime_form, cardinality, icv, tn_orbit, tni_orbit, z_partner, analyzer_prime_forms, members.
+     *
+     * @param entries Le classi restituite da enumerate().
+     * @param writer La destinazione (non viene chiusa).
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public static void writeCatalog(List<Entry> entries, BufferedWriter writer) throws IOException {
+        writer.write("forte\tprime_form\tcardinality\ticv\ttn_orbit\ttni_orbit\tz_partner\tanalyzer_prime_forms\tmembers");
+        writer.newLine();
+        StringBuilder line = new StringBuilder(512);
+        for (Entry entry : entries) {
+            line.setLength(0);
+            line.append(entry.getForteName()).append('\t')
+                .append(entry.getPrimeForm()).append('\t')
+                .append(entry.getCardinality()).append('\t');
+            for (int i = 0; i < entry.intervalVector.length; i++) {
+                line.append(i == 0 ? '<' : ',').append(entry.intervalVector[i]);
+            }
+            line.append(">\t").append(entry.getTnOrbitSize())
+                .append('\t').append(entry.getTnIOrbitSize())
+                .append('\t').append(entry.getZPartner() != null ? entry.getZPartner() : "-")
+                .append('\t');
+            for (int i = 0; i < entry.analyzerPrimeForms.length; i++) {
+                if (i > 0) {
+                    line.append(' ');
+                }
+                line.append(PcSet.fromMask(entry.analyzerPrimeForms[i]));
+            }
+            line.append('\t');
+            for (int i = 0; i < entry.members.length; i++) {
+                if (i > 0) {
+                    line.append(' ');
+                }
+                line.append(PcSet.fromMask(entry.members[i]));
+            }
+            writer.append(line);
+            writer.newLine();
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+/**
+ * Indice precalcolato delle relazioni di inclusione astratta tra le 224 classi di insiemi.
+ * La classe A è inclusa nella classe B se qualche forma T_n/T_nI di A è sottoinsieme di qualche forma di B;
+ * poiché la relazione non dipende dal membro scelto, basta enumerare i sottoinsiemi (come maschere) di un
+ * rappresentante per classe. Per ogni classe l'indice memorizza due bitset di 224 bit (4 long): le classi
+ * incluse e le classi che la includono. Inclusioni e complessi K/Kh di Forte si riducono così a operazioni
+ * bit a bit, senza generare trasposizioni o inversioni.
+ */
+public final class SetClassInclusionIndex {
+
+    private static final int WORDS = (SetClassCatalog.CLASS_COUNT + Long.SIZE - 1) / Long.SIZE;
+
+    private static final long[] SUBSETS = new long[SetClassCatalog.CLASS_COUNT * WORDS];   // Classi incluse (compresa se stessa)
+    private static final long[] SUPERSETS = new long[SetClassCatalog.CLASS_COUNT * WORDS]; // Classi che includono (compresa se stessa)
+
+    static {
+        for (int classId = 0; classId < SetClassCatalog.CLASS_COUNT; classId++) {
+            int mask = SetClassCatalog.primeFormMask(classId);
+            // Enumera tutti i sottoinsiemi della maschera, incluso l'insieme vuoto
+            for (int sub = mask; ; sub = (sub - 1) & mask) {
+                int subClass = SetClassCatalog.classOf(sub);
+                SUBSETS[classId * WORDS + (subClass >>> 6)] |= 1L << subClass;
+                SUPERSETS[subClass * WORDS + (classId >>> 6)] |= 1L << classId;
+                if (sub == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private SetClassInclusionIndex() {
+    }
+
+    /**
+     * @return true se qualche forma T_n/T_nI della classe a è sottoinsieme della classe b (anche a == b).
+     */
+    public static boolean isAbstractSubset(int a, int b) {
+        return (SUBSETS[b * WORDS + (a >>> 6)] & (1L << a)) != 0;
+    }
+
+    /**
+     * @return Le classi (identificativi in ordine di Forte) che includono propriamente la classe indicata.
+     */
+    public static int[] supersetClasses(int classId) {
+        return properMembers(SUPERSETS, classId);
+    }
+
+    /**
+     * @return Le classi (identificativi in ordine di Forte) incluse propriamente nella classe indicata,
+     * compresi l'insieme vuoto e le classi di cardinalità 1.
+     */
+    public static int[] subsetClasses(int classId) {
+        return properMembers(SUBSETS, classId);
+    }
+
+    /**
+     * Complesso K del nexus T: le classi S in relazione di inclusione (in un verso o nell'altro) con T o
+     * con il suo complemento. Come in Forte, sono escluse le classi con la cardinalità di T o del suo
+     * complemento, e si considerano solo le cardinalità 3-9.
+     * @param nexusClass La classe del nexus.
+     * @return Le classi del complesso, in ordine di Forte.
+     */
+    public static int[] complexK(int nexusClass) {
+        return complex(nexusClass, false);
+    }
+
+    /**
+     * Sottocomplesso Kh del nexus T: le classi in relazione di inclusione sia con T sia con il suo complemento.
+     * @param nexusClass La classe del nexus.
+     * @return Le classi del sottocomplesso, in ordine di Forte.
+     */
+    public static int[] complexKh(int nexusClass) {
+        return complex(nexusClass, true);
+    }
+
+    public static boolean isInK(int classId, int nexusClass) {
+        return isComplexCandidate(classId, nexusClass)
+               && (isRelated(classId, nexusClass) || isRelated(classId, SetClassCatalog.complementClass(nexusClass)));
+    }
+
+    public static boolean isInKh(int classId, int nexusClass) {
+        return isComplexCandidate(classId, nexusClass)
+               && isRelated(classId, nexusClass) && isRelated(classId, SetClassCatalog.complementClass(nexusClass));
+    }
+
+    private static boolean isRelated(int a, int b) {
+        return isAbstractSubset(a, b) || isAbstractSubset(b, a);
+    }
+
+    private static boolean isComplexCandidate(int classId, int nexusClass) {
+        int cardinality = SetClassCatalog.cardinality(classId);
+        int nexusCardinality = SetClassCatalog.cardinality(nexusClass);
+        return cardinality >= 3 && cardinality <= 9
+               && cardinality != nexusCardinality && cardinality != PcSet.MODULUS - nexusCardinality;
+    }
+
+    private static int[] complex(int nexusClass, boolean kh) {
+        int complementClass = SetClassCatalog.complementClass(nexusClass);
+        long[] related = new long[WORDS];
+        for (int w = 0; w < WORDS; w++) {
+            long withNexus = SUBSETS[nexusClass * WORDS + w] | SUPERSETS[nexusClass * WORDS + w];
+            long withComplement = SUBSETS[complementClass * WORDS + w] | SUPERSETS[complementClass * WORDS + w];
+            related[w] = kh ? withNexus & withComplement : withNexus | withComplement;
+        }
+        int count = 0;
+        int[] members = new int[SetClassCatalog.CLASS_COUNT];
+        for (int w = 0; w < WORDS; w++) {
+            for (long bits = related[w]; bits != 0; bits &= bits - 1) {
+                int classId = w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                if (isComplexCandidate(classId, nexusClass)) {
+                    members[count++] = classId;
+                }
+            }
+        }
+        return Arrays.copyOf(members, count);
+    }
+
+    // Estrae gli identificativi dal bitset della classe, esclusa la classe stessa
+    private static int[] properMembers(long[] table, int classId) {
+        int count = 0;
+        for (int w = 0; w < WORDS; w++) {
+            count += Long.bitCount(table[classId * WORDS + w]);
+        }
+        int[] members = new int[count - 1];
+        int next = 0;
+        for (int w = 0; w < WORDS; w++) {
+            for (long bits = table[classId * WORDS + w]; bits != 0; bits &= bits - 1) {
+                int member = w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                if (member != classId) {
+                    members[next++] = member;
+                }
+            }
+        }
+        return members;
+    }
+}
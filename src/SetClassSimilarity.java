@@ -0,0 +1,288 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Misure di somiglianza tra classi di insiemi e indice dei vicini più prossimi.
+ *
+ * Le misure dipendono solo dalla classe T_n/T_nI, quindi per le 224 classi vengono precalcolate una volta
+ * la tabella completa delle distanze e, per ogni classe, l'elenco delle altre classi ordinate per distanza
+ * crescente. "Le k classi più simili" è la lettura dei primi k elementi dell'elenco e "tutte le classi entro
+ * la distanza d" una ricerca binaria sulle distanze ordinate: nessuna misura viene calcolata durante
+ * l'interrogazione. Un corpus di set arbitrari viene indicizzato raggruppando i set per classe (vedi CorpusIndex).
+ *
+ * Le distanze non definite (ANGLE con un vettore nullo, ATMEMB tra classi senza sottoinsiemi di almeno due
+ * note) valgono NaN e le classi corrispondenti non compaiono negli elenchi dei vicini.
+ */
+public final class SetClassSimilarity {
+
+    /**
+     * Misure di distanza (0 = massima somiglianza).
+     */
+    public enum Metric {
+        /** SIM di Morris: somma delle differenze assolute tra i vettori delle classi di intervalli. */
+        SIM,
+        /** IcVSIM di Isaacson: deviazione standard delle differenze tra i vettori delle classi di intervalli. */
+        ICVSIM,
+        /** ANGLE di Scott e Isaacson: angolo in gradi tra i vettori delle classi di intervalli. */
+        ANGLE,
+        /** ATMEMB di Rahn: 1 - (sottoinsiemi di classi comuni) / (sottoinsiemi di almeno due note dei due set). */
+        ATMEMB;
+
+        /**
+         * @param name Il nome della misura (maiuscole o minuscole).
+         * @throws IllegalArgumentException Se il nome non corrisponde a nessuna misura.
+         */
+        public static Metric fromName(String name) {
+            for (Metric metric : values()) {
+                if (metric.name().equalsIgnoreCase(name.trim())) {
+                    return metric;
+                }
+            }
+            throw new IllegalArgumentException("Errore: Misura '" + name + "' non valida. Valori ammessi: sim, icvsim, angle, atmemb.");
+        }
+    }
+
+    private static final int CLASSES = SetClassCatalog.CLASS_COUNT;
+    private static final int METRICS = Metric.values().length;
+
+    // Per ogni misura: distanze [a * CLASSES + b], vicini di a ordinati (esclusa a) e relative distanze
+    private static final double[][] DISTANCE = new double[METRICS][CLASSES * CLASSES];
+    private static final short[][] NEIGHBORS = new short[METRICS][CLASSES * CLASSES];
+    private static final double[][] NEIGHBOR_DISTANCE = new double[METRICS][CLASSES * CLASSES];
+    private static final short[][] NEIGHBOR_COUNT = new short[METRICS][CLASSES];
+
+    static {
+        // Vettori di inclusione per ATMEMB: numero di sottoinsiemi di almeno due note di ogni classe
+        int[][] embedding = new int[CLASSES][CLASSES];
+        int[] subsetTotal = new int[CLASSES];
+        for (int c = 0; c < CLASSES; c++) {
+            int mask = SetClassCatalog.primeFormMask(c);
+            for (int sub = mask; sub != 0; sub = (sub - 1) & mask) {
+                if (Integer.bitCount(sub) >= 2) {
+                    embedding[c][SetClassCatalog.classOf(sub)]++;
+                    subsetTotal[c]++;
+                }
+            }
+        }
+
+        int[][] icv = new int[CLASSES][];
+        for (int c = 0; c < CLASSES; c++) {
+            icv[c] = SetClassCatalog.intervalVector(c);
+        }
+        for (int a = 0; a < CLASSES; a++) {
+            for (int b = 0; b < CLASSES; b++) {
+                int cell = a * CLASSES + b;
+                DISTANCE[Metric.SIM.ordinal()][cell] = sim(icv[a], icv[b]);
+                DISTANCE[Metric.ICVSIM.ordinal()][cell] = icvSim(icv[a], icv[b]);
+                DISTANCE[Metric.ANGLE.ordinal()][cell] = a == b ? 0 : angle(icv[a], icv[b]);
+                DISTANCE[Metric.ATMEMB.ordinal()][cell] = a == b ? 0 : atmemb(embedding[a], subsetTotal[a], embedding[b], subsetTotal[b]);
+            }
+        }
+
+        Integer[] order = new Integer[CLASSES];
+        for (int m = 0; m < METRICS; m++) {
+            double[] distances = DISTANCE[m];
+            for (int a = 0; a < CLASSES; a++) {
+                int row = a * CLASSES;
+                int count = 0;
+                for (int b = 0; b < CLASSES; b++) {
+                    if (b != a && !Double.isNaN(distances[row + b])) {
+                        order[count++] = b;
+                    }
+                }
+                // A parità di distanza resta l'ordine di Forte
+                Arrays.sort(order, 0, count, (x, y) -> Double.compare(distances[row + x], distances[row + y]));
+                for (int i = 0; i < count; i++) {
+                    NEIGHBORS[m][row + i] = (short) (int) order[i];
+                    NEIGHBOR_DISTANCE[m][row + i] = distances[row + order[i]];
+                }
+                NEIGHBOR_COUNT[m][a] = (short) count;
+            }
+        }
+    }
+
+    private SetClassSimilarity() {
+    }
+
+    private static double sim(int[] a, int[] b) {
+        int sum = 0;
+        for (int i = 0; i < 6; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return sum;
+    }
+
+    private static double icvSim(int[] a, int[] b) {
+        double mean = 0;
+        for (int i = 0; i < 6; i++) {
+            mean += b[i] - a[i];
+        }
+        mean /= 6;
+        double variance = 0;
+        for (int i = 0; i < 6; i++) {
+            double deviation = b[i] - a[i] - mean;
+            variance += deviation * deviation;
+        }
+        return Math.sqrt(variance / 6);
+    }
+
+    private static double angle(int[] a, int[] b) {
+        long dot = 0;
+        long normA = 0;
+        long normB = 0;
+        for (int i = 0; i < 6; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0 || normB == 0) {
+            return Double.NaN;
+        }
+        double cosine = dot / Math.sqrt((double) normA * normB);
+        return Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, cosine))));
+    }
+
+    private static double atmemb(int[] embA, int totalA, int[] embB, int totalB) {
+        if (totalA + totalB == 0) {
+            return Double.NaN;
+        }
+        int common = 0;
+        for (int c = 0; c < CLASSES; c++) {
+            if (embA[c] > 0 && embB[c] > 0) {
+                common += embA[c] + embB[c];
+            }
+        }
+        return 1 - (double) common / (totalA + totalB);
+    }
+
+    /**
+     * @return La distanza tra due classi (identificativi di SetClassCatalog), 0 se coincidono, NaN se non definita.
+     */
+    public static double distance(Metric metric, int classA, int classB) {
+        return DISTANCE[metric.ordinal()][classA * CLASSES + classB];
+    }
+
+    /**
+     * @param primeForm Una Prime Form (o un qualsiasi set) come restituita da PitchSetAnalyzer.getPrimeForm.
+     * @return L'identificativo della classe in SetClassCatalog.
+     */
+    public static int classOf(List<Integer> primeForm) {
+        return SetClassCatalog.classOf(PcSet.fromList(primeForm).mask());
+    }
+
+    /**
+     * @return Le k classi più vicine alla classe indicata (esclusa se stessa), in ordine di distanza crescente.
+     */
+    public static int[] nearestClasses(Metric metric, int classId, int k) {
+        int count = Math.min(Math.max(k, 0), NEIGHBOR_COUNT[metric.ordinal()][classId]);
+        return toIntArray(NEIGHBORS[metric.ordinal()], classId * CLASSES, count);
+    }
+
+    /**
+     * @return Le classi a distanza non superiore a maxDistance (esclusa se stessa), in ordine di distanza crescente.
+     */
+    public static int[] classesWithin(Metric metric, int classId, double maxDistance) {
+        return toIntArray(NEIGHBORS[metric.ordinal()], classId * CLASSES, countWithin(metric, classId, maxDistance));
+    }
+
+    // Numero di vicini a distanza <= maxDistance: ricerca binaria sulle distanze ordinate
+    private static int countWithin(Metric metric, int classId, double maxDistance) {
+        double[] distances = NEIGHBOR_DISTANCE[metric.ordinal()];
+        int row = classId * CLASSES;
+        int low = 0;
+        int high = NEIGHBOR_COUNT[metric.ordinal()][classId];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (distances[row + middle] <= maxDistance) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int[] toIntArray(short[] values, int offset, int count) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = values[offset + i];
+        }
+        return result;
+    }
+
+    /**
+     * Indice di un corpus di set arbitrari: i set vengono raggruppati per classe (counting sort), quindi una
+     * interrogazione percorre i gruppi nell'ordine dei vicini della classe del set cercato e si ferma appena ha
+     * raccolto abbastanza risultati o supera la distanza massima. Le istanze sono immutabili e thread-safe.
+     */
+    public static final class CorpusIndex {
+        private final int[] start = new int[CLASSES + 1]; // Gruppo della classe c: members[start[c] .. start[c+1])
+        private final int[] members;
+
+        /**
+         * @param masks Le maschere dei set del corpus; i risultati delle interrogazioni sono indici in questo array.
+         */
+        public CorpusIndex(int[] masks) {
+            for (int mask : masks) {
+                start[SetClassCatalog.classOf(mask) + 1]++;
+            }
+            for (int c = 0; c < CLASSES; c++) {
+                start[c + 1] += start[c];
+            }
+            int[] fill = Arrays.copyOf(start, CLASSES);
+            members = new int[masks.length];
+            for (int i = 0; i < masks.length; i++) {
+                members[fill[SetClassCatalog.classOf(masks[i])]++] = i;
+            }
+        }
+
+        public int size() {
+            return members.length;
+        }
+
+        /**
+         * @return Gli indici dei k set del corpus più vicini al set indicato (compresi quelli della sua stessa
+         * classe), in ordine di distanza crescente; a parità di distanza, in ordine di Forte e poi di indice.
+         */
+        public int[] nearest(Metric metric, int mask, int k) {
+            return collect(metric, SetClassCatalog.classOf(mask), Math.max(k, 0), Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * @return Gli indici dei set del corpus a distanza non superiore a maxDistance dal set indicato,
+         * in ordine di distanza crescente.
+         */
+        public int[] within(Metric metric, int mask, double maxDistance) {
+            return collect(metric, SetClassCatalog.classOf(mask), Integer.MAX_VALUE, maxDistance);
+        }
+
+        private int[] collect(Metric metric, int classId, int limit, double maxDistance) {
+            if (maxDistance < 0) {
+                return new int[0];
+            }
+            int neighborCount = countWithin(metric, classId, maxDistance);
+            short[] neighbors = NEIGHBORS[metric.ordinal()];
+            int row = classId * CLASSES;
+            int total = groupSize(classId);
+            for (int i = 0; i < neighborCount && total < limit; i++) {
+                total += groupSize(neighbors[row + i]);
+            }
+            int[] result = new int[Math.min(total, limit)];
+            int size = append(classId, result, 0);
+            for (int i = 0; i < neighborCount && size < result.length; i++) {
+                size = append(neighbors[row + i], result, size);
+            }
+            return result;
+        }
+
+        private int groupSize(int classId) {
+            return start[classId + 1] - start[classId];
+        }
+
+        private int append(int classId, int[] result, int size) {
+            int count = Math.min(groupSize(classId), result.length - size);
+            System.arraycopy(members, start[classId], result, size, count);
+            return size + count;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Segmentazione di un flusso di attacchi (onset) con una finestra temporale scorrevole.
+ * Ogni attacco contribuisce la propria pitch class per windowLength unità di tempo; gli attacchi scaduti
+ * escono dalla finestra in ordine di arrivo. La finestra è una coda circolare di array primitivi e il set
+ * attivo è mantenuto da un IncrementalPcSetTracker, quindi ogni evento costa O(1) ammortizzato e il
+ * listener riceve solo i cambi di classe di insiemi. Le scadenze e gli attacchi dello stesso istante vengono
+ * accorpati come nel tracker: alla fine del flusso va chiamato flush.
+ *
+ * Gli istanti devono essere non decrescenti. Le istanze non sono thread-safe.
+ */
+public class SlidingWindowAnalyzer {
+
+    private final long windowLength;
+    private final IncrementalPcSetTracker tracker;
+
+    // Coda circolare degli attacchi nella finestra (istante e pitch class)
+    private long[] times = new long[64];
+    private byte[] pcs = new byte[64];
+    private int head;
+    private int size;
+    private long lastTime = Long.MIN_VALUE;
+
+    /**
+     * @param windowLength La durata della finestra (nell'unità del flusso, es. tick MIDI o millisecondi), positiva.
+     * @param listener Il destinatario dei cambi di classe (può essere null).
+     */
+    public SlidingWindowAnalyzer(long windowLength, IncrementalPcSetTracker.SetClassListener listener) {
+        if (windowLength <= 0) {
+            throw new IllegalArgumentException("Errore: La durata della finestra deve essere positiva.");
+        }
+        this.windowLength = windowLength;
+        this.tracker = new IncrementalPcSetTracker(listener);
+    }
+
+    /**
+     * Aggiunge un attacco e fa scorrere la finestra fino al suo istante.
+     * @param time L'istante dell'attacco (non inferiore a quello dell'evento precedente).
+     * @param pitch L'altezza o la pitch class.
+     */
+    public void onset(long time, int pitch) {
+        advanceTo(time);
+        if (size == times.length) {
+            grow();
+        }
+        int tail = (head + size) % times.length;
+        times[tail] = time;
+        pcs[tail] = (byte) PitchSetUtils.normalizePc(pitch);
+        size++;
+        tracker.noteOn(time, pitch);
+    }
+
+    /**
+     * Fa scorrere la finestra: escono gli attacchi con istante <= time - windowLength.
+     * Ogni attacco scade all'istante esatto time + windowLength.
+     * @param time Il nuovo istante corrente.
+     */
+    public void advanceTo(long time) {
+        if (time < lastTime) {
+            throw new IllegalArgumentException("Errore: Gli eventi devono avere istanti non decrescenti (" + time + " < " + lastTime + ").");
+        }
+        lastTime = time;
+        while (size > 0 && times[head] + windowLength <= time) {
+            tracker.noteOff(times[head] + windowLength, pcs[head]);
+            head = (head + 1) % times.length;
+            size--;
+        }
+    }
+
+    /**
+     * Notifica l'eventuale cambio di classe dell'ultimo istante (vedi IncrementalPcSetTracker.flush).
+     * Va chiamato alla fine del flusso, dopo l'ultimo advanceTo.
+     */
+    public void flush() {
+        tracker.flush();
+    }
+
+    private void grow() {
+        long[] newTimes = new long[times.length * 2];
+        byte[] newPcs = new byte[pcs.length * 2];
+        for (int i = 0; i < size; i++) {
+            newTimes[i] = times[(head + i) % times.length];
+            newPcs[i] = pcs[(head + i) % pcs.length];
+        }
+        times = newTimes;
+        pcs = newPcs;
+        head = 0;
+    }
+
+    /** @return La maschera delle pitch classes nella finestra. */
+    public int getMask() {
+        return tracker.getMask();
+    }
+
+    /** @return La classe di insiemi della finestra corrente (identificativo di SetClassCatalog). */
+    public int getClassId() {
+        return tracker.getClassId();
+    }
+
+    /** @return Il numero di attacchi nella finestra. */
+    public int getWindowSize() {
+        return size;
+    }
+
+    public IncrementalPcSetTracker getTracker() {
+        return tracker;
+    }
+}
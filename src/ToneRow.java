@@ -0,0 +1,263 @@
+import java.util.Arrays;
+
+/**
+ * Serie dodecafonica: una permutazione ordinata delle 12 pitch classes.
+ * A differenza di PcSet, qui l'ordine è significativo e tutte le operazioni lavorano su array primitivi.
+ *
+ * Convenzioni di denominazione delle 48 forme (etichettatura assoluta):
+ * - P_n: la serie trasposta in modo che inizi con la pitch class n;
+ * - I_n: l'inversione della serie che inizia con n;
+ * - R_n: la retrogradazione di P_n (termina con n);
+ * - RI_n: la retrogradazione di I_n (termina con n).
+ * Le forme sono indicizzate da 0 a 47 come tipo * 12 + n (P, I, R, RI).
+ */
+public final class ToneRow {
+
+    public static final int SIZE = PcSet.MODULUS;
+    public static final int FORM_COUNT = 4 * SIZE;
+
+    private static final String[] TYPE_NAMES = {"P", "I", "R", "RI"};
+
+    private final byte[] pcs;
+
+    private ToneRow(byte[] pcs) {
+        this.pcs = pcs;
+    }
+
+    /**
+     * @param pcs Le 12 pitch classes della serie, nell'ordine.
+     * @throws IllegalArgumentException Se non sono esattamente le 12 pitch classes 0-11, ciascuna una sola volta.
+     */
+    public static ToneRow of(int... pcs) {
+        return new ToneRow(validate(pcs, pcs.length));
+    }
+
+    /**
+     * Interpreta una serie scritta come le pitch classes di PitchClassParser ("0 e 7 8 3 1 2 t 6 5 4 9",
+     * "0,11,7,...") oppure in forma compatta di 12 caratteri senza separatori ("0e78312t6549").
+     * @throws IllegalArgumentException Se l'input non è una serie dodecafonica valida.
+     */
+    public static ToneRow parse(CharSequence input) {
+        int[] values = new int[SIZE];
+        int count;
+        if (isCompact(input)) {
+            for (int i = 0; i < SIZE; i++) {
+                char c = Character.toLowerCase(input.charAt(i));
+                values[i] = c == 't' ? 10 : c == 'e' ? 11 : c - '0';
+            }
+            count = SIZE;
+        } else {
+            count = PitchClassParser.parseSequence(input, values);
+        }
+        return new ToneRow(validate(values, count));
+    }
+
+    // Compatta: esattamente 12 caratteri tra 0-9, 't' ed 'e', senza separatori
+    private static boolean isCompact(CharSequence input) {
+        if (input == null || input.length() != SIZE) {
+            return false;
+        }
+        for (int i = 0; i < SIZE; i++) {
+            char c = Character.toLowerCase(input.charAt(i));
+            if (!(c >= '0' && c <= '9') && c != 't' && c != 'e') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] validate(int[] values, int count) {
+        if (count != SIZE) {
+            throw new IllegalArgumentException("Errore: Una serie deve contenere esattamente " + SIZE + " pitch classes (trovate " + count + ").");
+        }
+        byte[] row = new byte[SIZE];
+        int seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            int pc = values[i];
+            if (pc < 0 || pc >= SIZE) {
+                throw new IllegalArgumentException("Errore: La pitch class '" + pc + "' è fuori dal range consentito (0-11).");
+            }
+            if ((seen & (1 << pc)) != 0) {
+                throw new IllegalArgumentException("Errore: La pitch class '" + pc + "' compare più di una volta nella serie.");
+            }
+            seen |= 1 << pc;
+            row[i] = (byte) pc;
+        }
+        return row;
+    }
+
+    public int get(int position) {
+        return pcs[position];
+    }
+
+    public int[] toArray() {
+        int[] row = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            row[i] = pcs[i];
+        }
+        return row;
+    }
+
+    // Forme della serie
+
+    /**
+     * @return Il nome della forma con l'indice dato (es. "P0", "I7", "R11", "RI3").
+     */
+    public static String formName(int formIndex) {
+        return TYPE_NAMES[formIndex / SIZE] + (formIndex % SIZE);
+    }
+
+    /**
+     * Scrive una delle 48 forme nell'array fornito.
+     * @param formIndex L'indice della forma (tipo * 12 + n, con tipo 0 = P, 1 = I, 2 = R, 3 = RI).
+     * @param dest L'array di destinazione (almeno 12 elementi).
+     */
+    public void form(int formIndex, int[] dest) {
+        int type = formIndex / SIZE;
+        int n = formIndex % SIZE;
+        boolean inverted = type == 1 || type == 3;
+        boolean retrograde = type >= 2;
+        int first = pcs[0];
+        for (int i = 0; i < SIZE; i++) {
+            // Intervallo dalla prima nota, invertito per I/RI; n è sempre la prima nota della forma non retrograda
+            int interval = pcs[i] - first;
+            int pc = PitchSetUtils.normalizePc(n + (inverted ? -interval : interval));
+            dest[retrograde ? SIZE - 1 - i : i] = pc;
+        }
+    }
+
+    public int[] form(int formIndex) {
+        int[] dest = new int[SIZE];
+        form(formIndex, dest);
+        return dest;
+    }
+
+    /**
+     * Costruisce la matrice 12x12 in un array row-major (matrix[r * 12 + c]).
+     * La prima riga è la serie stessa; la riga r è P_m con m = matrix[r * 12], la colonna c letta dall'alto è
+     * I_m con m = matrix[c]. Le righe lette da destra sono le forme R, le colonne lette dal basso le forme RI.
+     * @param dest L'array di destinazione (almeno 144 elementi).
+     */
+    public void matrix(int[] dest) {
+        int first = pcs[0];
+        for (int r = 0; r < SIZE; r++) {
+            int rowStart = PitchSetUtils.normalizePc(2 * first - pcs[r]); // Prima colonna: l'inversione I_first
+            for (int c = 0; c < SIZE; c++) {
+                dest[r * SIZE + c] = PitchSetUtils.normalizePc(rowStart + pcs[c] - first);
+            }
+        }
+    }
+
+    public int[] matrix() {
+        int[] dest = new int[SIZE * SIZE];
+        matrix(dest);
+        return dest;
+    }
+
+    // Invarianze
+
+    /**
+     * Raggruppa le forme identiche come sequenze ordinate (simmetrie della serie, es. P0 = RI6).
+     * Ogni forma viene codificata in un long (12 pitch classes da 4 bit) insieme al proprio indice;
+     * l'ordinamento dei codici porta le forme identiche in posizioni adiacenti.
+     *
+     * @param dest Array di almeno 48 elementi: dest[f] riceve l'indice della prima forma identica a f
+     * (f stessa se la forma è unica).
+     * @return Il numero di forme distinte.
+     */
+    public int formEquivalences(int[] dest) {
+        long[] keys = new long[FORM_COUNT];
+        int[] form = new int[SIZE];
+        for (int f = 0; f < FORM_COUNT; f++) {
+            form(f, form);
+            keys[f] = (pack(form) << 6) | f;
+        }
+        Arrays.sort(keys);
+        int distinct = 0;
+        long previous = -1;
+        int representative = 0;
+        for (long key : keys) {
+            int f = (int) (key & 0x3F);
+            if (key >>> 6 != previous) {
+                previous = key >>> 6;
+                representative = f; // Le chiavi uguali sono ordinate per indice: il primo è il minore
+                distinct++;
+            }
+            dest[f] = representative;
+        }
+        return distinct;
+    }
+
+    /**
+     * Trova le forme che conservano il contenuto dei segmenti della serie: ogni segmento consecutivo di
+     * segmentSize note contiene le stesse pitch classes (in qualsiasi ordine) del segmento corrispondente di P,
+     * la serie stessa. Con segmentSize = 6 sono le forme che conservano gli esacordi.
+     *
+     * @param segmentSize La lunghezza dei segmenti (un divisore di 12: 1, 2, 3, 4, 6 o 12).
+     * @return Gli indici delle forme invarianti, in ordine crescente (comprende sempre la serie stessa).
+     */
+    public int[] segmentInvariantForms(int segmentSize) {
+        if (segmentSize <= 0 || SIZE % segmentSize != 0) {
+            throw new IllegalArgumentException("Errore: La lunghezza dei segmenti deve dividere " + SIZE + " (1, 2, 3, 4, 6 o 12).");
+        }
+        int segments = SIZE / segmentSize;
+        int[] reference = new int[segments];
+        segmentMasks(toArray(), segmentSize, reference);
+
+        int[] found = new int[FORM_COUNT];
+        int count = 0;
+        int[] form = new int[SIZE];
+        int[] masks = new int[segments];
+        for (int f = 0; f < FORM_COUNT; f++) {
+            form(f, form);
+            segmentMasks(form, segmentSize, masks);
+            if (Arrays.equals(masks, reference)) {
+                found[count++] = f;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    private static void segmentMasks(int[] row, int segmentSize, int[] dest) {
+        for (int s = 0; s < dest.length; s++) {
+            int mask = 0;
+            for (int i = s * segmentSize; i < (s + 1) * segmentSize; i++) {
+                mask |= 1 << row[i];
+            }
+            dest[s] = mask;
+        }
+    }
+
+    // 12 pitch classes da 4 bit in 48 bit
+    private static long pack(int[] row) {
+        long key = 0;
+        for (int i = 0; i < SIZE; i++) {
+            key = (key << 4) | row[i];
+        }
+        return key;
+    }
+
+    /**
+     * @return La forma P della serie nella notazione compatta con 't' ed 'e' (es. "0e78312t6549").
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(SIZE);
+        for (byte pc : pcs) {
+            sb.append(pc == 10 ? 't' : pc == 11 ? 'e' : (char) ('0' + pc));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(pcs, ((ToneRow) o).pcs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(pcs);
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Analisi in blocco di serie dodecafoniche: legge una serie per riga e scrive, per ciascuna, la matrice 12x12,
+ * le forme coincidenti (simmetrie della serie) e le forme che conservano gli esacordi, in formato TSV,
+ * JSON Lines o binario (vedi PcSetRenderer). Come PitchSetBatchProcessor elabora una riga alla volta con
+ * buffer riutilizzati e scrive un record di errore per le righe non valide senza interrompere l'elaborazione.
+ */
+public class ToneRowBatchProcessor {
+
+    private static final String[] COLUMNS = {"input", "row", "matrix", "equivalent_forms", "hexachord_invariant_forms", "error"};
+    private static final String[] FORM_NAMES = new String[ToneRow.FORM_COUNT];
+
+    static {
+        for (int f = 0; f < ToneRow.FORM_COUNT; f++) {
+            FORM_NAMES[f] = ToneRow.formName(f);
+        }
+    }
+
+    private final PitchSetBatchProcessor.OutputFormat format;
+    private final int[] matrix = new int[ToneRow.SIZE * ToneRow.SIZE];
+    private final int[] equivalences = new int[ToneRow.FORM_COUNT];
+    // Coppie "rappresentante=forma" e nomi delle forme del record corrente, riutilizzati
+    private final StringBuilder[] pairs = new StringBuilder[ToneRow.FORM_COUNT];
+    private final String[] names = new String[ToneRow.FORM_COUNT];
+
+    public ToneRowBatchProcessor(PitchSetBatchProcessor.OutputFormat format) {
+        this.format = format;
+        for (int f = 0; f < ToneRow.FORM_COUNT; f++) {
+            pairs[f] = new StringBuilder(8);
+        }
+    }
+
+    /**
+     * Elabora tutte le righe del reader e scrive i risultati sullo stream.
+     * Le righe vuote vengono ignorate. Lo stream viene svuotato (flush) ma non chiuso.
+     *
+     * @return Il numero di righe elaborate.
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    public long process(BufferedReader reader, OutputStream out) throws IOException {
+        PcSetRenderer renderer = PcSetRenderer.create(format.toRendererFormat(), out, COLUMNS);
+
+        long count = 0;
+        String input;
+        while ((input = reader.readLine()) != null) {
+            String trimmed = input.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            ToneRow row = null;
+            String error = null;
+            try {
+                row = ToneRow.parse(trimmed);
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+            renderer.text(input);
+            if (row != null) {
+                appendResult(renderer, row);
+            } else {
+                renderer.absent().absent().absent().absent().text(error);
+            }
+            renderer.endRecord();
+            count++;
+        }
+        renderer.flush();
+        return count;
+    }
+
+    private void appendResult(PcSetRenderer renderer, ToneRow row) {
+        row.matrix(matrix);
+        row.formEquivalences(equivalences);
+        int[] hexachordForms = row.segmentInvariantForms(6);
+
+        // Una coppia per ogni forma identica a una forma di indice minore
+        int pairCount = 0;
+        for (int f = 0; f < ToneRow.FORM_COUNT; f++) {
+            if (equivalences[f] != f) {
+                StringBuilder pair = pairs[pairCount++];
+                pair.setLength(0);
+                pair.append(FORM_NAMES[equivalences[f]]).append('=').append(FORM_NAMES[f]);
+            }
+        }
+        for (int i = 0; i < hexachordForms.length; i++) {
+            names[i] = FORM_NAMES[hexachordForms[i]];
+        }
+
+        renderer.text(row.toString()).matrix(matrix, ToneRow.SIZE, ToneRow.SIZE)
+                .texts(pairs, pairCount).texts(names, hexachordForms.length).absent();
+    }
+}
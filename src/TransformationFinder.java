@@ -0,0 +1,274 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Ricerca degli operatori T_n e I_n che trasformano un set in un altro e delle note comuni (invarianti)
+ * sotto ciascun operatore.
+ *
+ * Gli operatori sono indicizzati come le forme di ToneRow: 0-11 per T_n, 12-23 per I_n; un insieme di
+ * operatori è una maschera a 24 bit. Tutto lavora sulle maschere a 12 bit: T_n è una rotazione, I_n è la
+ * rotazione della maschera rovesciata, e le note comuni tra op(A) e B sono il popcount di op(A) & B.
+ * Una coppia richiede quindi 24 rotazioni e confronti al posto di 24 liste trasposte o invertite.
+ *
+ * La modalità a coppie su un corpus evita il confronto di tutte le coppie: i set vengono raggruppati per
+ * maschera, e per ogni set si visitano soltanto i gruppi delle sue (al più 24) immagini distinte. Le righe
+ * vengono distribuite tra i core con uno stream parallelo.
+ */
+public class TransformationFinder {
+
+    public static final int OPERATOR_COUNT = 2 * PcSet.MODULUS;
+
+    private static final String[] OPERATOR_NAMES = new String[OPERATOR_COUNT];
+
+    static {
+        for (int op = 0; op < OPERATOR_COUNT; op++) {
+            OPERATOR_NAMES[op] = (op < PcSet.MODULUS ? "T" : "I") + (op % PcSet.MODULUS);
+        }
+    }
+
+    /**
+     * Riceve le coppie (i, j), con i < j, per cui almeno un operatore trasforma il set i nel set j.
+     * Viene invocato da più thread contemporaneamente.
+     */
+    public interface PairConsumer {
+        /**
+         * @param i L'indice del primo set.
+         * @param j L'indice del secondo set (maggiore di i).
+         * @param operators Gli operatori che trasformano il set i nel set j (bit = indice dell'operatore).
+         */
+        void accept(int i, int j, int operators);
+    }
+
+    /**
+     * @param operator L'indice dell'operatore (0-23).
+     * @return Il nome dell'operatore (es. "T3" o "I5").
+     */
+    public static String operatorName(int operator) {
+        if (operator < 0 || operator >= OPERATOR_COUNT) {
+            throw new IllegalArgumentException("Errore: Indice di operatore non valido (" + operator + ").");
+        }
+        return OPERATOR_NAMES[operator];
+    }
+
+    /**
+     * @param operators Una maschera di operatori.
+     * @return I nomi degli operatori separati da spazi, in ordine di indice (stringa vuota se nessuno).
+     */
+    public static String operatorNames(int operators) {
+        StringBuilder names = new StringBuilder();
+        for (int remaining = operators; remaining != 0; remaining &= remaining - 1) {
+            if (names.length() > 0) {
+                names.append(' ');
+            }
+            names.append(operatorName(Integer.numberOfTrailingZeros(remaining)));
+        }
+        return names.toString();
+    }
+
+    /**
+     * Applica un operatore a una maschera.
+     * @param mask La maschera del set.
+     * @param operator L'indice dell'operatore (0-23).
+     * @return La maschera trasformata.
+     */
+    public static int apply(int mask, int operator) {
+        return operator < PcSet.MODULUS ? PcSet.transposeMask(mask, operator) : PcSet.invertMask(mask, operator - PcSet.MODULUS);
+    }
+
+    /**
+     * @param a La maschera del set di partenza.
+     * @param b La maschera del set di arrivo.
+     * @return Gli operatori op con op(A) = B (bit = indice dell'operatore), 0 se A e B non sono nella stessa classe.
+     */
+    public static int operators(int a, int b) {
+        a &= PcSet.FULL_MASK;
+        b &= PcSet.FULL_MASK;
+        if (Integer.bitCount(a) != Integer.bitCount(b)) {
+            return 0;
+        }
+        int reversed = PcSet.reverseMask(a);
+        int operators = 0;
+        for (int n = 0; n < PcSet.MODULUS; n++) {
+            if (rotate(a, n) == b) {
+                operators |= 1 << n;
+            }
+            if (rotate(reversed, n + 1) == b) {
+                operators |= 1 << (PcSet.MODULUS + n);
+            }
+        }
+        return operators;
+    }
+
+    /**
+     * Calcola le note comuni sotto ogni operatore: dest[op] = |op(A) ∩ B|.
+     * Con a = b si ottiene la matrice di invarianza T/I del set.
+     *
+     * @param a La maschera del set da trasformare.
+     * @param b La maschera del set di confronto.
+     * @param dest L'array di destinazione (almeno OPERATOR_COUNT elementi).
+     */
+    public static void invariance(int a, int b, int[] dest) {
+        a &= PcSet.FULL_MASK;
+        b &= PcSet.FULL_MASK;
+        int reversed = PcSet.reverseMask(a);
+        for (int n = 0; n < PcSet.MODULUS; n++) {
+            dest[n] = Integer.bitCount(rotate(a, n) & b);
+            dest[PcSet.MODULUS + n] = Integer.bitCount(rotate(reversed, n + 1) & b);
+        }
+    }
+
+    /**
+     * Calcola in parallelo la matrice di invarianza di ogni set di un corpus.
+     * @param masks Le maschere dei set.
+     * @param dest L'array di destinazione: le note comuni del set k sotto l'operatore op sono in
+     *             dest[k * OPERATOR_COUNT + op] (almeno masks.length * OPERATOR_COUNT elementi).
+     */
+    public static void invarianceMatrices(int[] masks, int[] dest) {
+        if (dest.length < masks.length * OPERATOR_COUNT) {
+            throw new IllegalArgumentException("Errore: L'array di destinazione è troppo corto.");
+        }
+        IntStream.range(0, masks.length).parallel().forEach(k -> {
+            int a = masks[k] & PcSet.FULL_MASK;
+            int reversed = PcSet.reverseMask(a);
+            int base = k * OPERATOR_COUNT;
+            for (int n = 0; n < PcSet.MODULUS; n++) {
+                dest[base + n] = Integer.bitCount(rotate(a, n) & a);
+                dest[base + PcSet.MODULUS + n] = Integer.bitCount(rotate(reversed, n + 1) & a);
+            }
+        });
+    }
+
+    /**
+     * Trova in parallelo tutte le coppie di set di un corpus legate da almeno un operatore T_n o I_n.
+     * Ogni coppia non ordinata viene riportata una sola volta (i < j); set identici sono legati almeno da T_0.
+     *
+     * @param masks Le maschere dei set (12 bit).
+     * @param consumer Il destinatario delle coppie (deve essere thread-safe).
+     * @return Il numero di coppie trovate.
+     */
+    public static long forEachMappingPair(int[] masks, PairConsumer consumer) {
+        for (int mask : masks) {
+            if ((mask & ~PcSet.FULL_MASK) != 0) {
+                throw new IllegalArgumentException("Errore: Maschera non valida (" + mask + ").");
+            }
+        }
+
+        // Raggruppamento per maschera (counting sort): gli indici di ogni gruppo restano in ordine crescente
+        int[] start = new int[PcSet.FULL_MASK + 2];
+        for (int mask : masks) {
+            start[mask + 1]++;
+        }
+        for (int m = 0; m <= PcSet.FULL_MASK; m++) {
+            start[m + 1] += start[m];
+        }
+        int[] byMask = new int[masks.length];
+        int[] fill = Arrays.copyOf(start, PcSet.FULL_MASK + 1);
+        for (int i = 0; i < masks.length; i++) {
+            byMask[fill[masks[i]]++] = i;
+        }
+
+        LongAdder pairs = new LongAdder();
+        IntStream.range(0, masks.length).parallel().forEach(i -> {
+            int a = masks[i];
+            int reversed = PcSet.reverseMask(a);
+            int[] images = new int[OPERATOR_COUNT];
+            for (int n = 0; n < PcSet.MODULUS; n++) {
+                images[n] = rotate(a, n);
+                images[PcSet.MODULUS + n] = rotate(reversed, n + 1);
+            }
+            int visited = 0; // Operatori già considerati come parte di un'immagine precedente
+            long found = 0;
+            for (int op = 0; op < OPERATOR_COUNT; op++) {
+                if ((visited & (1 << op)) != 0) {
+                    continue;
+                }
+                int image = images[op];
+                int operators = 0;
+                for (int other = op; other < OPERATOR_COUNT; other++) {
+                    if (images[other] == image) {
+                        operators |= 1 << other;
+                    }
+                }
+                visited |= operators;
+                int from = Arrays.binarySearch(byMask, start[image], start[image + 1], i + 1);
+                for (int k = from >= 0 ? from : -from - 1; k < start[image + 1]; k++) {
+                    consumer.accept(i, byMask[k], operators);
+                    found++;
+                }
+            }
+            pairs.add(found);
+        });
+        return pairs.sum();
+    }
+
+    /**
+     * Legge un set per riga e scrive tutte le coppie legate da un operatore, con le colonne i, j, a, b e
+     * operators in formato TSV, JSON Lines o binario (vedi PcSetRenderer). Gli indici contano le sole righe
+     * valide, a partire da 0; le righe non valide vengono segnalate su stderr. Le coppie seguono l'ordine di
+     * completamento: i thread di ricerca scrivono un record alla volta, in mutua esclusione sul renderer.
+     * Lo stream viene svuotato ma non chiuso.
+     *
+     * @return Il numero di coppie scritte.
+     * @throws IOException In caso di errori di lettura o scrittura.
+     */
+    public static long writeMappingPairs(BufferedReader reader, OutputStream out, PitchSetBatchProcessor.OutputFormat format) throws IOException {
+        int[] masks = new int[1024];
+        int size = 0;
+        String input;
+        long lineNumber = 0;
+        while ((input = reader.readLine()) != null) {
+            lineNumber++;
+            if (input.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                int mask = PitchClassParser.parseMask(input);
+                if (size == masks.length) {
+                    masks = Arrays.copyOf(masks, masks.length * 2);
+                }
+                masks[size++] = mask;
+            } catch (IllegalArgumentException e) {
+                System.err.println("Riga " + lineNumber + ": " + e.getMessage());
+            }
+        }
+
+        int[] sets = Arrays.copyOf(masks, size);
+        PcSetRenderer renderer = PcSetRenderer.create(format.toRendererFormat(), out, "i", "j", "a", "b", "operators");
+        int[] pcs = new int[PcSet.MODULUS];
+        String[] names = new String[OPERATOR_COUNT];
+        long count;
+        try {
+            count = forEachMappingPair(sets, (i, j, operators) -> {
+                synchronized (renderer) {
+                    int n = 0;
+                    for (int remaining = operators; remaining != 0; remaining &= remaining - 1) {
+                        names[n++] = OPERATOR_NAMES[Integer.numberOfTrailingZeros(remaining)];
+                    }
+                    renderer.number(i).number(j);
+                    renderer.set(pcs, PcSet.fromMask(sets[i]).toArray(pcs));
+                    renderer.set(pcs, PcSet.fromMask(sets[j]).toArray(pcs));
+                    renderer.texts(names, n);
+                    try {
+                        renderer.endRecord();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        renderer.flush();
+        return count;
+    }
+
+    // Rotazione a sinistra di n posizioni (0 <= n <= 12) sui 12 bit, senza normalizzazione
+    private static int rotate(int mask, int n) {
+        return ((mask << n) | (mask >>> (PcSet.MODULUS - n))) & PcSet.FULL_MASK;
+    }
+}
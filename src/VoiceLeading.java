@@ -0,0 +1,298 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * Distanze minime di condotta delle parti (voice leading) tra pc-set, alla maniera di Tymoczko.
+ *
+ * Un set viene rappresentato come in parseAndCleanPitchClasses (pitch classes ordinate senza duplicati) e
+ * "sollevato" sulla retta delle altezze: b'[j + n] = b'[j] + 12, cioè le posizioni successive si ottengono
+ * sommando gli intervalli circolari di getCircularIntervals. Tra due set della stessa cardinalità la
+ * condotta minima per le norme L1, L2 e L∞ non ha incroci, quindi è una delle assegnazioni cicliche
+ * a[i] -> b'[i + k]: basta provare gli scostamenti k, senza permutazioni. Tra set di cardinalità diverse
+ * alcune note si raddoppiano: la condotta minima è un cammino monotono che copre tutte le note dei due set
+ * (programmazione dinamica circolare, O(m * n) per ogni scostamento iniziale).
+ *
+ * I costi sono interi (somma dei moduli, somma dei quadrati o massimo degli spostamenti in semitoni) e
+ * permettono di scartare gli scostamenti il cui primo spostamento supera già il miglior costo trovato.
+ * Le istanze contengono i buffer di lavoro e non sono thread-safe: le modalità parallele ne usano una
+ * per thread.
+ */
+public class VoiceLeading {
+
+    /**
+     * Norma applicata al vettore degli spostamenti delle voci.
+     */
+    public enum Norm {
+        L1, L2, LINF;
+
+        /**
+         * @param name "l1", "l2" o "linf" (maiuscole o minuscole).
+         * @throws IllegalArgumentException Se il nome non corrisponde a nessuna norma.
+         */
+        public static Norm fromName(String name) {
+            for (Norm norm : values()) {
+                if (norm.name().equalsIgnoreCase(name.trim())) {
+                    return norm;
+                }
+            }
+            throw new IllegalArgumentException("Errore: Norma '" + name + "' non valida. Valori ammessi: l1, l2, linf.");
+        }
+
+        // Aggiunge lo spostamento di una voce (in valore assoluto) al costo accumulato
+        int combine(int cost, int displacement) {
+            switch (this) {
+                case L1:
+                    return cost + displacement;
+                case L2:
+                    return cost + displacement * displacement;
+                default:
+                    return Math.max(cost, displacement);
+            }
+        }
+
+        /** @return Il valore della norma corrispondente a un costo intero. */
+        public double finish(int cost) {
+            return this == L2 ? Math.sqrt(cost) : cost;
+        }
+    }
+
+    /** Intestazione dei file di matrice ("VLM1"). */
+    public static final int MATRIX_MAGIC = 0x564C4D31;
+
+    private static final int ROWS_PER_BLOCK = 64;
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    private final Norm norm;
+    private final int[] source = new int[PcSet.MODULUS];
+    private final int[] target = new int[PcSet.MODULUS];
+    private final int[] lifted = new int[4 * PcSet.MODULUS + 1]; // b'[j] per j in [-n, 3n], con offset n
+    private final int[] previousRow = new int[PcSet.MODULUS + 1];
+    private final int[] currentRow = new int[PcSet.MODULUS + 1];
+
+    public VoiceLeading(Norm norm) {
+        this.norm = norm;
+    }
+
+    public Norm getNorm() {
+        return norm;
+    }
+
+    /**
+     * @param a Un set come restituito da parseAndCleanPitchClasses.
+     * @param b Un altro set.
+     * @param norm La norma.
+     * @return La distanza minima di condotta delle parti (NaN se uno solo dei set è vuoto).
+     */
+    public static double distance(List<Integer> a, List<Integer> b, Norm norm) {
+        return new VoiceLeading(norm).distance(PcSet.fromList(a).mask(), PcSet.fromList(b).mask());
+    }
+
+    /**
+     * @return La distanza minima tra i due set nella norma dell'istanza (NaN se uno solo dei set è vuoto).
+     */
+    public double distance(int maskA, int maskB) {
+        int cost = cost(maskA, maskB);
+        return cost < 0 ? Double.NaN : norm.finish(cost);
+    }
+
+    /**
+     * @return Il costo intero della condotta minima (somma dei moduli, dei quadrati o massimo degli
+     * spostamenti), 0 tra due set vuoti, -1 se uno solo dei set è vuoto.
+     */
+    public int cost(int maskA, int maskB) {
+        int m = toSorted(maskA & PcSet.FULL_MASK, source);
+        int n = toSorted(maskB & PcSet.FULL_MASK, target);
+        if (m == 0 || n == 0) {
+            return m == n ? 0 : -1;
+        }
+        for (int j = 0; j < n; j++) {
+            int pc = target[j];
+            lifted[j] = pc - PcSet.MODULUS;
+            lifted[j + n] = pc;
+            lifted[j + 2 * n] = pc + PcSet.MODULUS;
+            lifted[j + 3 * n] = pc + 2 * PcSet.MODULUS;
+        }
+        lifted[4 * n] = target[0] + 3 * PcSet.MODULUS;
+        return bestCost(m, n);
+    }
+
+    /*
+     * Gli scostamenti k vengono provati a partire da quello in cui b'[k] è la prima posizione non inferiore a a[0],
+     * allontanandosi in entrambe le direzioni: |b'[k] - a[0]| cresce con la distanza da quel punto, quindi
+     * appena il solo spostamento di a[0] raggiunge il miglior costo la direzione può essere abbandonata.
+     */
+    private int bestCost(int m, int n) {
+        int nearest = 0;
+        while (lifted[nearest + n] < source[0]) {
+            nearest++;
+        }
+        int best = INFINITE;
+        for (int k = nearest; k < 2 * n && norm.combine(0, lifted[k + n] - source[0]) < best; k++) {
+            best = Math.min(best, m == n ? bijectiveCost(n, k, best) : coveringCost(m, n, k, best));
+        }
+        for (int k = nearest - 1; k >= -n && norm.combine(0, source[0] - lifted[k + n]) < best; k--) {
+            best = Math.min(best, m == n ? bijectiveCost(n, k, best) : coveringCost(m, n, k, best));
+        }
+        return best;
+    }
+
+    // Condotta biunivoca a[i] -> b'[i + k]; si interrompe appena il costo raggiunge bound
+    private int bijectiveCost(int n, int k, int bound) {
+        int cost = 0;
+        for (int i = 0; i < n && cost < bound; i++) {
+            cost = norm.combine(cost, Math.abs(lifted[i + k + n] - source[i]));
+        }
+        return cost;
+    }
+
+    /*
+     * Condotta con raddoppi: a[0] viene associata per prima a b'[k]; il cammino avanza di una nota in a, in b o
+     * in entrambi fino a coprire b'[k .. k+n-1], e può chiudersi associando anche a[m-1] a b'[k+n] (= b[k] + 12).
+     * Il minimo di una riga non può diminuire nelle righe successive: se raggiunge bound il calcolo si interrompe.
+     */
+    private int coveringCost(int m, int n, int k, int bound) {
+        int[] previous = previousRow;
+        int[] current = currentRow;
+        for (int i = 0; i < m; i++) {
+            int rowMinimum = INFINITE;
+            for (int c = 0; c <= n; c++) {
+                int reached;
+                if (i == 0) {
+                    reached = c == 0 ? 0 : current[c - 1];
+                } else if (c == 0) {
+                    reached = previous[0];
+                } else {
+                    reached = Math.min(previous[c - 1], Math.min(previous[c], current[c - 1]));
+                }
+                current[c] = norm.combine(reached, Math.abs(lifted[k + c + n] - source[i]));
+                rowMinimum = Math.min(rowMinimum, current[c]);
+            }
+            if (rowMinimum >= bound) {
+                return bound;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[n - 1], previous[n]);
+    }
+
+    // Pitch classes della maschera in ordine crescente; restituisce la cardinalità
+    private static int toSorted(int mask, int[] dest) {
+        int count = 0;
+        for (int remaining = mask; remaining != 0; remaining &= remaining - 1) {
+            dest[count++] = Integer.numberOfTrailingZeros(remaining);
+        }
+        return count;
+    }
+
+    /**
+     * Ricerca dei set più vicini a un set dato.
+     * @param mask Il set di riferimento.
+     * @param corpus Le maschere dei set candidati.
+     * @param count Il numero massimo di risultati.
+     * @return Gli indici dei candidati più vicini, in ordine di distanza crescente (a parità, di indice).
+     * I candidati a distanza indefinita (set vuoti) vengono esclusi.
+     */
+    public int[] nearest(int mask, int[] corpus, int count) {
+        long[] keyed = new long[corpus.length];
+        int size = 0;
+        for (int i = 0; i < corpus.length; i++) {
+            int cost = cost(mask, corpus[i]);
+            if (cost >= 0) {
+                keyed[size++] = ((long) cost << 32) | i;
+            }
+        }
+        Arrays.sort(keyed, 0, size);
+        int[] result = new int[Math.min(count, size)];
+        for (int r = 0; r < result.length; r++) {
+            result[r] = (int) keyed[r];
+        }
+        return result;
+    }
+
+    /**
+     * @return Le maschere di tutti i 4096 sottoinsiemi, in ordine crescente.
+     */
+    public static int[] allSubsets() {
+        return IntStream.rangeClosed(0, PcSet.FULL_MASK).toArray();
+    }
+
+    /**
+     * Calcola in parallelo la matrice delle distanze tra tutti i set e la scrive in formato binario
+     * (big-endian): MATRIX_MAGIC, ordinale della norma, numero di set N, le N maschere, poi N * N float32
+     * per righe. Le distanze indefinite (un solo set vuoto) valgono NaN. Le righe vengono calcolate a blocchi,
+     * quindi la memoria occupata non dipende da N * N.
+     *
+     * La distanza non cambia trasponendo entrambi i set: d(A, B) = d(T_t A, T_t B). Ogni riga viene quindi
+     * letta dalla riga del rappresentante della classe di trasposizione di A (la rotazione con maschera minima),
+     * calcolata una sola volta verso tutti i 4096 set: al più 352 righe per qualsiasi corpus.
+     *
+     * @param masks Le maschere dei set (righe e colonne della matrice).
+     * @param norm La norma.
+     * @param out La destinazione (non viene chiusa).
+     * @throws IOException In caso di errori di scrittura.
+     */
+    public static void writeMatrix(int[] masks, Norm norm, OutputStream out) throws IOException {
+        int size = masks.length;
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        data.writeInt(MATRIX_MAGIC);
+        data.writeInt(norm.ordinal());
+        data.writeInt(size);
+        for (int mask : masks) {
+            data.writeInt(mask & PcSet.FULL_MASK);
+        }
+
+        ThreadLocal<VoiceLeading> engines = ThreadLocal.withInitial(() -> new VoiceLeading(norm));
+        AtomicReferenceArray<float[]> representativeRows = new AtomicReferenceArray<>(PcSet.FULL_MASK + 1);
+        AnalyzerMetrics.CacheCounter rowCache = AnalyzerMetrics.ENABLED ? AnalyzerMetrics.cache("voice-leading: righe") : null;
+        float[] block = new float[ROWS_PER_BLOCK * size];
+        ByteBuffer bytes = ByteBuffer.allocate(block.length * Float.BYTES); // Big-endian come DataOutputStream
+        for (int first = 0; first < size; first += ROWS_PER_BLOCK) {
+            int rowStart = first;
+            int rows = Math.min(ROWS_PER_BLOCK, size - first);
+            IntStream.range(0, rows).parallel().forEach(r -> {
+                int mask = masks[rowStart + r] & PcSet.FULL_MASK;
+                int shift = 0;
+                int representative = mask;
+                for (int t = 1; t < PcSet.MODULUS; t++) {
+                    int rotated = PcSet.transposeMask(mask, t);
+                    if (rotated < representative) {
+                        representative = rotated;
+                        shift = t;
+                    }
+                }
+                float[] distances = representativeRows.get(representative);
+                if (AnalyzerMetrics.ENABLED) {
+                    if (distances != null) {
+                        rowCache.hit();
+                    } else {
+                        rowCache.miss();
+                    }
+                }
+                if (distances == null) {
+                    VoiceLeading engine = engines.get();
+                    distances = new float[PcSet.FULL_MASK + 1];
+                    for (int other = 0; other <= PcSet.FULL_MASK; other++) {
+                        distances[other] = (float) engine.distance(representative, other);
+                    }
+                    representativeRows.compareAndSet(representative, null, distances);
+                }
+                for (int column = 0; column < size; column++) {
+                    block[r * size + column] = distances[PcSet.transposeMask(masks[column] & PcSet.FULL_MASK, shift)];
+                }
+            });
+            bytes.clear();
+            bytes.asFloatBuffer().put(block, 0, rows * size);
+            data.write(bytes.array(), 0, rows * size * Float.BYTES);
+        }
+        data.flush();
+    }
+}